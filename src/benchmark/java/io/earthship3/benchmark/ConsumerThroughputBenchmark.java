@@ -0,0 +1,92 @@
+package io.earthship3.benchmark;
+
+import static akka.Done.done;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import akka.Done;
+import io.earthship3.AsyncCalls;
+
+/**
+ * Time to consume a batch of events on a small consumer thread pool, where each event fans out to component calls that
+ * take callLatencyMicros to reply. The blocking consumers call invoke one call after the other and hold a thread while
+ * they wait, the pipelined consumers call invokeAsync through AsyncCalls and only use a thread to start the calls.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConsumerThroughputBenchmark {
+  static final int events = 64;
+  static final int consumerThreads = 4;
+  static final int parallelism = 8;
+  static final long callLatencyMicros = 500;
+
+  @Param({ "1", "8", "64" })
+  int callsPerEvent;
+
+  private ExecutorService consumerPool;
+  private ScheduledExecutorService replies;
+  private List<Integer> calls;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    consumerPool = Executors.newFixedThreadPool(consumerThreads);
+    replies = Executors.newScheduledThreadPool(2);
+    calls = IntStream.range(0, callsPerEvent).boxed().toList();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    consumerPool.shutdownNow();
+    replies.shutdownNow();
+  }
+
+  @Benchmark
+  public void blockingConsumers() {
+    var consumed = IntStream.range(0, events)
+        .mapToObj(event -> CompletableFuture.runAsync(() -> calls.forEach(call -> componentCall().join()), consumerPool))
+        .toArray(CompletableFuture[]::new);
+
+    CompletableFuture.allOf(consumed).join();
+  }
+
+  @Benchmark
+  public void pipelinedConsumers() {
+    var consumed = IntStream.range(0, events)
+        .mapToObj(event -> CompletableFuture.supplyAsync(() -> AsyncCalls.forEach(calls, parallelism, call -> componentCall()), consumerPool)
+            .thenCompose(done -> done))
+        .toArray(CompletableFuture[]::new);
+
+    CompletableFuture.allOf(consumed).join();
+  }
+
+  // A component call that replies after the latency of a round trip to another entity
+  private CompletableFuture<Done> componentCall() {
+    var reply = new CompletableFuture<Done>();
+    replies.schedule(() -> reply.complete(done()), callLatencyMicros, TimeUnit.MICROSECONDS);
+    return reply;
+  }
+}
@@ -0,0 +1,65 @@
+package io.earthship3.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.earthship3.DistributeQuantity;
+
+/**
+ * Distributes a branch quantity over leaves and sub branches the way branch creation does, once with the boxed
+ * QuantityDistribution API and once with the caller supplied int[] API. Run with -prof gc to compare allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DistributeQuantityBenchmark {
+  static final int maxSubBranches = 10;
+  static final int maxItemsPerLeaf = 20;
+  static final int maxItemsPerBranch = maxItemsPerLeaf * maxSubBranches;
+
+  @Param({ "1", "150", "1999", "100000" })
+  int quantity;
+
+  private final int[] leafQuantities = new int[maxSubBranches];
+  private final int[] branchQuantities = new int[maxSubBranches];
+
+  @Benchmark
+  public void boxedQuantityDistribution(Blackhole blackhole) {
+    var leafDistribution = DistributeQuantity.distributeAllowLeftover(quantity, maxItemsPerLeaf, maxSubBranches);
+    var branchDistribution = DistributeQuantity.distributeWithoutLeftover(leafDistribution.leftoverQuantity(), maxItemsPerBranch, maxSubBranches);
+
+    for (int i = 0; i < leafDistribution.bucketLevels().size(); i++) {
+      blackhole.consume(leafDistribution.bucketLevels().get(i).intValue());
+    }
+    for (int i = 0; i < branchDistribution.bucketLevels().size(); i++) {
+      blackhole.consume(branchDistribution.bucketLevels().get(i).intValue());
+    }
+  }
+
+  @Benchmark
+  public void primitiveQuantityDistribution(Blackhole blackhole) {
+    var leftoverQuantity = DistributeQuantity.distributeAllowLeftover(quantity, maxItemsPerLeaf, maxSubBranches, leafQuantities);
+    DistributeQuantity.distributeWithoutLeftover(leftoverQuantity, maxItemsPerBranch, maxSubBranches, branchQuantities);
+
+    for (int i = 0; i < maxSubBranches && leafQuantities[i] > 0; i++) {
+      blackhole.consume(leafQuantities[i]);
+    }
+    for (int i = 0; i < maxSubBranches && branchQuantities[i] > 0; i++) {
+      blackhole.consume(branchQuantities[i]);
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package io.earthship3.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.earthship3.IdGenerator;
+
+/**
+ * ID generation throughput of each generator with 8 threads sharing one generator, the way consumers and entities share
+ * ShortUUID.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class IdGeneratorBenchmark {
+  @Param({ "secure", "fast", "time-ordered" })
+  String generatorName;
+
+  private IdGenerator generator;
+
+  @Setup
+  public void setup() {
+    generator = IdGenerator.of(generatorName);
+  }
+
+  @Benchmark
+  public String nextId() {
+    return generator.nextId();
+  }
+}
@@ -0,0 +1,143 @@
+package io.earthship3.benchmark;
+
+import static io.earthship3.ShortUUID.randomUUID;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import akka.javasdk.JsonSupport;
+import io.earthship3.domain.stock.StockItemsLeaf;
+import io.earthship3.domain.stock.StockItemsLeaf.Quantity;
+
+/**
+ * Recovers a stock items leaf from its journal, once with the delta LeafQuantityUpdated events that the leaf now
+ * persists and once with the same events holding every stock item of the leaf, as they did before. The journal size of
+ * both is printed during setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LeafReplayBenchmark {
+  private final ObjectMapper objectMapper = JsonSupport.getObjectMapper();
+
+  @Param({ "20", "200" })
+  int leafSize;
+
+  @Param({ "1", "5" })
+  int orderItemsPerAllocation;
+
+  private List<JournalEntry> deltaJournal;
+  private List<JournalEntry> snapshotJournal;
+
+  record JournalEntry(Class<? extends StockItemsLeaf.Event> eventType, byte[] bytes) {}
+
+  @Setup
+  public void setup() throws IOException {
+    var leafId = randomUUID();
+    var state = StockItemsLeaf.State.empty();
+    var createCommand = new StockItemsLeaf.Command.CreateStockItems(leafId, randomUUID(), "stock-1", randomUUID(), Quantity.of(leafSize));
+    var events = new ArrayList<>(state.onCommand(createCommand));
+    state = replay(state, events);
+
+    // Allocate the leaf to order items until it is empty
+    while (state.quantity().available() > 0) {
+      var orderItemIds = Stream.generate(() -> randomUUID()).limit(orderItemsPerAllocation).toList();
+      var allocateCommand = new StockItemsLeaf.Command.AllocateStockItemsToOrderItems(leafId, randomUUID(), orderItemIds);
+      var allocateEvents = state.onCommand(allocateCommand);
+      state = replay(state, allocateEvents);
+      events.addAll(allocateEvents);
+    }
+
+    // The same journal with every stock item of the leaf in each LeafQuantityUpdated event
+    var snapshotEvents = new ArrayList<StockItemsLeaf.Event>();
+    var snapshotState = StockItemsLeaf.State.empty();
+    for (var event : events) {
+      snapshotState = applyEvent(snapshotState, event);
+      snapshotEvents.add(event instanceof StockItemsLeaf.Event.LeafQuantityUpdated e
+          ? new StockItemsLeaf.Event.LeafQuantityUpdated(
+              e.leafId(),
+              e.parentBranchId(),
+              e.stockId(),
+              e.quantityId(),
+              e.quantity(),
+              List.copyOf(snapshotState.stockOrderItems()),
+              e.availableForOrders())
+          : event);
+    }
+
+    deltaJournal = journal(events);
+    snapshotJournal = journal(snapshotEvents);
+
+    System.out.printf("%nleafSize %d, orderItemsPerAllocation %d, events %d, journal bytes delta %,d snapshot %,d%n",
+        leafSize,
+        orderItemsPerAllocation,
+        events.size(),
+        deltaJournal.stream().mapToInt(e -> e.bytes().length).sum(),
+        snapshotJournal.stream().mapToInt(e -> e.bytes().length).sum());
+  }
+
+  @Benchmark
+  public StockItemsLeaf.State recoverFromDeltaJournal() throws IOException {
+    return recover(deltaJournal);
+  }
+
+  @Benchmark
+  public StockItemsLeaf.State recoverFromSnapshotJournal() throws IOException {
+    return recover(snapshotJournal);
+  }
+
+  private StockItemsLeaf.State recover(List<JournalEntry> journal) throws IOException {
+    var state = StockItemsLeaf.State.empty();
+    for (var entry : journal) {
+      state = applyEvent(state, objectMapper.readValue(entry.bytes(), entry.eventType()));
+    }
+    return state;
+  }
+
+  private List<JournalEntry> journal(List<StockItemsLeaf.Event> events) throws IOException {
+    var journal = new ArrayList<JournalEntry>();
+    for (var event : events) {
+      journal.add(new JournalEntry(event.getClass(), objectMapper.writeValueAsBytes(event)));
+    }
+    return journal;
+  }
+
+  private static StockItemsLeaf.State replay(StockItemsLeaf.State state, List<StockItemsLeaf.Event> events) {
+    for (var event : events) {
+      state = applyEvent(state, event);
+    }
+    return state;
+  }
+
+  // Same as StockItemsLeafEntity.applyEvent
+  private static StockItemsLeaf.State applyEvent(StockItemsLeaf.State state, StockItemsLeaf.Event event) {
+    return switch (event) {
+      case StockItemsLeaf.Event.StockItemsCreated e -> state.onEvent(e);
+      case StockItemsLeaf.Event.LeafQuantityUpdated e -> state.onEvent(e);
+      case StockItemsLeaf.Event.StockItemsNeedOrderItems e -> state;
+      case StockItemsLeaf.Event.StockItemsAllocatedToOrderItems e -> state;
+      case StockItemsLeaf.Event.StockItemsAllocationConflictDetected e -> state;
+      case StockItemsLeaf.Event.AvailableForOrdersSet e -> state.onEvent(e);
+    };
+  }
+}
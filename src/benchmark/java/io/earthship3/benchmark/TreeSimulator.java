@@ -0,0 +1,573 @@
+package io.earthship3.benchmark;
+
+import static io.earthship3.ShortUUID.randomUUID;
+import static io.earthship3.domain.order.OrderLine.orderLineId;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import akka.javasdk.JsonSupport;
+import io.earthship3.TrunkShards;
+import io.earthship3.domain.allocation.StockAllocation;
+import io.earthship3.domain.order.OrderItemsBranch;
+import io.earthship3.domain.order.OrderItemsLeaf;
+import io.earthship3.domain.order.OrderLine;
+import io.earthship3.domain.stock.StockItemsBranch;
+import io.earthship3.domain.stock.StockItemsLeaf;
+
+/**
+ * Runs inventory and order workloads against the stock and order tree domain objects in memory, without the Akka
+ * runtime. Each entity is a map entry of its state, the consumers are replaced by an in-process queue of the persisted
+ * events and the timers by a second queue that runs once the event queue is drained. Reports the tree depth, the entity
+ * count, the events per order line, the bytes per event and the allocations per second, and what is left in the
+ * allocation queues of each stock.
+ *
+ * <p>
+ * Arguments are name=value pairs that override the {@link Workload} defaults, for example
+ * {@code stocks=2 orders=5000 maxOrderQuantity=20 trunkShards=4}.
+ */
+public class TreeSimulator {
+  private final ObjectMapper objectMapper = JsonSupport.getObjectMapper();
+  private final Workload workload;
+  private final TrunkShards trunkShards;
+  private final Random random;
+
+  private final Deque<Runnable> events = new ArrayDeque<>();
+  private final Map<String, Timer> timers = new HashMap<>();
+
+  private final Map<String, StockItemsBranch.State> stockItemsBranches = new HashMap<>();
+  private final Map<String, StockItemsLeaf.State> stockItemsLeaves = new HashMap<>();
+  private final Map<String, OrderItemsBranch.State> orderItemsBranches = new HashMap<>();
+  private final Map<String, OrderItemsLeaf.State> orderItemsLeaves = new LinkedHashMap<>(); // oldest first, as the view
+  private final Map<String, OrderLine.State> orderLines = new HashMap<>();
+  private final Map<String, StockAllocation.State> stockAllocations = new HashMap<>();
+
+  private final Map<String, Integer> depths = new HashMap<>();
+  private final Map<String, EventStats> eventStats = new TreeMap<>();
+  private int orderLinesReadyToShip;
+
+  public record Workload(
+      int stocks,
+      int inventoryOrders,
+      int inventoryQuantity,
+      int orders,
+      int maxOrderQuantity,
+      int trunkShards,
+      long seed) {
+
+    static Workload defaults() {
+      return new Workload(1, 10, 1_000, 1_000, 10, 1, 42);
+    }
+
+    static Workload of(String[] args) {
+      var values = new HashMap<String, String>();
+      for (var arg : args) {
+        var nameValue = arg.split("=", 2);
+        if (nameValue.length != 2) {
+          throw new IllegalArgumentException("Expected name=value, got: " + arg);
+        }
+        values.put(nameValue[0], nameValue[1]);
+      }
+
+      var defaults = defaults();
+      return new Workload(
+          Integer.parseInt(values.getOrDefault("stocks", "" + defaults.stocks())),
+          Integer.parseInt(values.getOrDefault("inventoryOrders", "" + defaults.inventoryOrders())),
+          Integer.parseInt(values.getOrDefault("inventoryQuantity", "" + defaults.inventoryQuantity())),
+          Integer.parseInt(values.getOrDefault("orders", "" + defaults.orders())),
+          Integer.parseInt(values.getOrDefault("maxOrderQuantity", "" + defaults.maxOrderQuantity())),
+          Integer.parseInt(values.getOrDefault("trunkShards", "" + defaults.trunkShards())),
+          Long.parseLong(values.getOrDefault("seed", "" + defaults.seed())));
+    }
+  }
+
+  record Timer(Instant dueAt, Runnable action) {}
+
+  static class EventStats {
+    long entities;
+    long events;
+    long bytes;
+  }
+
+  public TreeSimulator(Workload workload) {
+    this.workload = workload;
+    this.trunkShards = new TrunkShards(workload.trunkShards(), Map.of());
+    this.random = new Random(workload.seed());
+  }
+
+  public static void main(String[] args) {
+    var simulator = new TreeSimulator(Workload.of(args));
+    simulator.run();
+  }
+
+  public void run() {
+    var stockIds = IntStream.range(0, workload.stocks())
+        .mapToObj(i -> "stock-%d".formatted(i + 1))
+        .toList();
+
+    // Same as InventoryOrderToStockItemsBranchConsumer
+    var inventoryStartedAt = System.nanoTime();
+    for (var stockId : stockIds) {
+      for (var i = 0; i < workload.inventoryOrders(); i++) {
+        var inventoryOrderId = randomUUID();
+        var trunkId = trunkShards.trunkId(stockId, inventoryOrderId);
+        stockItemsBranch(trunkId, s -> s.onCommand(new StockItemsBranch.Command.AddQuantityToTree(
+            trunkId, stockId, inventoryOrderId, StockItemsBranch.Quantity.of(workload.inventoryQuantity()), Optional.empty())));
+      }
+    }
+    drain();
+    var inventoryElapsed = Duration.ofNanos(System.nanoTime() - inventoryStartedAt);
+
+    // Same as OrderToOrderLineConsumer and OrderToOrderItemsBranchConsumer, one line item per order
+    var orderedQuantity = 0L;
+    var ordersStartedAt = System.nanoTime();
+    for (var i = 0; i < workload.orders(); i++) {
+      var orderId = randomUUID();
+      var stockId = stockIds.get(random.nextInt(stockIds.size()));
+      var quantity = 1 + random.nextInt(workload.maxOrderQuantity());
+      orderedQuantity += quantity;
+
+      orderLine(orderLineId(orderId, stockId), s -> s.onCommand(new OrderLine.Command.CreateOrderLine(orderId, stockId, quantity, Instant.now())));
+
+      var trunkId = trunkShards.trunkId(stockId, orderId);
+      orderItemsBranch(trunkId, s -> s.onCommand(new OrderItemsBranch.Command.AddQuantityToTree(
+          trunkId, stockId, orderId, OrderItemsBranch.Quantity.of(quantity), Optional.empty())));
+    }
+    drain();
+    var ordersElapsed = Duration.ofNanos(System.nanoTime() - ordersStartedAt);
+
+    report(inventoryElapsed, ordersElapsed, orderedQuantity);
+  }
+
+  // Events first, then the earliest timer, until both are empty
+  private void drain() {
+    while (!events.isEmpty() || !timers.isEmpty()) {
+      while (!events.isEmpty()) {
+        events.poll().run();
+      }
+
+      var next = timers.entrySet().stream()
+          .min(Comparator.comparing(e -> e.getValue().dueAt()));
+      if (next.isPresent()) {
+        timers.remove(next.get().getKey());
+        var wait = Duration.between(Instant.now(), next.get().getValue().dueAt());
+        if (!wait.isNegative() && !wait.isZero()) {
+          sleep(wait);
+        }
+        next.get().getValue().action().run();
+      }
+    }
+  }
+
+  // A timer with the same name replaces the one that is pending, as with the timers of a consumer
+  private void timer(String name, Instant dueAt, Runnable action) {
+    timers.put(name, new Timer(dueAt, action));
+  }
+
+  private void report(Duration inventoryElapsed, Duration ordersElapsed, long orderedQuantity) {
+    var allocated = orderItemsLeaves.values().stream()
+        .mapToLong(s -> s.quantity().ordered() - s.quantity().unallocated())
+        .sum();
+    var orderEvents = eventStats.entrySet().stream()
+        .filter(e -> e.getKey().startsWith("order-"))
+        .mapToLong(e -> e.getValue().events)
+        .sum();
+    var stockTreeDepth = maxDepth(stockItemsBranches.keySet(), stockItemsLeaves.keySet());
+    var orderTreeDepth = maxDepth(orderItemsBranches.keySet(), orderItemsLeaves.keySet());
+
+    System.out.printf("%n%s%n", workload);
+    System.out.printf("stock tree depth %d, order tree depth %d%n", stockTreeDepth, orderTreeDepth);
+    System.out.printf("%-20s %10s %12s %14s %10s%n", "entity", "entities", "events", "bytes", "bytes/event");
+    eventStats.forEach((entityType, stats) -> System.out.printf("%-20s %,10d %,12d %,14d %10.1f%n",
+        entityType,
+        stats.entities,
+        stats.events,
+        stats.bytes,
+        stats.events == 0 ? 0.0 : (double) stats.bytes / stats.events));
+    System.out.printf("order lines %,d, ready to ship %,d, events per order line %.1f%n",
+        workload.orders(),
+        orderLinesReadyToShip,
+        workload.orders() == 0 ? 0.0 : (double) orderEvents / workload.orders());
+    stockAllocations.forEach((stockId, s) -> System.out.printf(
+        "%s allocation queued supply %,d, queued demand %,d, backlog demand %,d supply %,d, overflowed leaves %,d, conflicts %,d%n",
+        stockId,
+        s.supply().size(),
+        s.demand().size(),
+        s.backlog(),
+        s.supplyBacklog(),
+        s.metrics().overflowedLeaves(),
+        s.metrics().conflicts()));
+    System.out.printf("inventory %,dms, orders %,dms, allocated %,d of %,d order items, allocations per second %,.0f%n",
+        inventoryElapsed.toMillis(),
+        ordersElapsed.toMillis(),
+        allocated,
+        orderedQuantity,
+        ordersElapsed.isZero() ? 0.0 : allocated * 1_000_000_000.0 / ordersElapsed.toNanos());
+  }
+
+  private int maxDepth(Set<String> branchIds, Set<String> leafIds) {
+    return Stream.concat(branchIds.stream(), leafIds.stream())
+        .mapToInt(id -> depths.getOrDefault(id, 0))
+        .max()
+        .orElse(0);
+  }
+
+  // The depth of a child is known once its parent is, the tree trunk is depth 1
+  private void depth(String id, Optional<String> parentId) {
+    depths.put(id, parentId.map(p -> depths.getOrDefault(p, 0) + 1).orElse(1));
+  }
+
+  // An entity is counted with its first events, bytes are the JSON the journal would hold
+  private <E> void recordEvents(String entityType, boolean isNewEntity, List<E> events) {
+    var stats = eventStats.computeIfAbsent(entityType, k -> new EventStats());
+    for (var event : events) {
+      try {
+        stats.bytes += objectMapper.writeValueAsBytes(event).length;
+      } catch (JsonProcessingException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    stats.events += events.size();
+    stats.entities += isNewEntity && !events.isEmpty() ? 1 : 0;
+  }
+
+  // Entities, each persists the events of a command, folds them into its state and queues them for the consumers
+
+  private void stockItemsBranch(String branchId, Function<StockItemsBranch.State, List<StockItemsBranch.Event>> onCommand) {
+    var state = stockItemsBranches.getOrDefault(branchId, StockItemsBranch.State.empty());
+    var newEvents = onCommand.apply(state);
+    recordEvents("stock-items-branch", !stockItemsBranches.containsKey(branchId), newEvents);
+    for (var event : newEvents) {
+      state = applyEvent(state, event);
+      stockItemsBranches.put(branchId, state);
+      events.add(() -> onEvent(event));
+    }
+  }
+
+  private void stockItemsLeaf(String leafId, Function<StockItemsLeaf.State, List<StockItemsLeaf.Event>> onCommand) {
+    var state = stockItemsLeaves.getOrDefault(leafId, StockItemsLeaf.State.empty());
+    var newEvents = onCommand.apply(state);
+    recordEvents("stock-items-leaf", !stockItemsLeaves.containsKey(leafId), newEvents);
+    for (var event : newEvents) {
+      state = applyEvent(state, event);
+      stockItemsLeaves.put(leafId, state);
+      events.add(() -> onEvent(event));
+    }
+  }
+
+  private void orderItemsBranch(String branchId, Function<OrderItemsBranch.State, List<OrderItemsBranch.Event>> onCommand) {
+    var state = orderItemsBranches.getOrDefault(branchId, OrderItemsBranch.State.empty());
+    var newEvents = onCommand.apply(state);
+    recordEvents("order-items-branch", !orderItemsBranches.containsKey(branchId), newEvents);
+    for (var event : newEvents) {
+      state = applyEvent(state, event);
+      orderItemsBranches.put(branchId, state);
+      events.add(() -> onEvent(event));
+    }
+  }
+
+  private void orderItemsLeaf(String leafId, Function<OrderItemsLeaf.State, List<OrderItemsLeaf.Event>> onCommand) {
+    var state = orderItemsLeaves.getOrDefault(leafId, OrderItemsLeaf.State.empty());
+    var newEvents = onCommand.apply(state);
+    recordEvents("order-items-leaf", !orderItemsLeaves.containsKey(leafId), newEvents);
+    for (var event : newEvents) {
+      state = applyEvent(state, event);
+      orderItemsLeaves.put(leafId, state);
+      events.add(() -> onEvent(event));
+    }
+  }
+
+  private void orderLine(String orderLineId, Function<OrderLine.State, List<OrderLine.Event>> onCommand) {
+    var state = orderLines.getOrDefault(orderLineId, OrderLine.State.empty());
+    var newEvents = onCommand.apply(state);
+    recordEvents("order-line", !orderLines.containsKey(orderLineId), newEvents);
+    for (var event : newEvents) {
+      state = applyEvent(state, event);
+      orderLines.put(orderLineId, state);
+      events.add(() -> onEvent(event));
+    }
+  }
+
+  private void stockAllocation(String stockId, Function<StockAllocation.State, List<StockAllocation.Event>> onCommand) {
+    var state = stockAllocations.getOrDefault(stockId, StockAllocation.State.empty());
+    var newEvents = onCommand.apply(state);
+    recordEvents("stock-allocation", !stockAllocations.containsKey(stockId), newEvents);
+    for (var event : newEvents) {
+      state = state.onEvent(event);
+      stockAllocations.put(stockId, state);
+      events.add(() -> onEvent(event));
+    }
+  }
+
+  // Same as the applyEvent of the entities
+
+  private static StockItemsBranch.State applyEvent(StockItemsBranch.State state, StockItemsBranch.Event event) {
+    return switch (event) {
+      case StockItemsBranch.Event.StockItemsCreated e -> state.onEvent(e);
+      case StockItemsBranch.Event.DelegateToSubBranch e -> state.onEvent(e);
+      case StockItemsBranch.Event.BranchToBeAdded e -> state.onEvent(e);
+      case StockItemsBranch.Event.LeafToBeAdded e -> state.onEvent(e);
+      case StockItemsBranch.Event.BranchQuantityUpdated e -> state.onEvent(e);
+      case StockItemsBranch.Event.LeafQuantityUpdated e -> state.onEvent(e);
+      case StockItemsBranch.Event.RollUpScheduled e -> state.onEvent(e);
+      case StockItemsBranch.Event.QuantityRolledUp e -> state.onEvent(e);
+    };
+  }
+
+  private static StockItemsLeaf.State applyEvent(StockItemsLeaf.State state, StockItemsLeaf.Event event) {
+    return switch (event) {
+      case StockItemsLeaf.Event.StockItemsCreated e -> state.onEvent(e);
+      case StockItemsLeaf.Event.LeafQuantityUpdated e -> state.onEvent(e);
+      case StockItemsLeaf.Event.StockItemsNeedOrderItems e -> state;
+      case StockItemsLeaf.Event.StockItemsAllocatedToOrderItems e -> state;
+      case StockItemsLeaf.Event.StockItemsAllocationConflictDetected e -> state;
+      case StockItemsLeaf.Event.AvailableForOrdersSet e -> state.onEvent(e);
+    };
+  }
+
+  private static OrderItemsBranch.State applyEvent(OrderItemsBranch.State state, OrderItemsBranch.Event event) {
+    return switch (event) {
+      case OrderItemsBranch.Event.OrderItemsCreated e -> state.onEvent(e);
+      case OrderItemsBranch.Event.DelegateToSubBranch e -> state.onEvent(e);
+      case OrderItemsBranch.Event.BranchToBeAdded e -> state.onEvent(e);
+      case OrderItemsBranch.Event.LeafToBeAdded e -> state.onEvent(e);
+      case OrderItemsBranch.Event.BranchQuantityUpdated e -> state.onEvent(e);
+      case OrderItemsBranch.Event.LeafQuantityUpdated e -> state.onEvent(e);
+      case OrderItemsBranch.Event.RollUpScheduled e -> state.onEvent(e);
+      case OrderItemsBranch.Event.QuantityRolledUp e -> state.onEvent(e);
+    };
+  }
+
+  private static OrderItemsLeaf.State applyEvent(OrderItemsLeaf.State state, OrderItemsLeaf.Event event) {
+    return switch (event) {
+      case OrderItemsLeaf.Event.OrderItemsCreated e -> state.onEvent(e);
+      case OrderItemsLeaf.Event.LeafQuantityUpdated e -> state.onEvent(e);
+      case OrderItemsLeaf.Event.OrderItemsNeedStockItems e -> state.onEvent(e);
+      case OrderItemsLeaf.Event.OrderItemsAllocatedToStockItems e -> state.onEvent(e);
+      case OrderItemsLeaf.Event.OrderItemsAllocationConflictDetected e -> state.onEvent(e);
+      case OrderItemsLeaf.Event.BackOrderedSet e -> state.onEvent(e);
+      case OrderItemsLeaf.Event.OrderItemsCancelled e -> state.onEvent(e);
+    };
+  }
+
+  private static OrderLine.State applyEvent(OrderLine.State state, OrderLine.Event event) {
+    return switch (event) {
+      case OrderLine.Event.OrderLineCreated e -> state.onEvent(e);
+      case OrderLine.Event.LeafReadinessUpdated e -> state.onEvent(e);
+      case OrderLine.Event.OrderLineBackOrdered e -> state.onEvent(e);
+      case OrderLine.Event.OrderLineReadyToShip e -> state.onEvent(e);
+      case OrderLine.Event.OrderLineCancelled e -> state.onEvent(e);
+    };
+  }
+
+  // Consumers, same as StockItemsBranchConsumer and StockItemsBranchRollUpTimedAction
+
+  private void onEvent(StockItemsBranch.Event event) {
+    switch (event) {
+      case StockItemsBranch.Event.StockItemsCreated e -> {
+        depth(e.branchId(), e.parentBranchId());
+        e.parentBranchId().ifPresent(parentBranchId -> stockItemsBranch(parentBranchId, s -> s.onCommand(
+            new StockItemsBranch.Command.UpdateBranchQuantity(parentBranchId, e.branchId(), e.quantity()))));
+      }
+      case StockItemsBranch.Event.BranchToBeAdded e -> stockItemsBranch(e.branchId(), s -> s.onCommand(
+          new StockItemsBranch.Command.AddQuantityToTree(e.branchId(), e.stockId(), e.quantityId(), e.quantity(), Optional.of(e.parentBranchId()))));
+      case StockItemsBranch.Event.LeafToBeAdded e -> stockItemsLeaf(e.leafId(), s -> s.onCommand(
+          new StockItemsLeaf.Command.CreateStockItems(e.leafId(), e.parentBranchId(), e.stockId(), e.quantityId(),
+              StockItemsLeaf.Quantity.of(e.quantity().acquired(), e.quantity().available()))));
+      case StockItemsBranch.Event.DelegateToSubBranch e -> stockItemsBranch(e.subBranchId(), s -> s.onCommand(
+          new StockItemsBranch.Command.AddQuantityToTree(e.subBranchId(), e.stockId(), e.quantityId(), e.quantity(), Optional.of(e.branchId()))));
+      case StockItemsBranch.Event.RollUpScheduled e -> timer("stock-items-branch-roll-up-" + e.branchId(), Instant.now(),
+          () -> stockItemsBranch(e.branchId(), s -> s.onCommand(new StockItemsBranch.Command.RollUpQuantity(e.branchId()))));
+      case StockItemsBranch.Event.QuantityRolledUp e -> stockItemsBranch(e.parentBranchId(), s -> s.onCommand(
+          new StockItemsBranch.Command.UpdateBranchQuantity(e.parentBranchId(), e.branchId(), e.quantity())));
+      default -> {}
+    }
+  }
+
+  // Same as StockItemsLeafConsumer
+  private void onEvent(StockItemsLeaf.Event event) {
+    switch (event) {
+      case StockItemsLeaf.Event.StockItemsCreated e -> depth(e.leafId(), Optional.of(e.parentBranchId()));
+      case StockItemsLeaf.Event.LeafQuantityUpdated e -> stockItemsBranch(e.parentBranchId(), s -> s.onCommand(
+          new StockItemsBranch.Command.UpdateLeafQuantity(e.parentBranchId(), e.leafId(),
+              StockItemsBranch.Quantity.of(e.quantity().acquired(), e.quantity().available()))));
+      case StockItemsLeaf.Event.StockItemsNeedOrderItems e -> stockAllocation(e.stockId(), s -> s.onCommand(
+          new StockAllocation.Command.AddSupply(e.stockId(), e.leafId(), e.quantity().available())));
+      case StockItemsLeaf.Event.StockItemsAllocatedToOrderItems e -> {
+        var allocations = e.allocations().stream()
+            .map(a -> new OrderItemsLeaf.Allocation(a.orderItemsLeafId(), a.orderItemId(), a.stockItemLeafId(), a.stockItemId()))
+            .toList();
+        orderItemsLeaf(e.orderItemsLeafId(), s -> s.onCommand(
+            new OrderItemsLeaf.Command.ApplyStockItemsAllocation(e.orderItemsLeafId(), e.leafId(), allocations)));
+      }
+      default -> {}
+    }
+  }
+
+  // Same as OrderItemsBranchConsumer and OrderItemsBranchRollUpTimedAction
+  private void onEvent(OrderItemsBranch.Event event) {
+    switch (event) {
+      case OrderItemsBranch.Event.OrderItemsCreated e -> {
+        depth(e.branchId(), e.parentBranchId());
+        e.parentBranchId().ifPresent(parentBranchId -> orderItemsBranch(parentBranchId, s -> s.onCommand(
+            new OrderItemsBranch.Command.UpdateBranchQuantity(parentBranchId, e.branchId(), e.quantity()))));
+      }
+      case OrderItemsBranch.Event.BranchToBeAdded e -> orderItemsBranch(e.branchId(), s -> s.onCommand(
+          new OrderItemsBranch.Command.AddQuantityToTree(e.branchId(), e.stockId(), e.quantityId(), e.quantity(), Optional.of(e.parentBranchId()))));
+      case OrderItemsBranch.Event.LeafToBeAdded e -> orderItemsLeaf(e.leafId(), s -> s.onCommand(
+          new OrderItemsLeaf.Command.CreateOrderItems(e.leafId(), e.parentBranchId(), e.stockId(), e.quantityId(),
+              OrderItemsLeaf.Quantity.of(e.quantity().ordered(), e.quantity().unallocated()))));
+      case OrderItemsBranch.Event.DelegateToSubBranch e -> orderItemsBranch(e.subBranchId(), s -> s.onCommand(
+          new OrderItemsBranch.Command.AddQuantityToTree(e.subBranchId(), e.stockId(), e.quantityId(), e.quantity(), Optional.of(e.branchId()))));
+      case OrderItemsBranch.Event.RollUpScheduled e -> timer("order-items-branch-roll-up-" + e.branchId(), Instant.now(),
+          () -> orderItemsBranch(e.branchId(), s -> s.onCommand(new OrderItemsBranch.Command.RollUpQuantity(e.branchId()))));
+      case OrderItemsBranch.Event.QuantityRolledUp e -> orderItemsBranch(e.parentBranchId(), s -> s.onCommand(
+          new OrderItemsBranch.Command.UpdateBranchQuantity(e.parentBranchId(), e.branchId(), e.quantity())));
+      default -> {}
+    }
+  }
+
+  // Same as OrderItemsLeafConsumer and OrderItemsLeafToOrderLineConsumer
+  private void onEvent(OrderItemsLeaf.Event event) {
+    switch (event) {
+      case OrderItemsLeaf.Event.OrderItemsCreated e -> {
+        depth(e.leafId(), Optional.of(e.parentBranchId()));
+        orderLine(orderLineId(e.quantityId(), e.stockId()), s -> s.onCommand(new OrderLine.Command.UpdateLeafReadiness(
+            e.quantityId(), e.stockId(), e.leafId(), e.quantity().ordered(), e.quantity().unallocated(), false)));
+      }
+      case OrderItemsLeaf.Event.LeafQuantityUpdated e -> {
+        orderItemsBranch(e.parentBranchId(), s -> s.onCommand(new OrderItemsBranch.Command.UpdateLeafQuantity(
+            e.parentBranchId(), e.leafId(), OrderItemsBranch.Quantity.of(e.quantity().ordered(), e.quantity().unallocated()))));
+        orderLine(orderLineId(e.quantityId(), e.stockId()), s -> s.onCommand(new OrderLine.Command.UpdateLeafReadiness(
+            e.quantityId(), e.stockId(), e.leafId(), e.quantity().ordered(), e.quantity().unallocated(), e.backOrderedAt().isPresent())));
+      }
+      case OrderItemsLeaf.Event.OrderItemsNeedStockItems e -> stockAllocation(e.stockId(), s -> s.onCommand(
+          new StockAllocation.Command.AddDemand(e.stockId(), e.leafId(), e.quantity().unallocated())));
+      case OrderItemsLeaf.Event.OrderItemsAllocationConflictDetected e -> {
+        var allocations = e.allocations().stream()
+            .map(a -> new StockItemsLeaf.Allocation(a.stockItemsLeafId(), a.stockItemId(), a.orderItemsLeafId(), a.orderItemId()))
+            .toList();
+        stockItemsLeaf(e.stockItemsLeafId(), s -> s.onCommand(
+            new StockItemsLeaf.Command.ReleaseOrderItemsAllocation(e.stockItemsLeafId(), e.leafId(), allocations)));
+        var stockId = orderItemsLeaves.get(e.leafId()).stockId();
+        stockAllocation(stockId, s -> s.onCommand(
+            new StockAllocation.Command.RecordConflict(stockId, e.stockItemsLeafId(), e.leafId(), e.allocations().size())));
+      }
+      case OrderItemsLeaf.Event.OrderItemsCancelled e -> e.allocations().stream()
+          .map(a -> new StockItemsLeaf.Allocation(a.stockItemsLeafId(), a.stockItemId(), a.orderItemsLeafId(), a.orderItemId()))
+          .collect(Collectors.groupingBy(StockItemsLeaf.Allocation::stockItemLeafId))
+          .forEach((stockItemsLeafId, allocations) -> stockItemsLeaf(stockItemsLeafId, s -> s.onCommand(
+              new StockItemsLeaf.Command.ReleaseOrderItemsAllocation(stockItemsLeafId, e.leafId(), allocations))));
+      case OrderItemsLeaf.Event.BackOrderedSet e -> {
+        var leaf = orderItemsLeaves.get(e.leafId());
+        orderLine(orderLineId(leaf.quantityId(), leaf.stockId()), s -> s.onCommand(new OrderLine.Command.UpdateLeafReadiness(
+            leaf.quantityId(), leaf.stockId(), leaf.leafId(), leaf.quantity().ordered(), leaf.quantity().unallocated(), e.backOrderedAt().isPresent())));
+      }
+      default -> {}
+    }
+  }
+
+  // Same as OrderLineConsumer, without the order
+  private void onEvent(OrderLine.Event event) {
+    switch (event) {
+      case OrderLine.Event.OrderLineReadyToShip e -> orderLinesReadyToShip++;
+      case OrderLine.Event.OrderLineCancelled e -> e.leafIds().forEach(leafId -> orderItemsLeaf(leafId, s -> s.onCommand(
+          new OrderItemsLeaf.Command.CancelOrderItems(leafId))));
+      default -> {}
+    }
+  }
+
+  // Same as StockAllocationConsumer, the views of the pending order items leaves and of the available stock items leaves
+  // are read from the leaves
+  private void onEvent(StockAllocation.Event event) {
+    switch (event) {
+      case StockAllocation.Event.AllocationMatched e -> stockItemsLeaf(e.stockItemsLeafId(), s -> s.onCommand(
+          new StockItemsLeaf.Command.AllocateStockItemsToOrderItems(
+              e.stockItemsLeafId(),
+              e.orderItemsLeafId(),
+              unallocatedOrderItemIds(e.orderItemsLeafId(), e.quantity()))));
+      case StockAllocation.Event.AllocationsMatched e -> {
+        var requests = e.orderItemsLeaves().stream()
+            .map(match -> new StockItemsLeaf.OrderItemsRequest(
+                match.orderItemsLeafId(),
+                unallocatedOrderItemIds(match.orderItemsLeafId(), match.quantity())))
+            .toList();
+        stockItemsLeaf(e.stockItemsLeafId(), s -> s.onCommand(
+            new StockItemsLeaf.Command.AllocateStockItemsToOrderItemsLeaves(e.stockItemsLeafId(), requests)));
+      }
+      case StockAllocation.Event.ConflictRecorded e -> timer("stock-allocation-retry-" + e.orderItemsLeafId(), e.retryAt(),
+          () -> stockAllocation(e.stockId(), s -> s.onCommand(new StockAllocation.Command.RetryDemand(e.stockId(), e.orderItemsLeafId()))));
+      case StockAllocation.Event.BacklogRefillRequested e -> {
+        var demands = orderItemsLeaves.values().stream()
+            .filter(s -> s.stockId().equals(e.stockId()))
+            .filter(s -> s.quantity().unallocated() > 0 && s.readyToShipAt().isEmpty() && s.cancelledAt().isEmpty())
+            .limit(e.limit())
+            .map(s -> new StockAllocation.Demand(s.leafId(), s.quantity().unallocated()))
+            .toList();
+        stockAllocation(e.stockId(), s -> s.onCommand(
+            new StockAllocation.Command.RefillBacklog(e.stockId(), demands, demands.size() < e.limit())));
+      }
+      case StockAllocation.Event.BacklogRefilled e -> refillTimer(e.stockId(), e.drained());
+      case StockAllocation.Event.SupplyRefilled e -> refillTimer(e.stockId(), e.drained());
+      case StockAllocation.Event.SupplyRefillRequested e -> {
+        var supplies = stockItemsLeaves.values().stream()
+            .filter(s -> s.stockId().equals(e.stockId()))
+            .filter(s -> s.quantity().available() > 0 && s.availableForOrders())
+            .sorted(Comparator.comparingInt((StockItemsLeaf.State s) -> s.quantity().available()).reversed())
+            .limit(e.limit())
+            .map(s -> new StockAllocation.Supply(s.leafId(), s.quantity().available()))
+            .toList();
+        stockAllocation(e.stockId(), s -> s.onCommand(
+            new StockAllocation.Command.RefillSupply(e.stockId(), supplies, supplies.size() < e.limit())));
+      }
+      default -> {}
+    }
+  }
+
+  private void refillTimer(String stockId, boolean drained) {
+    if (!drained) {
+      timer("stock-allocation-refill-" + stockId, Instant.now().plus(StockAllocation.State.refillInterval),
+          () -> stockAllocation(stockId, s -> s.onCommand(new StockAllocation.Command.RequestRefill(stockId))));
+    }
+  }
+
+  private List<String> unallocatedOrderItemIds(String orderItemsLeafId, int quantity) {
+    var orderItemsLeaf = orderItemsLeaves.get(orderItemsLeafId);
+    if (orderItemsLeaf.cancelledAt().isPresent()) {
+      return List.of();
+    }
+
+    return orderItemsLeaf.orderStockItems().stream()
+        .filter(item -> item.stockItemId().isEmpty())
+        .map(item -> item.orderItemId())
+        .limit(quantity)
+        .toList();
+  }
+
+  private static void sleep(Duration duration) {
+    try {
+      Thread.sleep(duration.toMillis(), duration.toNanosPart() % 1_000_000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package io.earthship3;
+
+import static akka.Done.done;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import com.typesafe.config.Config;
+
+import akka.Done;
+
+/**
+ * Fans a consumer event out to one asynchronous component call per item, with at most parallelism calls in flight.
+ * Each of the parallel lanes takes the next item when its previous call completes, so the calls are pipelined without
+ * blocking the consumer and without flooding the target entities. The returned stage fails with the first failed call,
+ * which lets the consumer retry the event.
+ */
+public class AsyncCalls {
+
+  public static int parallelism(Config config) {
+    return config.getInt("earth-ship-3.consumer.parallelism");
+  }
+
+  public static <T> CompletionStage<Done> forEach(List<T> items, int parallelism, Function<T, CompletionStage<?>> call) {
+    var next = new AtomicInteger();
+    var lanes = IntStream.range(0, Math.min(Math.max(parallelism, 1), items.size()))
+        .mapToObj(i -> lane(items, next, call))
+        .toArray(CompletableFuture[]::new);
+
+    return CompletableFuture.allOf(lanes).thenApply(v -> done());
+  }
+
+  private static <T> CompletableFuture<Void> lane(List<T> items, AtomicInteger next, Function<T, CompletionStage<?>> call) {
+    var i = next.getAndIncrement();
+    if (i >= items.size()) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    return call.apply(items.get(i))
+        .toCompletableFuture()
+        .thenCompose(result -> lane(items, next, call));
+  }
+}
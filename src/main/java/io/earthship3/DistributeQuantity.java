@@ -1,19 +1,43 @@
 package io.earthship3;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
-import java.util.stream.IntStream;
 
 public class DistributeQuantity {
 
   public static QuantityDistribution distributeAllowLeftover(int quantity, int bucketLimit, int availableBuckets) {
-    return distributeQuantity(quantity, bucketLimit, availableBuckets);
+    var bucketLevels = new int[Math.max(0, availableBuckets)];
+    var leftoverQuantity = distributeAllowLeftover(quantity, bucketLimit, availableBuckets, bucketLevels);
+    return QuantityDistribution.of(bucketLevels, leftoverQuantity);
   }
 
   public static QuantityDistribution distributeWithoutLeftover(int quantity, int bucketLimit, int availableBuckets) {
+    var bucketLevels = new int[Math.max(0, availableBuckets)];
+    var leftoverQuantity = distributeWithoutLeftover(quantity, bucketLimit, availableBuckets, bucketLevels);
+    return QuantityDistribution.of(bucketLevels, leftoverQuantity);
+  }
+
+  /**
+   * Same as {@link #distributeAllowLeftover(int, int, int)}, but fills the caller supplied bucketLevels instead of
+   * allocating. Used buckets come first, unused buckets are set to 0.
+   *
+   * @return The leftover quantity
+   */
+  public static int distributeAllowLeftover(int quantity, int bucketLimit, int availableBuckets, int[] bucketLevels) {
+    return distributeQuantity(quantity, bucketLimit, availableBuckets, bucketLevels);
+  }
+
+  /**
+   * Same as {@link #distributeWithoutLeftover(int, int, int)}, but fills the caller supplied bucketLevels instead of
+   * allocating. Used buckets come first, unused buckets are set to 0.
+   *
+   * @return The leftover quantity, always 0
+   */
+  public static int distributeWithoutLeftover(int quantity, int bucketLimit, int availableBuckets, int[] bucketLevels) {
     return quantity > bucketLimit * availableBuckets
-        ? distributeQuantity(quantity, availableBuckets)
-        : distributeQuantity(quantity, bucketLimit, availableBuckets);
+        ? distributeQuantity(quantity, availableBuckets, bucketLevels)
+        : distributeQuantity(quantity, bucketLimit, availableBuckets, bucketLevels);
   }
 
   /**
@@ -27,43 +51,33 @@ public class DistributeQuantity {
    * @param quantity         The quantity of quantity to distribute
    * @param bucketLimit      The maximum capacity of each bucket
    * @param availableBuckets The total number of buckets available
-   * @return A DistributionResult containing the quantity distribution and any remaining quantity
+   * @param bucketLevels     The bucket levels to fill, at least availableBuckets long
+   * @return The remaining quantity
    */
-  private static QuantityDistribution distributeQuantity(int quantity, int bucketLimit, int availableBuckets) {
+  private static int distributeQuantity(int quantity, int bucketLimit, int availableBuckets, int[] bucketLevels) {
     // Validate inputs
-    if (quantity < 0 || bucketLimit <= 0 || availableBuckets <= 0) {
+    if (quantity < 0 || bucketLimit <= 0 || availableBuckets <= 0 || bucketLevels.length < availableBuckets) {
       throw new IllegalArgumentException("Invalid input parameters");
     }
 
-    // If no quantity, return empty array with no remaining quantity
+    Arrays.fill(bucketLevels, 0);
+
+    // If no quantity, leave all buckets empty with no remaining quantity
     if (quantity == 0) {
-      return new QuantityDistribution(List.of(), 0);
+      return 0;
     }
 
-    // Calculate how many buckets we need
-    int bucketsNeeded = Math.min((int) Math.ceil((double) quantity / bucketLimit), availableBuckets);
-
     // If required buckets exceed available, fill all buckets to limit
     if (quantity > bucketLimit * availableBuckets) {
-      var bucketLevels = IntStream.range(0, availableBuckets)
-          .map(i -> bucketLimit)
-          .boxed()
-          .toList();
-      return new QuantityDistribution(bucketLevels, quantity - (bucketLimit * availableBuckets));
+      Arrays.fill(bucketLevels, 0, availableBuckets, bucketLimit);
+      return quantity - (bucketLimit * availableBuckets);
     }
 
-    // Base amount each bucket gets
-    var baseAmount = quantity / bucketsNeeded;
-
-    // Remainder to distribute
-    var remainder = quantity % bucketsNeeded;
+    // Calculate how many buckets we need
+    var bucketsNeeded = Math.min((quantity - 1) / bucketLimit + 1, availableBuckets);
 
-    // Fill buckets
-    var bucketLevels = IntStream.range(0, bucketsNeeded)
-        .map(i -> baseAmount + (i < remainder ? 1 : 0))
-        .boxed()
-        .toList();
-    return new QuantityDistribution(bucketLevels, 0);
+    fill(quantity, bucketsNeeded, bucketLevels);
+    return 0;
   }
 
   /**
@@ -71,24 +85,39 @@ public class DistributeQuantity {
    *
    * @param quantity         The quantity of quantity to distribute
    * @param availableBuckets The total number of buckets available
-   * @return A DistributionResult containing the quantity distribution and any remaining quantity
+   * @param bucketLevels     The bucket levels to fill, at least availableBuckets long
+   * @return The remaining quantity, always 0
    */
-  private static QuantityDistribution distributeQuantity(int quantity, int availableBuckets) {
+  private static int distributeQuantity(int quantity, int availableBuckets, int[] bucketLevels) {
+    Arrays.fill(bucketLevels, 0);
+
     if (quantity == 0) {
-      return new QuantityDistribution(List.of(), 0);
+      return 0;
     }
 
-    var bucketsNeeded = Math.min(quantity, availableBuckets);
+    fill(quantity, Math.min(quantity, availableBuckets), bucketLevels);
+    return 0;
+  }
+
+  // Spread quantity as evenly as possible over the first bucketsNeeded buckets
+  private static void fill(int quantity, int bucketsNeeded, int[] bucketLevels) {
     var baseAmount = quantity / bucketsNeeded;
     var remainder = quantity % bucketsNeeded;
-    var bucketLevels = IntStream.range(0, bucketsNeeded)
-        .map(i -> baseAmount + (i < remainder ? 1 : 0))
-        .boxed()
-        .toList();
-    return new QuantityDistribution(bucketLevels, 0);
+    for (int i = 0; i < bucketsNeeded; i++) {
+      bucketLevels[i] = baseAmount + (i < remainder ? 1 : 0);
+    }
   }
 
-  public record QuantityDistribution(List<Integer> bucketLevels, int leftoverQuantity) {}
+  public record QuantityDistribution(List<Integer> bucketLevels, int leftoverQuantity) {
+    static QuantityDistribution of(int[] bucketLevels, int leftoverQuantity) {
+      return new QuantityDistribution(
+          Arrays.stream(bucketLevels)
+              .takeWhile(level -> level > 0)
+              .boxed()
+              .toList(),
+          leftoverQuantity);
+    }
+  }
 
   private static final Scanner scanner = new Scanner(System.in);
 
@@ -118,9 +147,11 @@ public class DistributeQuantity {
         var availableBuckets = Integer.parseInt(bInput);
 
         // Eval
-        var result = (bucketLimit == 0)
-            ? DistributeQuantity.distributeQuantity(quantity, availableBuckets)
-            : DistributeQuantity.distributeQuantity(quantity, bucketLimit, availableBuckets);
+        var bucketLevels = new int[availableBuckets];
+        var leftoverQuantity = (bucketLimit == 0)
+            ? DistributeQuantity.distributeQuantity(quantity, availableBuckets, bucketLevels)
+            : DistributeQuantity.distributeQuantity(quantity, bucketLimit, availableBuckets, bucketLevels);
+        var result = QuantityDistribution.of(bucketLevels, leftoverQuantity);
 
         // Print
         System.out.println("\nResult: " + result.toString());
@@ -0,0 +1,106 @@
+package io.earthship3;
+
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+import com.typesafe.config.Config;
+
+/**
+ * Generates IDs in the ShortUUID format {5chars}-{5chars}-{5chars} from a 62 character alphabet.
+ * <ul>
+ * <li>secure - the original generator, every character drawn from one shared SecureRandom</li>
+ * <li>fast - every character drawn from a thread local random, no shared state and no boxing</li>
+ * <li>time-ordered - the first 5 characters are the seconds since 2025 in an ASCII sorted alphabet, so IDs sort by
+ * creation time to the second, the remaining 10 characters are drawn from a thread local random</li>
+ * </ul>
+ * These IDs identify entities, they are not secrets. The fast generator has 89 bits of randomness, the time-ordered
+ * generator has 59 bits per second, enough for a million IDs per second with a collision chance of about 1 in 1.7
+ * million per second. Random IDs of other lengths come from the same source as the generator.
+ */
+public interface IdGenerator {
+  String configPath = "earth-ship-3.id-generator";
+  String ALPHABET = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+  String SORTED_ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+  String nextId();
+
+  default String randomId(int length) {
+    var random = ThreadLocalRandom.current();
+    var id = new char[length];
+    for (int i = 0; i < length; i++) {
+      id[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+    }
+    return new String(id);
+  }
+
+  static IdGenerator of(Config config) {
+    return of(config.getString(configPath));
+  }
+
+  static IdGenerator of(String name) {
+    return switch (name) {
+      case "secure" -> new Secure();
+      case "fast" -> new Fast();
+      case "time-ordered" -> new TimeOrdered(System::currentTimeMillis);
+      default -> throw new IllegalArgumentException("Unknown ID generator: " + name);
+    };
+  }
+
+  final class Secure implements IdGenerator {
+    private final SecureRandom random = new SecureRandom();
+
+    @Override
+    public String nextId() {
+      return "%s-%s-%s".formatted(randomId(5), randomId(5), randomId(5));
+    }
+
+    @Override
+    public String randomId(int length) {
+      return random.ints(length, 0, ALPHABET.length())
+          .mapToObj(ALPHABET::charAt)
+          .collect(StringBuilder::new, StringBuilder::append, StringBuilder::append)
+          .toString();
+    }
+  }
+
+  final class Fast implements IdGenerator {
+    @Override
+    public String nextId() {
+      var random = ThreadLocalRandom.current();
+      var id = new char[17];
+      for (int i = 0; i < id.length; i++) {
+        id[i] = i == 5 || i == 11 ? '-' : ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+      }
+      return new String(id);
+    }
+  }
+
+  final class TimeOrdered implements IdGenerator {
+    static final long epochSecond = Instant.parse("2025-01-01T00:00:00Z").getEpochSecond();
+    private final LongSupplier currentTimeMillis;
+
+    TimeOrdered(LongSupplier currentTimeMillis) {
+      this.currentTimeMillis = currentTimeMillis;
+    }
+
+    @Override
+    public String nextId() {
+      var random = ThreadLocalRandom.current();
+      var id = new char[17];
+
+      // 5 base 62 digits hold 29 years of seconds
+      var seconds = Math.max(0, currentTimeMillis.getAsLong() / 1000 - epochSecond);
+      for (int i = 4; i >= 0; i--) {
+        id[i] = SORTED_ALPHABET.charAt((int) (seconds % SORTED_ALPHABET.length()));
+        seconds /= SORTED_ALPHABET.length();
+      }
+
+      for (int i = 5; i < id.length; i++) {
+        id[i] = i == 5 || i == 11 ? '-' : ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+      }
+      return new String(id);
+    }
+  }
+}
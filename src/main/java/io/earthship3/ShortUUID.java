@@ -1,10 +1,10 @@
 package io.earthship3;
 
-import java.security.SecureRandom;
+import com.typesafe.config.ConfigFactory;
 
 public class ShortUUID {
-  private static final SecureRandom random = new SecureRandom();
-  private static final String ALPHABET = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+  // Chosen once from earth-ship-3.id-generator in application.conf, a system property of the same name overrides it
+  private static final IdGenerator generator = IdGenerator.of(ConfigFactory.load());
 
   /**
    * Generates a random UUID in the format: {5chars}-{5chars}-{5chars} (17 characters total)
@@ -12,7 +12,7 @@ public class ShortUUID {
    * @return A random UUID string
    */
   public static String randomUUID() {
-    return "%s-%s-%s".formatted(randomUUID(5), randomUUID(5), randomUUID(5));
+    return generator.nextId();
   }
 
   /**
@@ -26,9 +26,6 @@ public class ShortUUID {
       throw new IllegalArgumentException("Length must be positive");
     }
 
-    return random.ints(length, 0, ALPHABET.length())
-        .mapToObj(ALPHABET::charAt)
-        .collect(StringBuilder::new, StringBuilder::append, StringBuilder::append)
-        .toString();
+    return generator.randomId(length);
   }
 }
@@ -0,0 +1,48 @@
+package io.earthship3;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.typesafe.config.Config;
+
+/**
+ * Maps a stock ID to the tree trunk branches that hold its quantities. By default a stock has one trunk whose ID is the
+ * stock ID. Hot stocks can be configured with N trunk shards, where shard 0 keeps the stock ID and shards 1..N-1 are
+ * "{stockId}#{shard}". Quantities are routed to a shard by quantity ID hash and reads add up all shards.
+ *
+ * <p>
+ * Shard counts may be raised but not lowered, existing quantities stay in the shard they were added to.
+ */
+public record TrunkShards(int defaultShards, Map<String, Integer> shardsByStockId) {
+  public static final String configPath = "earth-ship-3.tree.trunk-shards";
+
+  public static TrunkShards of(Config config) {
+    var trunkShards = config.getConfig(configPath);
+    var shardsByStockId = trunkShards.hasPath("stocks")
+        ? trunkShards.getConfig("stocks").root().entrySet().stream()
+            .collect(Collectors.toMap(e -> e.getKey(), e -> ((Number) e.getValue().unwrapped()).intValue()))
+        : Map.<String, Integer>of();
+
+    return new TrunkShards(trunkShards.getInt("default"), shardsByStockId);
+  }
+
+  public int shards(String stockId) {
+    return Math.max(1, shardsByStockId.getOrDefault(stockId, defaultShards));
+  }
+
+  public String trunkId(String stockId, String quantityId) {
+    return shardId(stockId, Math.floorMod(quantityId.hashCode(), shards(stockId)));
+  }
+
+  public List<String> trunkIds(String stockId) {
+    return IntStream.range(0, shards(stockId))
+        .mapToObj(shard -> shardId(stockId, shard))
+        .toList();
+  }
+
+  static String shardId(String stockId, int shard) {
+    return shard == 0 ? stockId : "%s#%d".formatted(stockId, shard);
+  }
+}
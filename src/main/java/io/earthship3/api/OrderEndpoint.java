@@ -1,15 +1,23 @@
 package io.earthship3.api;
 
+import static io.earthship3.domain.order.OrderLine.orderLineId;
+
+import java.util.List;
 import java.util.concurrent.CompletionStage;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import akka.http.javadsl.model.HttpResponse;
 import akka.javasdk.annotations.Acl;
 import akka.javasdk.annotations.http.Get;
 import akka.javasdk.annotations.http.HttpEndpoint;
 import akka.javasdk.client.ComponentClient;
+import akka.javasdk.http.HttpResponses;
+import io.earthship3.application.order.CustomerOrdersView;
+import io.earthship3.application.order.CustomerOrdersView.CustomerOrdersRow;
 import io.earthship3.application.order.OrderEntity;
+import io.earthship3.application.order.OrderLineEntity;
 import io.earthship3.application.order.OrderView;
 import io.earthship3.application.order.OrderView.Orders;
 import io.earthship3.domain.order.Order;
@@ -33,12 +41,54 @@ public class OrderEndpoint {
         .invokeAsync();
   }
 
+  public record OrderLeaves(String orderId, String stockId, List<String> leafIds) {}
+
+  // The order items leaves that hold the order items of one stock of the order
+  @Get("/{orderId}/stock/{stockId}/leaves")
+  public CompletionStage<OrderLeaves> orderLeaves(String orderId, String stockId) {
+    log.info("GET {}/stock/{}/leaves", orderId, stockId);
+
+    return componentClient.forEventSourcedEntity(orderLineId(orderId, stockId))
+        .method(OrderLineEntity::get)
+        .invokeAsync()
+        .thenApply(orderLine -> new OrderLeaves(orderId, stockId, orderLine.leafIds()));
+  }
+
   @Get("/find-by-customer-id/{customerId}")
   public CompletionStage<Orders> findByCustomerId(String customerId) {
     log.info("GET {}", customerId);
 
+    return findByCustomerIdPage(customerId, "");
+  }
+
+  // The next page of the orders of the customer, using the nextPageToken of the previous page
+  @Get("/find-by-customer-id/{customerId}/page/{nextPageToken}")
+  public CompletionStage<Orders> findByCustomerIdPage(String customerId, String nextPageToken) {
+    log.info("GET {} page {}", customerId, nextPageToken);
+
     return componentClient.forView()
         .method(OrderView::findByCustomerId)
+        .invokeAsync(new OrderView.CustomerPage(customerId, nextPageToken));
+  }
+
+  // Order counts by status, total spend and last order time of the customer, one small row instead of the orders
+  @Get("/customer-summary/{customerId}")
+  public CompletionStage<CustomerOrdersRow> customerSummary(String customerId) {
+    log.info("GET customer-summary {}", customerId);
+
+    return componentClient.forView()
+        .method(CustomerOrdersView::findByCustomerId)
         .invokeAsync(customerId);
   }
+
+  // All the orders of the customer as server sent events, without loading them into one response
+  @Get("/stream-by-customer-id/{customerId}")
+  public HttpResponse streamByCustomerId(String customerId) {
+    log.info("GET {}", customerId);
+
+    return HttpResponses.serverSentEvents(
+        componentClient.forView()
+            .stream(OrderView::streamByCustomerId)
+            .source(customerId));
+  }
 }
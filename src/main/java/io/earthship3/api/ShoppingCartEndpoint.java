@@ -51,6 +51,16 @@ public class ShoppingCartEndpoint {
         .invokeAsync(command);
   }
 
+  // Adds, updates and removes many line items in one persist, a line item with a quantity of zero is removed
+  @Put("/apply")
+  public CompletionStage<Done> applyLineItems(ShoppingCart.Command.ApplyLineItems command) {
+    log.info("PUT {}", command);
+
+    return componentClient.forEventSourcedEntity(command.customerId())
+        .method(ShoppingCartEntity::applyLineItems)
+        .invokeAsync(command);
+  }
+
   @Put("/checkout")
   public CompletionStage<Done> checkout(ShoppingCart.Command.Checkout command) {
     log.info("PUT {}", command);
@@ -0,0 +1,96 @@
+package io.earthship3.api;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.typesafe.config.Config;
+
+import akka.javasdk.annotations.Acl;
+import akka.javasdk.annotations.http.Get;
+import akka.javasdk.annotations.http.HttpEndpoint;
+import akka.javasdk.client.ComponentClient;
+import io.earthship3.TrunkShards;
+import io.earthship3.application.allocation.StockAllocationEntity;
+import io.earthship3.application.stock.StockAvailabilityCache;
+import io.earthship3.application.stock.StockItemsBranchEntity;
+import io.earthship3.domain.stock.StockItemsBranch;
+
+@Acl(allow = @Acl.Matcher(principal = Acl.Principal.INTERNET))
+@HttpEndpoint("/stock")
+public class StockEndpoint {
+  private final Logger log = LoggerFactory.getLogger(StockEndpoint.class);
+  private final ComponentClient componentClient;
+  private final Duration availabilityTtl;
+  private final TrunkShards trunkShards;
+
+  public StockEndpoint(ComponentClient componentClient, Config config) {
+    this.componentClient = componentClient;
+    this.availabilityTtl = config.getDuration("earth-ship-3.stock.availability-ttl");
+    this.trunkShards = TrunkShards.of(config);
+  }
+
+  public record StockAvailability(String stockId, int acquired, int available) {}
+
+  @Get("/{stockId}/availability")
+  public CompletionStage<StockAvailability> availability(String stockId) {
+    log.info("GET /{}/availability", stockId);
+
+    var cache = StockAvailabilityCache.instance();
+    var trunkQuantities = trunkShards.trunkIds(stockId).stream()
+        .map(trunkId -> cache.get(trunkId, availabilityTtl, this::trunkQuantity).toCompletableFuture())
+        .toList();
+
+    return CompletableFuture.allOf(trunkQuantities.toArray(CompletableFuture[]::new))
+        .thenApply(v -> trunkQuantities.stream()
+            .map(CompletableFuture::join)
+            .reduce(StockItemsBranch.Quantity.zero(), StockItemsBranch.Quantity::add))
+        .thenApply(quantity -> new StockAvailability(stockId, quantity.acquired(), quantity.available()));
+  }
+
+  public record StockAllocationMetrics(
+      String stockId,
+      int queuedSupplyLeaves,
+      int queuedDemandLeaves,
+      int backloggedDemandLeaves,
+      int backloggedSupplyLeaves,
+      long matches,
+      long matchedQuantity,
+      long conflicts,
+      long conflictedAllocations,
+      long overflowedLeaves,
+      double allocationsPerSecond,
+      double conflictRate) {}
+
+  @Get("/{stockId}/allocation")
+  public CompletionStage<StockAllocationMetrics> allocation(String stockId) {
+    log.info("GET /{}/allocation", stockId);
+
+    return componentClient.forEventSourcedEntity(stockId)
+        .method(StockAllocationEntity::get)
+        .invokeAsync()
+        .thenApply(state -> new StockAllocationMetrics(
+            stockId,
+            state.supply().size(),
+            state.demand().size(),
+            state.backlog(),
+            state.supplyBacklog(),
+            state.metrics().matches(),
+            state.metrics().matchedQuantity(),
+            state.metrics().conflicts(),
+            state.metrics().conflictedAllocations(),
+            state.metrics().overflowedLeaves(),
+            state.metrics().allocationsPerSecond(),
+            state.metrics().conflictRate()));
+  }
+
+  private CompletionStage<StockItemsBranch.Quantity> trunkQuantity(String trunkId) {
+    return componentClient.forEventSourcedEntity(trunkId)
+        .method(StockItemsBranchEntity::get)
+        .invokeAsync()
+        .thenApply(StockItemsBranch.State::quantity);
+  }
+}
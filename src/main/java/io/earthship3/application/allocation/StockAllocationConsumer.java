@@ -0,0 +1,178 @@
+package io.earthship3.application.allocation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.consumer.Consumer;
+import io.earthship3.application.order.OrderItemsLeafEntity;
+import io.earthship3.application.order.OrderStockItemsView;
+import io.earthship3.application.stock.StockItemsLeafEntity;
+import io.earthship3.application.stock.StockItemsView;
+import io.earthship3.domain.allocation.StockAllocation;
+import io.earthship3.domain.stock.StockItemsLeaf;
+
+@ComponentId("stock-allocation-consumer")
+@Consume.FromEventSourcedEntity(StockAllocationEntity.class)
+public class StockAllocationConsumer extends Consumer {
+  private final Logger log = LoggerFactory.getLogger(StockAllocationConsumer.class);
+  private final ComponentClient componentClient;
+
+  public StockAllocationConsumer(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  public Effect onEvent(StockAllocation.Event event) {
+    return switch (event) {
+      case StockAllocation.Event.AllocationMatched e -> onEvent(e);
+      case StockAllocation.Event.AllocationsMatched e -> onEvent(e);
+      case StockAllocation.Event.ConflictRecorded e -> onEvent(e);
+      case StockAllocation.Event.BacklogRefillRequested e -> onEvent(e);
+      case StockAllocation.Event.SupplyRefillRequested e -> onEvent(e);
+      case StockAllocation.Event.BacklogRefilled e -> onEvent(e);
+      case StockAllocation.Event.SupplyRefilled e -> onEvent(e);
+      default -> effects().ignore();
+    };
+  }
+
+  // One allocation round, the stock items leaf allocates to the unallocated order items of the order items leaf and
+  // the order items leaf applies the allocation when the stock items leaf reports it
+  Effect onEvent(StockAllocation.Event.AllocationMatched event) {
+    log.info("Event: {}", event);
+
+    // Sent even when there is nothing to allocate, so both leaves announce what they have left
+    var done = unallocatedOrderItemIds(event.orderItemsLeafId(), event.quantity())
+        .thenCompose(orderItemIds -> componentClient.forEventSourcedEntity(event.stockItemsLeafId())
+            .method(StockItemsLeafEntity::requestAllocation)
+            .invokeAsync(new StockItemsLeaf.Command.AllocateStockItemsToOrderItems(
+                event.stockItemsLeafId(),
+                event.orderItemsLeafId(),
+                orderItemIds)));
+
+    return effects().asyncDone(done);
+  }
+
+  // One allocation round of one stock items leaf over several order items leaves, a single stock items leaf command
+  // in place of one per order items leaf
+  Effect onEvent(StockAllocation.Event.AllocationsMatched event) {
+    log.info("Event: {}", event);
+
+    // The order items leaves of a round are read in parallel, a round has at most maxOrderItemsLeavesPerRound of them
+    var orderItemsRequests = event.orderItemsLeaves().stream()
+        .map(match -> unallocatedOrderItemIds(match.orderItemsLeafId(), match.quantity())
+            .thenApply(orderItemIds -> new StockItemsLeaf.OrderItemsRequest(match.orderItemsLeafId(), orderItemIds))
+            .toCompletableFuture())
+        .toList();
+
+    var done = CompletableFuture.allOf(orderItemsRequests.toArray(CompletableFuture[]::new))
+        .thenCompose(v -> componentClient.forEventSourcedEntity(event.stockItemsLeafId())
+            .method(StockItemsLeafEntity::requestLeavesAllocation)
+            .invokeAsync(new StockItemsLeaf.Command.AllocateStockItemsToOrderItemsLeaves(
+                event.stockItemsLeafId(),
+                orderItemsRequests.stream().map(CompletableFuture::join).toList())));
+
+    return effects().asyncDone(done);
+  }
+
+  // The order items leaf is matched again once its backoff is over, new demand from it waits in the queue until then
+  Effect onEvent(StockAllocation.Event.ConflictRecorded event) {
+    log.info("Event: {}", event);
+
+    var backoff = Duration.between(Instant.now(), event.retryAt());
+
+    timers().createSingleTimer(
+        "stock-allocation-retry-" + event.orderItemsLeafId(),
+        backoff.isNegative() ? Duration.ZERO : backoff,
+        componentClient.forTimedAction()
+            .method(StockAllocationRetryTimedAction::retryDemand)
+            .deferred(new StockAllocation.Command.RetryDemand(event.stockId(), event.orderItemsLeafId())));
+
+    return effects().done();
+  }
+
+  // The oldest order items leaves that still have unallocated order items, as seen by the view, go back in the queue
+  Effect onEvent(StockAllocation.Event.BacklogRefillRequested event) {
+    log.info("Event: {}", event);
+
+    var done = componentClient.forView()
+        .method(OrderStockItemsView::findOldestPending)
+        .invokeAsync(new OrderStockItemsView.PendingRequest(event.stockId(), event.limit(), ""))
+        .thenCompose(page -> {
+          var demands = page.orderStockItems().stream()
+              .map(row -> new StockAllocation.Demand(row.orderStockItemId(), row.unallocated()))
+              .toList();
+
+          return componentClient.forEventSourcedEntity(event.stockId())
+              .method(StockAllocationEntity::refillBacklog)
+              .invokeAsync(new StockAllocation.Command.RefillBacklog(event.stockId(), demands, !page.hasMore()));
+        });
+
+    return effects().asyncDone(done);
+  }
+
+  // The stock items leaves with the most available stock items, as seen by the view, go back in the queue
+  Effect onEvent(StockAllocation.Event.SupplyRefillRequested event) {
+    log.info("Event: {}", event);
+
+    var done = componentClient.forView()
+        .method(StockItemsView::findAvailable)
+        .invokeAsync(new StockItemsView.SupplyRequest(event.stockId(), event.limit(), ""))
+        .thenCompose(page -> {
+          var supplies = page.stockItems().stream()
+              .map(row -> new StockAllocation.Supply(row.stockItemsLeafId(), row.available()))
+              .toList();
+
+          return componentClient.forEventSourcedEntity(event.stockId())
+              .method(StockAllocationEntity::refillSupply)
+              .invokeAsync(new StockAllocation.Command.RefillSupply(event.stockId(), supplies, !page.hasMore()));
+        });
+
+    return effects().asyncDone(done);
+  }
+
+  // The view had more than one page, the rest of the backlog is asked for again once the refilled leaves had a chance to match
+  Effect onEvent(StockAllocation.Event.BacklogRefilled event) {
+    log.info("Event: {}", event);
+
+    return event.drained() ? effects().done() : scheduleRefill(event.stockId());
+  }
+
+  Effect onEvent(StockAllocation.Event.SupplyRefilled event) {
+    log.info("Event: {}", event);
+
+    return event.drained() ? effects().done() : scheduleRefill(event.stockId());
+  }
+
+  private Effect scheduleRefill(String stockId) {
+    timers().createSingleTimer(
+        "stock-allocation-refill-" + stockId,
+        StockAllocation.State.refillInterval,
+        componentClient.forTimedAction()
+            .method(StockAllocationRetryTimedAction::requestRefill)
+            .deferred(new StockAllocation.Command.RequestRefill(stockId)));
+
+    return effects().done();
+  }
+
+  // A cancelled order items leaf still in the demand queue gets nothing, its match is dropped by the stock items leaf
+  private CompletionStage<List<String>> unallocatedOrderItemIds(String orderItemsLeafId, int quantity) {
+    return componentClient.forEventSourcedEntity(orderItemsLeafId)
+        .method(OrderItemsLeafEntity::get)
+        .invokeAsync()
+        .thenApply(orderItemsLeaf -> orderItemsLeaf.cancelledAt().isPresent()
+            ? List.<String>of()
+            : orderItemsLeaf.orderStockItems().stream()
+                .filter(item -> item.stockItemId().isEmpty())
+                .map(item -> item.orderItemId())
+                .limit(quantity)
+                .toList());
+  }
+}
@@ -0,0 +1,106 @@
+package io.earthship3.application.allocation;
+
+import static akka.Done.done;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.eventsourcedentity.EventSourcedEntity;
+import akka.javasdk.eventsourcedentity.EventSourcedEntityContext;
+import io.earthship3.domain.allocation.StockAllocation;
+
+@ComponentId("stock-allocation-entity")
+public class StockAllocationEntity extends EventSourcedEntity<StockAllocation.State, StockAllocation.Event> {
+  private final Logger log = LoggerFactory.getLogger(StockAllocationEntity.class);
+  private final String entityId;
+
+  public StockAllocationEntity(EventSourcedEntityContext context) {
+    this.entityId = context.entityId();
+  }
+
+  @Override
+  public StockAllocation.State emptyState() {
+    return StockAllocation.State.empty();
+  }
+
+  public Effect<Done> addSupply(StockAllocation.Command.AddSupply command) {
+    log.info("EntityId: {}\n_Command: {}", entityId, command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
+  public Effect<Done> addDemand(StockAllocation.Command.AddDemand command) {
+    log.info("EntityId: {}\n_Command: {}", entityId, command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
+  public Effect<Done> recordConflict(StockAllocation.Command.RecordConflict command) {
+    log.info("EntityId: {}\n_Command: {}", entityId, command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
+  public Effect<Done> retryDemand(StockAllocation.Command.RetryDemand command) {
+    log.info("EntityId: {}\n_Command: {}", entityId, command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
+  public Effect<Done> refillBacklog(StockAllocation.Command.RefillBacklog command) {
+    log.info("EntityId: {}\n_Command: {}", entityId, command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
+  public Effect<Done> refillSupply(StockAllocation.Command.RefillSupply command) {
+    log.info("EntityId: {}\n_Command: {}", entityId, command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
+  public Effect<Done> requestRefill(StockAllocation.Command.RequestRefill command) {
+    log.info("EntityId: {}\n_Command: {}", entityId, command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
+  public ReadOnlyEffect<StockAllocation.State> get() {
+    return effects().reply(currentState());
+  }
+
+  @Override
+  public StockAllocation.State applyEvent(StockAllocation.Event event) {
+    log.info("EntityId: {}\n_Event: {}", entityId, event);
+
+    return switch (event) {
+      case StockAllocation.Event.SupplyQueued e -> currentState().onEvent(e);
+      case StockAllocation.Event.DemandQueued e -> currentState().onEvent(e);
+      case StockAllocation.Event.AllocationMatched e -> currentState().onEvent(e);
+      case StockAllocation.Event.AllocationsMatched e -> currentState().onEvent(e);
+      case StockAllocation.Event.ConflictRecorded e -> currentState().onEvent(e);
+      case StockAllocation.Event.DemandBacklogged e -> currentState().onEvent(e);
+      case StockAllocation.Event.BacklogRefillRequested e -> currentState().onEvent(e);
+      case StockAllocation.Event.BacklogRefilled e -> currentState().onEvent(e);
+      case StockAllocation.Event.SupplyBacklogged e -> currentState().onEvent(e);
+      case StockAllocation.Event.SupplyRefillRequested e -> currentState().onEvent(e);
+      case StockAllocation.Event.SupplyRefilled e -> currentState().onEvent(e);
+    };
+  }
+}
@@ -0,0 +1,39 @@
+package io.earthship3.application.allocation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.timedaction.TimedAction;
+import io.earthship3.domain.allocation.StockAllocation;
+
+@ComponentId("stock-allocation-retry-timed-action")
+public class StockAllocationRetryTimedAction extends TimedAction {
+  private final Logger log = LoggerFactory.getLogger(StockAllocationRetryTimedAction.class);
+  private final ComponentClient componentClient;
+
+  public StockAllocationRetryTimedAction(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  public Effect retryDemand(StockAllocation.Command.RetryDemand command) {
+    log.info("Command: {}", command);
+
+    var done = componentClient.forEventSourcedEntity(command.stockId())
+        .method(StockAllocationEntity::retryDemand)
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
+
+  public Effect requestRefill(StockAllocation.Command.RequestRefill command) {
+    log.info("Command: {}", command);
+
+    var done = componentClient.forEventSourcedEntity(command.stockId())
+        .method(StockAllocationEntity::requestRefill)
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
+}
@@ -0,0 +1,55 @@
+package io.earthship3.application.order;
+
+import static akka.Done.done;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.eventsourcedentity.EventSourcedEntity;
+import akka.javasdk.eventsourcedentity.EventSourcedEntityContext;
+import io.earthship3.domain.order.CustomerOrders;
+
+@ComponentId("customer-orders-entity")
+public class CustomerOrdersEntity extends EventSourcedEntity<CustomerOrders.State, CustomerOrders.Event> {
+  private final Logger log = LoggerFactory.getLogger(CustomerOrdersEntity.class);
+  private final String entityId;
+
+  public CustomerOrdersEntity(EventSourcedEntityContext context) {
+    this.entityId = context.entityId();
+  }
+
+  @Override
+  public CustomerOrders.State emptyState() {
+    return CustomerOrders.State.empty();
+  }
+
+  public Effect<Done> addOrder(CustomerOrders.Command.AddOrder command) {
+    log.info("EntityId: {}\n_Command: {}", entityId, command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
+  public Effect<Done> changeOrderStatus(CustomerOrders.Command.ChangeOrderStatus command) {
+    log.info("EntityId: {}\n_Command: {}", entityId, command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
+  public ReadOnlyEffect<CustomerOrders.State> get() {
+    return effects().reply(currentState());
+  }
+
+  @Override
+  public CustomerOrders.State applyEvent(CustomerOrders.Event event) {
+    return switch (event) {
+      case CustomerOrders.Event.OrderAdded e -> currentState().onEvent(e);
+      case CustomerOrders.Event.OrderStatusChanged e -> currentState().onEvent(e);
+    };
+  }
+}
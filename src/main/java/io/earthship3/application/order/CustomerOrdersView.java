@@ -0,0 +1,85 @@
+package io.earthship3.application.order;
+
+import java.time.Instant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.annotations.Query;
+import akka.javasdk.view.TableUpdater;
+import akka.javasdk.view.View;
+import io.earthship3.domain.order.CustomerOrders;
+import io.earthship3.domain.order.Order;
+
+@ComponentId("customer-orders-view")
+public class CustomerOrdersView extends View {
+  private final Logger log = LoggerFactory.getLogger(CustomerOrdersView.class);
+
+  @Query("""
+      SELECT *
+        FROM customerOrders
+        WHERE customerId = :customerId
+      """)
+  public QueryEffect<CustomerOrdersRow> findByCustomerId(String customerId) {
+    log.info("{}", customerId);
+    return queryResult();
+  }
+
+  // One row per customer, the events carry what the row needs to update its counts without the orders of the customer
+  @Consume.FromEventSourcedEntity(CustomerOrdersEntity.class)
+  public static class CustomerOrdersConsumer extends TableUpdater<CustomerOrdersRow> {
+    private final Logger log = LoggerFactory.getLogger(CustomerOrdersConsumer.class);
+
+    @Override
+    public CustomerOrdersRow emptyRow() {
+      return new CustomerOrdersRow(null, 0, 0, 0, 0, 0L, Instant.EPOCH);
+    }
+
+    public Effect<CustomerOrdersRow> onEvent(CustomerOrders.Event event) {
+      log.info("Row: {}\n_Event: {}", rowState(), event);
+
+      return switch (event) {
+        case CustomerOrders.Event.OrderAdded e -> effects().updateRow(onEvent(e));
+        case CustomerOrders.Event.OrderStatusChanged e -> effects().updateRow(onEvent(e));
+      };
+    }
+
+    CustomerOrdersRow onEvent(CustomerOrders.Event.OrderAdded event) {
+      var row = rowState();
+      var lastOrderedAt = event.orderedAt().isAfter(row.lastOrderedAt()) ? event.orderedAt() : row.lastOrderedAt();
+
+      return new CustomerOrdersRow(
+          event.customerId(),
+          row.open() + 1,
+          row.backOrdered(),
+          row.readyToShip(),
+          row.cancelled(),
+          row.totalSpendCents() + event.totalPriceCents(),
+          lastOrderedAt);
+    }
+
+    CustomerOrdersRow onEvent(CustomerOrders.Event.OrderStatusChanged event) {
+      var row = rowState();
+
+      return new CustomerOrdersRow(
+          event.customerId(),
+          row.open() + event.delta(Order.Status.open),
+          row.backOrdered() + event.delta(Order.Status.backOrdered),
+          row.readyToShip() + event.delta(Order.Status.readyToShip),
+          row.cancelled() + event.delta(Order.Status.cancelled),
+          row.totalSpendCents() + event.spendDeltaCents(),
+          row.lastOrderedAt());
+    }
+  }
+
+  public record CustomerOrdersRow(
+      String customerId,
+      int open,
+      int backOrdered,
+      int readyToShip,
+      int cancelled,
+      long totalSpendCents,
+      Instant lastOrderedAt) {}
+}
@@ -74,6 +74,7 @@ public class OrderEntity extends EventSourcedEntity<Order.State, Order.Event> {
       case Order.Event.OrderBackOrdered e -> currentState().onEvent(e);
       case Order.Event.OrderCancelled e -> currentState().onEvent(e);
       case Order.Event.OrderItemCancelled e -> currentState().onEvent(e);
+      case Order.Event.OrderStatusChanged e -> currentState().onEvent(e);
     };
   }
 }
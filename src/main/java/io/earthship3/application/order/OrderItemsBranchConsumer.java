@@ -1,10 +1,13 @@
 package io.earthship3.application.order;
 
+import java.time.Duration;
 import java.util.Optional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.typesafe.config.Config;
+
 import akka.javasdk.annotations.ComponentId;
 import akka.javasdk.annotations.Consume;
 import akka.javasdk.client.ComponentClient;
@@ -18,20 +21,45 @@ import io.earthship3.domain.order.OrderItemsLeaf.Quantity;
 public class OrderItemsBranchConsumer extends Consumer {
   private final Logger log = LoggerFactory.getLogger(OrderItemsBranchConsumer.class);
   private final ComponentClient componentClient;
+  private final Duration rollUpWindow;
 
-  public OrderItemsBranchConsumer(ComponentClient componentClient) {
+  public OrderItemsBranchConsumer(ComponentClient componentClient, Config config) {
     this.componentClient = componentClient;
+    this.rollUpWindow = config.getDuration("earth-ship-3.tree.roll-up-window");
   }
 
   public Effect onEvent(OrderItemsBranch.Event event) {
     return switch (event) {
+      case OrderItemsBranch.Event.OrderItemsCreated e -> onEvent(e);
       case OrderItemsBranch.Event.BranchToBeAdded e -> onEvent(e);
       case OrderItemsBranch.Event.LeafToBeAdded e -> onEvent(e);
       case OrderItemsBranch.Event.DelegateToSubBranch e -> onEvent(e);
+      case OrderItemsBranch.Event.RollUpScheduled e -> onEvent(e);
+      case OrderItemsBranch.Event.QuantityRolledUp e -> onEvent(e);
       default -> effects().ignore();
     };
   }
 
+  // A branch created by delegation is not yet counted by its parent
+  Effect onEvent(OrderItemsBranch.Event.OrderItemsCreated event) {
+    log.info("Event: {}", event);
+
+    if (event.parentBranchId().isEmpty()) {
+      return effects().done();
+    }
+
+    var command = new OrderItemsBranch.Command.UpdateBranchQuantity(
+        event.parentBranchId().get(),
+        event.branchId(),
+        event.quantity());
+
+    var done = componentClient.forEventSourcedEntity(event.parentBranchId().get())
+        .method(OrderItemsBranchEntity::updateBranchQuantity)
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
+
   Effect onEvent(OrderItemsBranch.Event.BranchToBeAdded event) {
     log.info("Event: {}", event);
 
@@ -42,11 +70,11 @@ public class OrderItemsBranchConsumer extends Consumer {
         event.quantity(),
         Optional.of(event.parentBranchId()));
 
-    componentClient.forEventSourcedEntity(event.branchId())
+    var done = componentClient.forEventSourcedEntity(event.branchId())
         .method(OrderItemsBranchEntity::addQuantity)
-        .invoke(command);
+        .invokeAsync(command);
 
-    return effects().done();
+    return effects().asyncDone(done);
   }
 
   Effect onEvent(OrderItemsBranch.Event.LeafToBeAdded event) {
@@ -59,11 +87,11 @@ public class OrderItemsBranchConsumer extends Consumer {
         event.quantityId(),
         Quantity.of(event.quantity().ordered(), event.quantity().unallocated()));
 
-    componentClient.forEventSourcedEntity(event.leafId())
+    var done = componentClient.forEventSourcedEntity(event.leafId())
         .method(OrderItemsLeafEntity::createLeaf)
-        .invoke(command);
+        .invokeAsync(command);
 
-    return effects().done();
+    return effects().asyncDone(done);
   }
 
   Effect onEvent(OrderItemsBranch.Event.DelegateToSubBranch event) {
@@ -76,10 +104,39 @@ public class OrderItemsBranchConsumer extends Consumer {
         event.quantity(),
         Optional.of(event.branchId()));
 
-    componentClient.forEventSourcedEntity(event.subBranchId())
+    var done = componentClient.forEventSourcedEntity(event.subBranchId())
         .method(OrderItemsBranchEntity::addQuantity)
-        .invoke(command);
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
+
+  // One roll up per branch per window, no matter how many of its children changed
+  Effect onEvent(OrderItemsBranch.Event.RollUpScheduled event) {
+    log.info("Event: {}", event);
+
+    timers().createSingleTimer(
+        "order-items-branch-roll-up-" + event.branchId(),
+        rollUpWindow,
+        componentClient.forTimedAction()
+            .method(OrderItemsBranchRollUpTimedAction::rollUpQuantity)
+            .deferred(event.branchId()));
 
     return effects().done();
   }
+
+  Effect onEvent(OrderItemsBranch.Event.QuantityRolledUp event) {
+    log.info("Event: {}", event);
+
+    var command = new OrderItemsBranch.Command.UpdateBranchQuantity(
+        event.parentBranchId(),
+        event.branchId(),
+        event.quantity());
+
+    var done = componentClient.forEventSourcedEntity(event.parentBranchId())
+        .method(OrderItemsBranchEntity::updateBranchQuantity)
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
 }
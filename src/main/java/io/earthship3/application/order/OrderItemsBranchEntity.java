@@ -49,6 +49,14 @@ public class OrderItemsBranchEntity extends EventSourcedEntity<OrderItemsBranch.
         .thenReply(newState -> done());
   }
 
+  public Effect<Done> rollUpQuantity(OrderItemsBranch.Command.RollUpQuantity command) {
+    log.info("EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
   public ReadOnlyEffect<OrderItemsBranch.State> get() {
     return effects().reply(currentState());
   }
@@ -64,6 +72,8 @@ public class OrderItemsBranchEntity extends EventSourcedEntity<OrderItemsBranch.
       case OrderItemsBranch.Event.LeafToBeAdded e -> currentState().onEvent(e);
       case OrderItemsBranch.Event.BranchQuantityUpdated e -> currentState().onEvent(e);
       case OrderItemsBranch.Event.LeafQuantityUpdated e -> currentState().onEvent(e);
+      case OrderItemsBranch.Event.RollUpScheduled e -> currentState().onEvent(e);
+      case OrderItemsBranch.Event.QuantityRolledUp e -> currentState().onEvent(e);
     };
   }
 }
@@ -0,0 +1,29 @@
+package io.earthship3.application.order;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.timedaction.TimedAction;
+import io.earthship3.domain.order.OrderItemsBranch;
+
+@ComponentId("order-items-branch-roll-up-timed-action")
+public class OrderItemsBranchRollUpTimedAction extends TimedAction {
+  private final Logger log = LoggerFactory.getLogger(OrderItemsBranchRollUpTimedAction.class);
+  private final ComponentClient componentClient;
+
+  public OrderItemsBranchRollUpTimedAction(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  public Effect rollUpQuantity(String branchId) {
+    log.info("BranchId: {}", branchId);
+
+    var done = componentClient.forEventSourcedEntity(branchId)
+        .method(OrderItemsBranchEntity::rollUpQuantity)
+        .invokeAsync(new OrderItemsBranch.Command.RollUpQuantity(branchId));
+
+    return effects().asyncDone(done);
+  }
+}
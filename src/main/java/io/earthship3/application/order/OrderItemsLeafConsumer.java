@@ -0,0 +1,129 @@
+package io.earthship3.application.order;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.typesafe.config.Config;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.consumer.Consumer;
+import io.earthship3.AsyncCalls;
+import io.earthship3.application.allocation.StockAllocationEntity;
+import io.earthship3.application.stock.StockItemsLeafEntity;
+import io.earthship3.domain.allocation.StockAllocation;
+import io.earthship3.domain.order.OrderItemsBranch;
+import io.earthship3.domain.order.OrderItemsLeaf;
+import io.earthship3.domain.stock.StockItemsLeaf;
+
+@ComponentId("order-items-leaf-consumer")
+@Consume.FromEventSourcedEntity(OrderItemsLeafEntity.class)
+public class OrderItemsLeafConsumer extends Consumer {
+  private final Logger log = LoggerFactory.getLogger(OrderItemsLeafConsumer.class);
+  private final ComponentClient componentClient;
+  private final int parallelism;
+
+  public OrderItemsLeafConsumer(ComponentClient componentClient, Config config) {
+    this.componentClient = componentClient;
+    this.parallelism = AsyncCalls.parallelism(config);
+  }
+
+  public Effect onEvent(OrderItemsLeaf.Event event) {
+    return switch (event) {
+      case OrderItemsLeaf.Event.LeafQuantityUpdated e -> onEvent(e);
+      case OrderItemsLeaf.Event.OrderItemsNeedStockItems e -> onEvent(e);
+      case OrderItemsLeaf.Event.OrderItemsAllocationConflictDetected e -> onEvent(e);
+      case OrderItemsLeaf.Event.OrderItemsCancelled e -> onEvent(e);
+      default -> effects().ignore();
+    };
+  }
+
+  Effect onEvent(OrderItemsLeaf.Event.LeafQuantityUpdated event) {
+    log.info("Event: {}", event);
+
+    var command = new OrderItemsBranch.Command.UpdateLeafQuantity(
+        event.parentBranchId(),
+        event.leafId(),
+        OrderItemsBranch.Quantity.of(event.quantity().ordered(), event.quantity().unallocated()));
+
+    var done = componentClient.forEventSourcedEntity(event.parentBranchId())
+        .method(OrderItemsBranchEntity::updateLeafQuantity)
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
+
+  Effect onEvent(OrderItemsLeaf.Event.OrderItemsNeedStockItems event) {
+    log.info("Event: {}", event);
+
+    var command = new StockAllocation.Command.AddDemand(
+        event.stockId(),
+        event.leafId(),
+        event.quantity().unallocated());
+
+    var done = componentClient.forEventSourcedEntity(event.stockId())
+        .method(StockAllocationEntity::addDemand)
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
+
+  // The stock items reserved for an allocation that could not be applied go back to the stock items leaf, and the
+  // conflict is recorded so that this order items leaf backs off and tries another stock items leaf
+  Effect onEvent(OrderItemsLeaf.Event.OrderItemsAllocationConflictDetected event) {
+    log.info("Event: {}", event);
+
+    var allocations = event.allocations().stream()
+        .map(a -> new StockItemsLeaf.Allocation(a.stockItemsLeafId(), a.stockItemId(), a.orderItemsLeafId(), a.orderItemId()))
+        .toList();
+
+    var command = new StockItemsLeaf.Command.ReleaseOrderItemsAllocation(
+        event.stockItemsLeafId(),
+        event.leafId(),
+        allocations);
+
+    // The release and the read of the stockId of this leaf do not depend on each other
+    var released = componentClient.forEventSourcedEntity(event.stockItemsLeafId())
+        .method(StockItemsLeafEntity::releaseAllocation)
+        .invokeAsync(command);
+
+    var stockId = componentClient.forEventSourcedEntity(event.leafId())
+        .method(OrderItemsLeafEntity::get)
+        .invokeAsync()
+        .thenApply(OrderItemsLeaf.State::stockId);
+
+    var done = released.thenCombine(stockId, (reply, id) -> id)
+        .thenCompose(id -> componentClient.forEventSourcedEntity(id)
+            .method(StockAllocationEntity::recordConflict)
+            .invokeAsync(new StockAllocation.Command.RecordConflict(id, event.stockItemsLeafId(), event.leafId(), event.allocations().size())));
+
+    return effects().asyncDone(done);
+  }
+
+  // The released stock items go back to their stock items leaves, one release per stock items leaf, each of these leaves
+  // then asks the allocation engine for order items again so that the freed stock goes to the waiting demand
+  Effect onEvent(OrderItemsLeaf.Event.OrderItemsCancelled event) {
+    log.info("Event: {}", event);
+
+    var allocationsByStockItemsLeafId = event.allocations().stream()
+        .map(a -> new StockItemsLeaf.Allocation(a.stockItemsLeafId(), a.stockItemId(), a.orderItemsLeafId(), a.orderItemId()))
+        .collect(Collectors.groupingBy(StockItemsLeaf.Allocation::stockItemLeafId));
+
+    var done = AsyncCalls.forEach(List.copyOf(allocationsByStockItemsLeafId.entrySet()), parallelism, entry -> {
+      var command = new StockItemsLeaf.Command.ReleaseOrderItemsAllocation(
+          entry.getKey(),
+          event.leafId(),
+          entry.getValue());
+
+      return componentClient.forEventSourcedEntity(entry.getKey())
+          .method(StockItemsLeafEntity::releaseAllocation)
+          .invokeAsync(command);
+    });
+
+    return effects().asyncDone(done);
+  }
+}
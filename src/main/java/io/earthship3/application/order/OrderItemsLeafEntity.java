@@ -41,6 +41,14 @@ public class OrderItemsLeafEntity extends EventSourcedEntity<OrderItemsLeaf.Stat
         .thenReply(newState -> done());
   }
 
+  public Effect<Done> applyAllocation(OrderItemsLeaf.Command.ApplyStockItemsAllocation command) {
+    log.info("EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
   public Effect<Done> releaseAllocation(OrderItemsLeaf.Command.ReleaseStockItemsAllocation command) {
     log.info("EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
 
@@ -57,6 +65,14 @@ public class OrderItemsLeafEntity extends EventSourcedEntity<OrderItemsLeaf.Stat
         .thenReply(newState -> done());
   }
 
+  public Effect<Done> cancelOrderItems(OrderItemsLeaf.Command.CancelOrderItems command) {
+    log.info("EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
   public ReadOnlyEffect<OrderItemsLeaf.State> get() {
     return effects().reply(currentState());
   }
@@ -72,6 +88,7 @@ public class OrderItemsLeafEntity extends EventSourcedEntity<OrderItemsLeaf.Stat
       case OrderItemsLeaf.Event.OrderItemsAllocatedToStockItems e -> currentState().onEvent(e);
       case OrderItemsLeaf.Event.OrderItemsAllocationConflictDetected e -> currentState().onEvent(e);
       case OrderItemsLeaf.Event.BackOrderedSet e -> currentState().onEvent(e);
+      case OrderItemsLeaf.Event.OrderItemsCancelled e -> currentState().onEvent(e);
     };
   }
 }
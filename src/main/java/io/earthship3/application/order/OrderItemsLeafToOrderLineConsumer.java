@@ -0,0 +1,95 @@
+package io.earthship3.application.order;
+
+import static io.earthship3.domain.order.OrderLine.orderLineId;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.consumer.Consumer;
+import io.earthship3.domain.order.OrderItemsLeaf;
+import io.earthship3.domain.order.OrderLine;
+
+// The quantityId of an order items leaf is the orderId of the order that it holds order items for
+@ComponentId("order-items-leaf-to-order-line-consumer")
+@Consume.FromEventSourcedEntity(OrderItemsLeafEntity.class)
+public class OrderItemsLeafToOrderLineConsumer extends Consumer {
+  private final Logger log = LoggerFactory.getLogger(OrderItemsLeafToOrderLineConsumer.class);
+  private final ComponentClient componentClient;
+
+  public OrderItemsLeafToOrderLineConsumer(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  public Effect onEvent(OrderItemsLeaf.Event event) {
+    return switch (event) {
+      case OrderItemsLeaf.Event.OrderItemsCreated e -> onEvent(e);
+      case OrderItemsLeaf.Event.LeafQuantityUpdated e -> onEvent(e);
+      case OrderItemsLeaf.Event.BackOrderedSet e -> onEvent(e);
+      default -> effects().ignore();
+    };
+  }
+
+  // The line locates the leaf as soon as it exists, before any of its quantity updates
+  private Effect onEvent(OrderItemsLeaf.Event.OrderItemsCreated event) {
+    log.info("Event: {}", event);
+
+    var command = new OrderLine.Command.UpdateLeafReadiness(
+        event.quantityId(),
+        event.stockId(),
+        event.leafId(),
+        event.quantity().ordered(),
+        event.quantity().unallocated(),
+        false);
+
+    var done = componentClient.forEventSourcedEntity(orderLineId(event.quantityId(), event.stockId()))
+        .method(OrderLineEntity::updateLeafReadiness)
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
+
+  private Effect onEvent(OrderItemsLeaf.Event.LeafQuantityUpdated event) {
+    log.info("Event: {}", event);
+
+    var command = new OrderLine.Command.UpdateLeafReadiness(
+        event.quantityId(),
+        event.stockId(),
+        event.leafId(),
+        event.quantity().ordered(),
+        event.quantity().unallocated(),
+        event.backOrderedAt().isPresent());
+
+    var done = componentClient.forEventSourcedEntity(orderLineId(event.quantityId(), event.stockId()))
+        .method(OrderLineEntity::updateLeafReadiness)
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
+
+  // The event does not carry the order or the quantity of the leaf, so they are read from the leaf
+  private Effect onEvent(OrderItemsLeaf.Event.BackOrderedSet event) {
+    log.info("Event: {}", event);
+
+    var done = componentClient.forEventSourcedEntity(event.leafId())
+        .method(OrderItemsLeafEntity::get)
+        .invokeAsync()
+        .thenCompose(leaf -> {
+          var command = new OrderLine.Command.UpdateLeafReadiness(
+              leaf.quantityId(),
+              leaf.stockId(),
+              leaf.leafId(),
+              leaf.quantity().ordered(),
+              leaf.quantity().unallocated(),
+              event.backOrderedAt().isPresent());
+
+          return componentClient.forEventSourcedEntity(orderLineId(leaf.quantityId(), leaf.stockId()))
+              .method(OrderLineEntity::updateLeafReadiness)
+              .invokeAsync(command);
+        });
+
+    return effects().asyncDone(done);
+  }
+}
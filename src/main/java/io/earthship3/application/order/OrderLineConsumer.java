@@ -0,0 +1,75 @@
+package io.earthship3.application.order;
+
+import java.time.Duration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.typesafe.config.Config;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.consumer.Consumer;
+import io.earthship3.AsyncCalls;
+import io.earthship3.domain.order.Order;
+import io.earthship3.domain.order.OrderItemsLeaf;
+import io.earthship3.domain.order.OrderLine;
+
+@ComponentId("order-line-consumer")
+@Consume.FromEventSourcedEntity(OrderLineEntity.class)
+public class OrderLineConsumer extends Consumer {
+  private final Logger log = LoggerFactory.getLogger(OrderLineConsumer.class);
+  private final ComponentClient componentClient;
+  private final int parallelism;
+
+  public OrderLineConsumer(ComponentClient componentClient, Config config) {
+    this.componentClient = componentClient;
+    this.parallelism = AsyncCalls.parallelism(config);
+  }
+
+  public Effect onEvent(OrderLine.Event event) {
+    return switch (event) {
+      case OrderLine.Event.OrderLineBackOrdered e -> onEvent(e);
+      case OrderLine.Event.OrderLineReadyToShip e -> onEvent(e);
+      case OrderLine.Event.OrderLineCancelled e -> onEvent(e);
+      default -> effects().ignore();
+    };
+  }
+
+  private Effect onEvent(OrderLine.Event.OrderLineBackOrdered event) {
+    log.info("Event: {}", event);
+
+    var done = componentClient.forEventSourcedEntity(event.orderId())
+        .method(OrderEntity::orderItemBackOrdered)
+        .invokeAsync(new Order.Command.OrderItemBackOrdered(event.orderId(), event.stockId()));
+
+    return effects().asyncDone(done);
+  }
+
+  private Effect onEvent(OrderLine.Event.OrderLineReadyToShip event) {
+    log.info("Event: {}", event);
+
+    if (event.orderedAt() != null) {
+      log.info("OrderId: {}, stockId: {}, ordered to ready to ship: {}ms",
+          event.orderId(), event.stockId(), Duration.between(event.orderedAt(), event.readyToShipAt()).toMillis());
+    }
+
+    var done = componentClient.forEventSourcedEntity(event.orderId())
+        .method(OrderEntity::orderItemReadyToShip)
+        .invokeAsync(new Order.Command.OrderItemReadyToShip(event.orderId(), event.stockId()));
+
+    return effects().asyncDone(done);
+  }
+
+  // Each leaf releases its own allocations, see OrderItemsLeafConsumer for the release on the stock side
+  private Effect onEvent(OrderLine.Event.OrderLineCancelled event) {
+    log.info("Event: {}", event);
+
+    var done = AsyncCalls.forEach(event.leafIds(), parallelism, leafId -> componentClient.forEventSourcedEntity(leafId)
+        .method(OrderItemsLeafEntity::cancelOrderItems)
+        .invokeAsync(new OrderItemsLeaf.Command.CancelOrderItems(leafId)));
+
+    return effects().asyncDone(done);
+  }
+}
@@ -0,0 +1,68 @@
+package io.earthship3.application.order;
+
+import static akka.Done.done;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.eventsourcedentity.EventSourcedEntity;
+import akka.javasdk.eventsourcedentity.EventSourcedEntityContext;
+import io.earthship3.domain.order.OrderLine;
+
+@ComponentId("order-line-entity")
+public class OrderLineEntity extends EventSourcedEntity<OrderLine.State, OrderLine.Event> {
+  private final Logger log = LoggerFactory.getLogger(OrderLineEntity.class);
+  private final String entityId;
+
+  public OrderLineEntity(EventSourcedEntityContext context) {
+    this.entityId = context.entityId();
+  }
+
+  @Override
+  public OrderLine.State emptyState() {
+    return OrderLine.State.empty();
+  }
+
+  public Effect<Done> createOrderLine(OrderLine.Command.CreateOrderLine command) {
+    log.info("EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
+  public Effect<Done> updateLeafReadiness(OrderLine.Command.UpdateLeafReadiness command) {
+    log.info("EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
+  public Effect<Done> cancelOrderLine(OrderLine.Command.CancelOrderLine command) {
+    log.info("EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
+  public ReadOnlyEffect<OrderLine.State> get() {
+    return effects().reply(currentState());
+  }
+
+  @Override
+  public OrderLine.State applyEvent(OrderLine.Event event) {
+    log.info("EntityId: {}\n_State: {}\n_Event: {}", entityId, currentState(), event);
+
+    return switch (event) {
+      case OrderLine.Event.OrderLineCreated e -> currentState().onEvent(e);
+      case OrderLine.Event.LeafReadinessUpdated e -> currentState().onEvent(e);
+      case OrderLine.Event.OrderLineBackOrdered e -> currentState().onEvent(e);
+      case OrderLine.Event.OrderLineReadyToShip e -> currentState().onEvent(e);
+      case OrderLine.Event.OrderLineCancelled e -> currentState().onEvent(e);
+    };
+  }
+}
@@ -28,6 +28,22 @@ public class OrderStockItemsView extends View {
     return queryResult();
   }
 
+  // Oldest order items leaves of a stock that still have unallocated order items, a page at a time
+  @Query("""
+      SELECT * as orderStockItems, next_page_token() as nextPageToken, has_more() as hasMore
+      FROM orderStockItems
+      WHERE stockId = :stockId
+      AND unallocated > 0
+      AND readyToShip = FALSE
+      ORDER BY createdAt ASC
+      OFFSET page_token_offset(:nextPageToken)
+      LIMIT :limit
+      """)
+  public QueryEffect<OrderStockItemsPage> findOldestPending(PendingRequest request) {
+    log.info("{} {} {}", request.stockId(), request.limit(), request.nextPageToken());
+    return queryResult();
+  }
+
   @Query("""
       SELECT * as orderStockItems
       FROM orderStockItems
@@ -57,27 +73,75 @@ public class OrderStockItemsView extends View {
 
     @Override
     public OrderStockItemRow emptyRow() {
-      return new OrderStockItemRow(null, null, false, false);
+      return new OrderStockItemRow(null, null, 0, 0, false, false, 0);
     }
 
+    // Only the events that change the row, the allocation traffic of the leaf is not stored. A cancelled leaf is no
+    // longer pending, its row is deleted and the releases that arrive after the cancellation do not bring it back.
     public Effect<OrderStockItemRow> onEvent(OrderItemsLeaf.Event event) {
+      return switch (event) {
+        case OrderItemsLeaf.Event.OrderItemsCreated e -> updateRow(event);
+        case OrderItemsLeaf.Event.LeafQuantityUpdated e -> rowState().orderStockItemId() == null ? effects().ignore() : updateRow(event);
+        case OrderItemsLeaf.Event.BackOrderedSet e -> rowState().orderStockItemId() == null ? effects().ignore() : updateRow(event);
+        case OrderItemsLeaf.Event.OrderItemsCancelled e -> deleteRow(e);
+        default -> effects().ignore();
+      };
+    }
+
+    Effect<OrderStockItemRow> updateRow(OrderItemsLeaf.Event event) {
       log.info("{}", event);
       return effects().updateRow(OrderStockItemRow.eventToRow(rowState(), event));
     }
+
+    Effect<OrderStockItemRow> deleteRow(OrderItemsLeaf.Event.OrderItemsCancelled event) {
+      log.info("{}", event);
+      return effects().deleteRow();
+    }
   }
 
+  public record PendingRequest(String stockId, int limit, String nextPageToken) {}
+
   public record OrderStockItemsRows(List<OrderStockItemRow> orderStockItems) {}
 
+  public record OrderStockItemsPage(List<OrderStockItemRow> orderStockItems, String nextPageToken, boolean hasMore) {}
+
+  // createdAt is epoch millis, leaves created before it was recorded sort first
   public record OrderStockItemRow(
       String orderStockItemId,
       String stockId,
+      int ordered,
+      int unallocated,
       boolean readyToShip,
-      boolean backOrdered) {
+      boolean backOrdered,
+      long createdAt) {
 
     static OrderStockItemRow eventToRow(OrderStockItemRow row, OrderItemsLeaf.Event event) {
 
       return switch (event) {
-        case OrderItemsLeaf.Event.OrderItemsCreated e -> new OrderStockItemRow(e.leafId(), e.stockId(), false, false);
+        case OrderItemsLeaf.Event.OrderItemsCreated e -> new OrderStockItemRow(
+            e.leafId(),
+            e.stockId(),
+            e.quantity().ordered(),
+            e.quantity().unallocated(),
+            false,
+            false,
+            e.createdAt() == null ? 0 : e.createdAt().toEpochMilli());
+        case OrderItemsLeaf.Event.LeafQuantityUpdated e -> new OrderStockItemRow(
+            e.leafId(),
+            e.stockId(),
+            e.quantity().ordered(),
+            e.quantity().unallocated(),
+            e.readyToShipAt().isPresent(),
+            e.backOrderedAt().isPresent(),
+            row.createdAt());
+        case OrderItemsLeaf.Event.BackOrderedSet e -> new OrderStockItemRow(
+            e.leafId(),
+            row.stockId(),
+            row.ordered(),
+            row.unallocated(),
+            e.readyToShipAt().isPresent(),
+            e.backOrderedAt().isPresent(),
+            row.createdAt());
         default -> row;
       };
     }
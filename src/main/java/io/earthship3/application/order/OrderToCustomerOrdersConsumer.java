@@ -0,0 +1,64 @@
+package io.earthship3.application.order;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.consumer.Consumer;
+import io.earthship3.domain.order.CustomerOrders;
+import io.earthship3.domain.order.Order;
+
+@ComponentId("order-to-customer-orders-consumer")
+@Consume.FromEventSourcedEntity(OrderEntity.class)
+public class OrderToCustomerOrdersConsumer extends Consumer {
+  private final Logger log = LoggerFactory.getLogger(OrderToCustomerOrdersConsumer.class);
+  private final ComponentClient componentClient;
+
+  public OrderToCustomerOrdersConsumer(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  public Effect onEvent(Order.Event event) {
+    return switch (event) {
+      case Order.Event.OrderCreated e -> onEvent(e);
+      case Order.Event.OrderStatusChanged e -> onEvent(e);
+      default -> effects().ignore();
+    };
+  }
+
+  private Effect onEvent(Order.Event.OrderCreated event) {
+    log.info("Event: {}", event);
+
+    var command = new CustomerOrders.Command.AddOrder(
+        event.customerId(),
+        event.orderId(),
+        event.totalPrice(),
+        event.orderedAt());
+
+    var done = componentClient.forEventSourcedEntity(event.customerId())
+        .method(CustomerOrdersEntity::addOrder)
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
+
+  private Effect onEvent(Order.Event.OrderStatusChanged event) {
+    log.info("Event: {}", event);
+
+    var command = new CustomerOrders.Command.ChangeOrderStatus(
+        event.customerId(),
+        event.orderId(),
+        event.totalPrice(),
+        event.from(),
+        event.to(),
+        event.changedAt());
+
+    var done = componentClient.forEventSourcedEntity(event.customerId())
+        .method(CustomerOrdersEntity::changeOrderStatus)
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
+}
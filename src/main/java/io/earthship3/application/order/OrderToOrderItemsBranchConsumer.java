@@ -5,10 +5,13 @@ import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.typesafe.config.Config;
+
 import akka.javasdk.annotations.ComponentId;
 import akka.javasdk.annotations.Consume;
 import akka.javasdk.client.ComponentClient;
 import akka.javasdk.consumer.Consumer;
+import io.earthship3.TrunkShards;
 import io.earthship3.domain.order.Order;
 import io.earthship3.domain.order.OrderItemsBranch;
 import io.earthship3.domain.order.OrderItemsBranch.Quantity;
@@ -18,9 +21,11 @@ import io.earthship3.domain.order.OrderItemsBranch.Quantity;
 public class OrderToOrderItemsBranchConsumer extends Consumer {
   private final Logger log = LoggerFactory.getLogger(OrderToOrderItemsBranchConsumer.class);
   private final ComponentClient componentClient;
+  private final TrunkShards trunkShards;
 
-  public OrderToOrderItemsBranchConsumer(ComponentClient componentClient) {
+  public OrderToOrderItemsBranchConsumer(ComponentClient componentClient, Config config) {
     this.componentClient = componentClient;
+    this.trunkShards = TrunkShards.of(config);
   }
 
   public Effect onEvent(Order.Event event) {
@@ -33,18 +38,19 @@ public class OrderToOrderItemsBranchConsumer extends Consumer {
   private Effect onEvent(Order.Event.OrderItemCreated event) {
     log.info("Event: {}", event);
 
+    var trunkId = trunkShards.trunkId(event.stockId(), event.orderId());
     var parentOrderItemId = Optional.<String>empty();
     var command = new OrderItemsBranch.Command.AddQuantityToTree(
-        event.stockId(), // this is the tree trunk branch ID
+        trunkId, // this is the tree trunk branch ID
         event.stockId(),
         event.orderId(), // this is the branch quantity ID
         Quantity.of(event.lineItem().quantity()),
         parentOrderItemId);
 
-    componentClient.forEventSourcedEntity(event.stockId())
+    var done = componentClient.forEventSourcedEntity(trunkId)
         .method(OrderItemsBranchEntity::addQuantity)
-        .invoke(command);
+        .invokeAsync(command);
 
-    return effects().done();
+    return effects().asyncDone(done);
   }
 }
\ No newline at end of file
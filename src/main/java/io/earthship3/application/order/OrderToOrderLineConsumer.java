@@ -0,0 +1,62 @@
+package io.earthship3.application.order;
+
+import static io.earthship3.domain.order.OrderLine.orderLineId;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.consumer.Consumer;
+import io.earthship3.domain.order.Order;
+import io.earthship3.domain.order.OrderLine;
+
+@ComponentId("order-to-order-line-consumer")
+@Consume.FromEventSourcedEntity(OrderEntity.class)
+public class OrderToOrderLineConsumer extends Consumer {
+  private final Logger log = LoggerFactory.getLogger(OrderToOrderLineConsumer.class);
+  private final ComponentClient componentClient;
+
+  public OrderToOrderLineConsumer(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  public Effect onEvent(Order.Event event) {
+    return switch (event) {
+      case Order.Event.OrderItemCreated e -> onEvent(e);
+      case Order.Event.OrderItemCancelled e -> onEvent(e);
+      default -> effects().ignore();
+    };
+  }
+
+  private Effect onEvent(Order.Event.OrderItemCreated event) {
+    log.info("Event: {}", event);
+
+    var command = new OrderLine.Command.CreateOrderLine(
+        event.orderId(),
+        event.stockId(),
+        event.lineItem().quantity(),
+        event.orderedAt());
+
+    var done = componentClient.forEventSourcedEntity(orderLineId(event.orderId(), event.stockId()))
+        .method(OrderLineEntity::createOrderLine)
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
+
+  private Effect onEvent(Order.Event.OrderItemCancelled event) {
+    log.info("Event: {}", event);
+
+    var command = new OrderLine.Command.CancelOrderLine(
+        event.orderId(),
+        event.stockId());
+
+    var done = componentClient.forEventSourcedEntity(orderLineId(event.orderId(), event.stockId()))
+        .method(OrderLineEntity::cancelOrderLine)
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
+}
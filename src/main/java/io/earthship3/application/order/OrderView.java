@@ -1,6 +1,5 @@
 package io.earthship3.application.order;
 
-import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
@@ -20,16 +19,29 @@ public class OrderView extends View {
   private final Logger log = LoggerFactory.getLogger(OrderView.class);
 
   @Query("""
-      SELECT * as orders
+      SELECT * as orders, next_page_token() as nextPageToken, has_more() as hasMore
         FROM orders
         WHERE customerId = :customerId
-        LIMIT 1000
+      OFFSET page_token_offset(:nextPageToken)
+      LIMIT 1000
       """)
-  public QueryEffect<Orders> findByCustomerId(String customerId) {
-    log.info("{}", customerId);
+  public QueryEffect<Orders> findByCustomerId(CustomerPage page) {
+    log.info("{} {}", page.customerId(), page.nextPageToken());
     return queryResult();
   }
 
+  // All the orders of the customer, sent one row at a time as the view reads them
+  @Query("""
+      SELECT *
+        FROM orders
+        WHERE customerId = :customerId
+      """)
+  public QueryStreamEffect<OrderRow> streamByCustomerId(String customerId) {
+    log.info("{}", customerId);
+    return queryStreamResult();
+  }
+
+  // Each event updates only the fields of the row that it changes, without going through Order.State
   @Consume.FromEventSourcedEntity(OrderEntity.class)
   public static class OrderConsumer extends TableUpdater<OrderRow> {
     private final Logger log = LoggerFactory.getLogger(OrderConsumer.class);
@@ -41,11 +53,81 @@ public class OrderView extends View {
 
     public Effect<OrderRow> onEvent(Order.Event event) {
       log.info("Row: {}\n_Event: {}", rowState(), event);
-      return effects().updateRow(OrderRow.eventToRow(rowState(), event));
+
+      return switch (event) {
+        case Order.Event.OrderCreated e -> effects().updateRow(onEvent(e));
+        case Order.Event.OrderReadyToShip e -> effects().updateRow(onEvent(e));
+        case Order.Event.OrderBackOrdered e -> effects().updateRow(onEvent(e));
+        case Order.Event.OrderCancelled e -> effects().updateRow(onEvent(e));
+        case Order.Event.OrderItemReadyToShip e -> effects().updateRow(onEvent(e));
+        case Order.Event.OrderItemBackOrdered e -> effects().updateRow(onEvent(e));
+        default -> effects().ignore();
+      };
+    }
+
+    OrderRow onEvent(Order.Event.OrderCreated event) {
+      return new OrderRow(
+          event.orderId(),
+          event.customerId(),
+          event.lineItems().stream().map(LineItem::of).toList(),
+          event.totalPrice().doubleValue(),
+          event.orderedAt(),
+          Moment.empty(),
+          Moment.empty(),
+          Moment.empty());
+    }
+
+    OrderRow onEvent(Order.Event.OrderReadyToShip event) {
+      var row = rowState();
+      return new OrderRow(
+          row.orderId(),
+          row.customerId(),
+          row.lineItems(),
+          row.totalPrice(),
+          row.orderedAt(),
+          Moment.of(event.readyToShipAt()),
+          Moment.empty(),
+          Moment.empty());
+    }
+
+    OrderRow onEvent(Order.Event.OrderBackOrdered event) {
+      var row = rowState();
+      return new OrderRow(
+          row.orderId(),
+          row.customerId(),
+          row.lineItems(),
+          row.totalPrice(),
+          row.orderedAt(),
+          Moment.empty(),
+          Moment.of(event.backOrderedAt()),
+          Moment.empty());
+    }
+
+    OrderRow onEvent(Order.Event.OrderCancelled event) {
+      var row = rowState();
+      return new OrderRow(
+          row.orderId(),
+          row.customerId(),
+          row.lineItems(),
+          row.totalPrice(),
+          row.orderedAt(),
+          row.readyToShipAt(),
+          row.backOrderedAt(),
+          Moment.of(event.cancelledAt()));
+    }
+
+    OrderRow onEvent(Order.Event.OrderItemReadyToShip event) {
+      return rowState().withLineItemOf(event.stockId(), event.lineItems());
+    }
+
+    OrderRow onEvent(Order.Event.OrderItemBackOrdered event) {
+      return rowState().withLineItemOf(event.stockId(), event.lineItems());
     }
   }
 
-  public record Orders(List<OrderRow> orders) {}
+  public record CustomerPage(String customerId, String nextPageToken) {}
+
+  public record Orders(List<OrderRow> orders, String nextPageToken, boolean hasMore) {}
 
   public record Moment(String moment) {
     static Moment empty() {
@@ -55,10 +137,6 @@ public class OrderView extends View {
     static Moment of(Optional<Instant> moment) {
       return new Moment(moment.map(Instant::toString).orElse(""));
     }
-
-    Optional<Instant> optionalInstant() {
-      return moment.isEmpty() ? Optional.empty() : Optional.of(Instant.parse(moment));
-    }
   }
 
   public record LineItem(
@@ -69,21 +147,7 @@ public class OrderView extends View {
       Moment readyToShipAt,
       Moment backOrderedAt) {
 
-    static Order.LineItem rowToOrder(LineItem item) {
-      return new Order.LineItem(
-          item.stockId(),
-          item.stockName(),
-          BigDecimal.valueOf(item.price()),
-          item.quantity(),
-          item.readyToShipAt().optionalInstant(),
-          item.backOrderedAt().optionalInstant());
-    }
-
-    static List<Order.LineItem> rowToOrder(List<LineItem> items) {
-      return items.stream().map(LineItem::rowToOrder).toList();
-    }
-
-    static LineItem orderToRow(Order.LineItem item) {
+    static LineItem of(Order.LineItem item) {
       return new LineItem(
           item.stockId(),
           item.stockName(),
@@ -92,10 +156,6 @@ public class OrderView extends View {
           Moment.of(item.readyToShipAt()),
           Moment.of(item.backOrderedAt()));
     }
-
-    static List<LineItem> orderToRow(List<Order.LineItem> items) {
-      return items.stream().map(LineItem::orderToRow).toList();
-    }
   }
 
   public record OrderRow(
@@ -112,42 +172,24 @@ public class OrderView extends View {
       return new OrderRow(null, null, List.of(), 0.0, Instant.EPOCH, Moment.empty(), Moment.empty(), Moment.empty());
     }
 
-    static OrderRow eventToRow(OrderRow row, Order.Event event) {
-      var order = rowToOrder(row);
-
-      return switch (event) {
-        case Order.Event.OrderCreated e -> orderToRow(order.onEvent(e));
-        case Order.Event.OrderItemCreated e -> orderToRow(order.onEvent(e));
-        case Order.Event.OrderReadyToShip e -> orderToRow(order.onEvent(e));
-        case Order.Event.OrderBackOrdered e -> orderToRow(order.onEvent(e));
-        case Order.Event.OrderCancelled e -> orderToRow(order.onEvent(e));
-        case Order.Event.OrderItemCancelled e -> orderToRow(order.onEvent(e));
-        case Order.Event.OrderItemReadyToShip e -> orderToRow(order.onEvent(e));
-        case Order.Event.OrderItemBackOrdered e -> orderToRow(order.onEvent(e));
-      };
-    }
-
-    static Order.State rowToOrder(OrderRow row) {
-      return new Order.State(
-          row.orderId(),
-          row.customerId(),
-          LineItem.rowToOrder(row.lineItems()),
-          BigDecimal.valueOf(row.totalPrice()),
-          row.orderedAt(),
-          row.readyToShipAt().optionalInstant(),
-          row.backOrderedAt().optionalInstant(),
-          row.cancelledAt().optionalInstant());
-    }
-
-    static OrderRow orderToRow(Order.State state) {
-      return new OrderRow(state.orderId(),
-          state.customerId(),
-          LineItem.orderToRow(state.lineItems()),
-          state.totalPrice().doubleValue(),
-          state.orderedAt(),
-          Moment.of(state.readyToShipAt()),
-          Moment.of(state.backOrderedAt()),
-          Moment.of(state.cancelledAt()));
+    // Only the moments of the line item of the stockId are taken from the order line items of the event
+    OrderRow withLineItemOf(String stockId, List<Order.LineItem> orderLineItems) {
+      var changed = orderLineItems.stream()
+          .filter(item -> item.stockId().equals(stockId))
+          .findFirst();
+      if (changed.isEmpty()) {
+        return this;
+      }
+
+      var readyToShipAt = Moment.of(changed.get().readyToShipAt());
+      var backOrderedAt = Moment.of(changed.get().backOrderedAt());
+      var newLineItems = lineItems.stream()
+          .map(item -> item.stockId().equals(stockId)
+              ? new LineItem(item.stockId(), item.stockName(), item.price(), item.quantity(), readyToShipAt, backOrderedAt)
+              : item)
+          .toList();
+
+      return new OrderRow(orderId, customerId, newLineItems, totalPrice, orderedAt, this.readyToShipAt, this.backOrderedAt, cancelledAt);
     }
   }
 }
@@ -2,6 +2,8 @@ package io.earthship3.application.order;
 
 import static akka.Done.done;
 
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,6 +71,26 @@ public class ShoppingCartEntity extends EventSourcedEntity<ShoppingCart.State, S
         .onError(error -> effects().error(error));
   }
 
+  public Effect<Done> applyLineItems(ShoppingCart.Command.ApplyLineItems command) {
+    log.info("EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+
+    var lineItems = command.lineItems() == null ? List.<ShoppingCart.LineItem>of() : command.lineItems();
+    var keptItems = lineItems.stream().filter(item -> item.quantity() > 0).toList();
+
+    return Validator
+        .isEmpty(command.customerId(), "customerId is required")
+        .isEmpty(lineItems, "lineItems are required")
+        .isGtLimit(lineItems.size(), State.maxLineItemsPerApply, "lineItems must not exceed %d".formatted(State.maxLineItemsPerApply))
+        .isTrue(lineItems.stream().anyMatch(item -> item.stockId() == null || item.stockId().isEmpty()), "stockId is required")
+        .isTrue(lineItems.stream().anyMatch(item -> item.quantity() < 0), "quantity must not be negative")
+        .isTrue(keptItems.stream().anyMatch(item -> item.stockName() == null || item.stockName().isEmpty()), "stockName is required")
+        .isTrue(keptItems.stream().anyMatch(item -> item.price() == null || item.price().signum() <= 0), "price must be greater than 0.0")
+        .onSuccess(() -> effects()
+            .persistAll(currentState().onCommand(command).stream().toList())
+            .thenReply(newState -> done()))
+        .onError(error -> effects().error(error));
+  }
+
   public Effect<Done> checkout(ShoppingCart.Command.Checkout command) {
     log.info("EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
 
@@ -96,6 +118,7 @@ public class ShoppingCartEntity extends EventSourcedEntity<ShoppingCart.State, S
       case ShoppingCart.Event.LineItemAdded e -> currentState().onEvent(e);
       case ShoppingCart.Event.LineItemUpdated e -> currentState().onEvent(e);
       case ShoppingCart.Event.LineItemRemoved e -> currentState().onEvent(e);
+      case ShoppingCart.Event.LineItemsApplied e -> currentState().onEvent(e);
       case ShoppingCart.Event.CheckedOut e -> currentState().onEvent(e);
     };
   }
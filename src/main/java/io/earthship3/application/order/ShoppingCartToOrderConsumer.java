@@ -42,10 +42,10 @@ public class ShoppingCartToOrderConsumer extends Consumer {
             Optional.empty()))
         .toList();
     var command = new Order.Command.CreateOrder(event.orderId(), event.customerId(), event.checkedOutAt(), lineItems);
-    componentClient.forEventSourcedEntity(event.orderId())
+    var done = componentClient.forEventSourcedEntity(event.orderId())
         .method(OrderEntity::createOrder)
-        .invoke(command);
+        .invokeAsync(command);
 
-    return effects().done();
+    return effects().asyncDone(done);
   }
 }
@@ -5,10 +5,13 @@ import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.typesafe.config.Config;
+
 import akka.javasdk.annotations.ComponentId;
 import akka.javasdk.annotations.Consume;
 import akka.javasdk.client.ComponentClient;
 import akka.javasdk.consumer.Consumer;
+import io.earthship3.TrunkShards;
 import io.earthship3.domain.stock.InventoryOrder;
 import io.earthship3.domain.stock.StockItemsBranch;
 import io.earthship3.domain.stock.StockItemsBranch.Quantity;
@@ -18,9 +21,11 @@ import io.earthship3.domain.stock.StockItemsBranch.Quantity;
 public class InventoryOrderToStockItemsBranchConsumer extends Consumer {
   private final Logger log = LoggerFactory.getLogger(InventoryOrderToStockItemsBranchConsumer.class);
   private final ComponentClient componentClient;
+  private final TrunkShards trunkShards;
 
-  public InventoryOrderToStockItemsBranchConsumer(ComponentClient componentClient) {
+  public InventoryOrderToStockItemsBranchConsumer(ComponentClient componentClient, Config config) {
     this.componentClient = componentClient;
+    this.trunkShards = TrunkShards.of(config);
   }
 
   public Effect onEvent(InventoryOrder.Event event) {
@@ -33,18 +38,19 @@ public class InventoryOrderToStockItemsBranchConsumer extends Consumer {
   private Effect onEvent(InventoryOrder.Event.InventoryOrderCreated event) {
     log.info("Event: {}", event);
 
+    var trunkId = trunkShards.trunkId(event.stockId(), event.inventoryOrderId());
     var parentStockItemId = Optional.<String>empty();
     var command = new StockItemsBranch.Command.AddQuantityToTree(
-        event.stockId(), // this is the tree trunk branch ID
+        trunkId, // this is the tree trunk branch ID
         event.stockId(),
         event.inventoryOrderId(), // this is the branch quantity ID
         Quantity.of(event.quantity()),
         parentStockItemId);
 
-    componentClient.forEventSourcedEntity(event.stockId())
+    var done = componentClient.forEventSourcedEntity(trunkId)
         .method(StockItemsBranchEntity::addQuantity)
-        .invoke(command);
+        .invokeAsync(command);
 
-    return effects().done();
+    return effects().asyncDone(done);
   }
 }
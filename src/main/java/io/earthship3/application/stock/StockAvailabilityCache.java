@@ -0,0 +1,78 @@
+package io.earthship3.application.stock;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import io.earthship3.domain.stock.StockItemsBranch.Quantity;
+
+/**
+ * In-process cache of the quantity of each tree trunk, keyed by trunk ID. Entries are refreshed from trunk events
+ * consumed on this node and otherwise reloaded once they are older than the TTL. Concurrent misses for the same trunk
+ * share one load. Each entry keeps the time its quantity is as of, so a replayed or late event never replaces a newer
+ * quantity.
+ */
+public final class StockAvailabilityCache {
+  private static final StockAvailabilityCache instance = new StockAvailabilityCache();
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final Map<String, CompletableFuture<Quantity>> loads = new ConcurrentHashMap<>();
+
+  record Entry(Quantity quantity, Instant asOf, long refreshedAt) {}
+
+  StockAvailabilityCache() {}
+
+  public static StockAvailabilityCache instance() {
+    return instance;
+  }
+
+  public CompletionStage<Quantity> get(String trunkId, Duration ttl, Function<String, CompletionStage<Quantity>> loader) {
+    var entry = entries.get(trunkId);
+    if (entry != null && System.nanoTime() - entry.refreshedAt() < ttl.toNanos()) {
+      return CompletableFuture.completedFuture(entry.quantity());
+    }
+
+    var load = new CompletableFuture<Quantity>();
+    var existingLoad = loads.putIfAbsent(trunkId, load);
+    if (existingLoad != null) {
+      return existingLoad;
+    }
+
+    // The trunk state that the loader reads holds at least every event persisted before the load started
+    var loadStartedAt = Instant.now();
+    CompletionStage<Quantity> loading;
+    try {
+      loading = loader.apply(trunkId);
+    } catch (RuntimeException e) {
+      loading = CompletableFuture.failedFuture(e);
+    }
+
+    loading.whenComplete((quantity, error) -> {
+      if (error == null) {
+        refresh(trunkId, quantity, loadStartedAt);
+      }
+      loads.remove(trunkId, load);
+
+      // A stale answer is better than none when the trunk cannot be read
+      if (error == null) {
+        load.complete(quantity);
+      } else if (entry != null) {
+        load.complete(entry.quantity());
+      } else {
+        load.completeExceptionally(error);
+      }
+    });
+
+    return load;
+  }
+
+  public void refresh(String trunkId, Quantity quantity, Instant asOf) {
+    entries.merge(
+        trunkId,
+        new Entry(quantity, asOf, System.nanoTime()),
+        (current, next) -> next.asOf().isBefore(current.asOf()) ? current : next);
+  }
+}
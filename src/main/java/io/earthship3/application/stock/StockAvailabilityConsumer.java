@@ -0,0 +1,57 @@
+package io.earthship3.application.stock;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.consumer.Consumer;
+import io.earthship3.domain.stock.StockItemsBranch;
+
+@ComponentId("stock-availability-consumer")
+@Consume.FromEventSourcedEntity(StockItemsBranchEntity.class)
+public class StockAvailabilityConsumer extends Consumer {
+  private final Logger log = LoggerFactory.getLogger(StockAvailabilityConsumer.class);
+
+  public Effect onEvent(StockItemsBranch.Event event) {
+    return switch (event) {
+      case StockItemsBranch.Event.StockItemsCreated e -> onEvent(e);
+      case StockItemsBranch.Event.BranchQuantityUpdated e -> onEvent(e);
+      case StockItemsBranch.Event.LeafQuantityUpdated e -> onEvent(e);
+      default -> effects().ignore();
+    };
+  }
+
+  Effect onEvent(StockItemsBranch.Event.StockItemsCreated event) {
+    return event.parentBranchId().isEmpty()
+        ? refresh(event.branchId(), event.quantity())
+        : effects().ignore();
+  }
+
+  Effect onEvent(StockItemsBranch.Event.BranchQuantityUpdated event) {
+    return event.parentBranchId().isEmpty()
+        ? refresh(event.branchId(), event.quantity())
+        : effects().ignore();
+  }
+
+  Effect onEvent(StockItemsBranch.Event.LeafQuantityUpdated event) {
+    return event.parentBranchId().isEmpty()
+        ? refresh(event.branchId(), event.quantity())
+        : effects().ignore();
+  }
+
+  // The event time orders the quantities, an event without one is taken as the newest
+  private Effect refresh(String trunkId, StockItemsBranch.Quantity quantity) {
+    log.info("TrunkId: {}, Quantity: {}", trunkId, quantity);
+
+    var asOf = messageContext().metadata().asCloudEvent().time()
+        .map(ZonedDateTime::toInstant)
+        .orElseGet(Instant::now);
+    StockAvailabilityCache.instance().refresh(trunkId, quantity, asOf);
+
+    return effects().done();
+  }
+}
@@ -1,10 +1,13 @@
 package io.earthship3.application.stock;
 
+import java.time.Duration;
 import java.util.Optional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.typesafe.config.Config;
+
 import akka.javasdk.annotations.ComponentId;
 import akka.javasdk.annotations.Consume;
 import akka.javasdk.client.ComponentClient;
@@ -18,20 +21,45 @@ import io.earthship3.domain.stock.StockItemsLeaf.Quantity;
 public class StockItemsBranchConsumer extends Consumer {
   private final Logger log = LoggerFactory.getLogger(StockItemsBranchConsumer.class);
   private final ComponentClient componentClient;
+  private final Duration rollUpWindow;
 
-  public StockItemsBranchConsumer(ComponentClient componentClient) {
+  public StockItemsBranchConsumer(ComponentClient componentClient, Config config) {
     this.componentClient = componentClient;
+    this.rollUpWindow = config.getDuration("earth-ship-3.tree.roll-up-window");
   }
 
   public Effect onEvent(StockItemsBranch.Event event) {
     return switch (event) {
+      case StockItemsBranch.Event.StockItemsCreated e -> onEvent(e);
       case StockItemsBranch.Event.BranchToBeAdded e -> onEvent(e);
       case StockItemsBranch.Event.LeafToBeAdded e -> onEvent(e);
       case StockItemsBranch.Event.DelegateToSubBranch e -> onEvent(e);
+      case StockItemsBranch.Event.RollUpScheduled e -> onEvent(e);
+      case StockItemsBranch.Event.QuantityRolledUp e -> onEvent(e);
       default -> effects().ignore();
     };
   }
 
+  // A branch created by delegation is not yet counted by its parent
+  Effect onEvent(StockItemsBranch.Event.StockItemsCreated event) {
+    log.info("Event: {}", event);
+
+    if (event.parentBranchId().isEmpty()) {
+      return effects().done();
+    }
+
+    var command = new StockItemsBranch.Command.UpdateBranchQuantity(
+        event.parentBranchId().get(),
+        event.branchId(),
+        event.quantity());
+
+    var done = componentClient.forEventSourcedEntity(event.parentBranchId().get())
+        .method(StockItemsBranchEntity::updateBranchQuantity)
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
+
   Effect onEvent(StockItemsBranch.Event.BranchToBeAdded event) {
     log.info("Event: {}", event);
 
@@ -42,11 +70,11 @@ public class StockItemsBranchConsumer extends Consumer {
         event.quantity(),
         Optional.of(event.parentBranchId()));
 
-    componentClient.forEventSourcedEntity(event.branchId())
+    var done = componentClient.forEventSourcedEntity(event.branchId())
         .method(StockItemsBranchEntity::addQuantity)
-        .invoke(command);
+        .invokeAsync(command);
 
-    return effects().done();
+    return effects().asyncDone(done);
   }
 
   Effect onEvent(StockItemsBranch.Event.LeafToBeAdded event) {
@@ -59,11 +87,11 @@ public class StockItemsBranchConsumer extends Consumer {
         event.quantityId(),
         Quantity.of(event.quantity().acquired(), event.quantity().available()));
 
-    componentClient.forEventSourcedEntity(event.leafId())
+    var done = componentClient.forEventSourcedEntity(event.leafId())
         .method(StockItemsLeafEntity::createLeaf)
-        .invoke(command);
+        .invokeAsync(command);
 
-    return effects().done();
+    return effects().asyncDone(done);
   }
 
   Effect onEvent(StockItemsBranch.Event.DelegateToSubBranch event) {
@@ -76,10 +104,39 @@ public class StockItemsBranchConsumer extends Consumer {
         event.quantity(),
         Optional.of(event.branchId()));
 
-    componentClient.forEventSourcedEntity(event.subBranchId())
+    var done = componentClient.forEventSourcedEntity(event.subBranchId())
         .method(StockItemsBranchEntity::addQuantity)
-        .invoke(command);
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
+
+  // One roll up per branch per window, no matter how many of its children changed
+  Effect onEvent(StockItemsBranch.Event.RollUpScheduled event) {
+    log.info("Event: {}", event);
+
+    timers().createSingleTimer(
+        "stock-items-branch-roll-up-" + event.branchId(),
+        rollUpWindow,
+        componentClient.forTimedAction()
+            .method(StockItemsBranchRollUpTimedAction::rollUpQuantity)
+            .deferred(event.branchId()));
 
     return effects().done();
   }
+
+  Effect onEvent(StockItemsBranch.Event.QuantityRolledUp event) {
+    log.info("Event: {}", event);
+
+    var command = new StockItemsBranch.Command.UpdateBranchQuantity(
+        event.parentBranchId(),
+        event.branchId(),
+        event.quantity());
+
+    var done = componentClient.forEventSourcedEntity(event.parentBranchId())
+        .method(StockItemsBranchEntity::updateBranchQuantity)
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
 }
@@ -37,7 +37,7 @@ public class StockItemsBranchEntity extends EventSourcedEntity<StockItemsBranch.
     log.info("EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
 
     return effects()
-        .persist(currentState().onCommand(command))
+        .persistAll(currentState().onCommand(command))
         .thenReply(newState -> done());
   }
 
@@ -45,7 +45,15 @@ public class StockItemsBranchEntity extends EventSourcedEntity<StockItemsBranch.
     log.info("EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
 
     return effects()
-        .persist(currentState().onCommand(command))
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
+  public Effect<Done> rollUpQuantity(StockItemsBranch.Command.RollUpQuantity command) {
+    log.info("EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
         .thenReply(newState -> done());
   }
 
@@ -64,6 +72,8 @@ public class StockItemsBranchEntity extends EventSourcedEntity<StockItemsBranch.
       case StockItemsBranch.Event.LeafToBeAdded e -> currentState().onEvent(e);
       case StockItemsBranch.Event.BranchQuantityUpdated e -> currentState().onEvent(e);
       case StockItemsBranch.Event.LeafQuantityUpdated e -> currentState().onEvent(e);
+      case StockItemsBranch.Event.RollUpScheduled e -> currentState().onEvent(e);
+      case StockItemsBranch.Event.QuantityRolledUp e -> currentState().onEvent(e);
     };
   }
 }
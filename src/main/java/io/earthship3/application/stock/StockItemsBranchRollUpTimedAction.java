@@ -0,0 +1,29 @@
+package io.earthship3.application.stock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.timedaction.TimedAction;
+import io.earthship3.domain.stock.StockItemsBranch;
+
+@ComponentId("stock-items-branch-roll-up-timed-action")
+public class StockItemsBranchRollUpTimedAction extends TimedAction {
+  private final Logger log = LoggerFactory.getLogger(StockItemsBranchRollUpTimedAction.class);
+  private final ComponentClient componentClient;
+
+  public StockItemsBranchRollUpTimedAction(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  public Effect rollUpQuantity(String branchId) {
+    log.info("BranchId: {}", branchId);
+
+    var done = componentClient.forEventSourcedEntity(branchId)
+        .method(StockItemsBranchEntity::rollUpQuantity)
+        .invokeAsync(new StockItemsBranch.Command.RollUpQuantity(branchId));
+
+    return effects().asyncDone(done);
+  }
+}
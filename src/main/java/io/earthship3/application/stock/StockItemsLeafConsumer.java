@@ -0,0 +1,85 @@
+package io.earthship3.application.stock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.consumer.Consumer;
+import io.earthship3.application.allocation.StockAllocationEntity;
+import io.earthship3.application.order.OrderItemsLeafEntity;
+import io.earthship3.domain.allocation.StockAllocation;
+import io.earthship3.domain.order.OrderItemsLeaf;
+import io.earthship3.domain.stock.StockItemsBranch;
+import io.earthship3.domain.stock.StockItemsLeaf;
+
+@ComponentId("stock-items-leaf-consumer")
+@Consume.FromEventSourcedEntity(StockItemsLeafEntity.class)
+public class StockItemsLeafConsumer extends Consumer {
+  private final Logger log = LoggerFactory.getLogger(StockItemsLeafConsumer.class);
+  private final ComponentClient componentClient;
+
+  public StockItemsLeafConsumer(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  public Effect onEvent(StockItemsLeaf.Event event) {
+    return switch (event) {
+      case StockItemsLeaf.Event.LeafQuantityUpdated e -> onEvent(e);
+      case StockItemsLeaf.Event.StockItemsNeedOrderItems e -> onEvent(e);
+      case StockItemsLeaf.Event.StockItemsAllocatedToOrderItems e -> onEvent(e);
+      default -> effects().ignore();
+    };
+  }
+
+  Effect onEvent(StockItemsLeaf.Event.LeafQuantityUpdated event) {
+    log.info("Event: {}", event);
+
+    var command = new StockItemsBranch.Command.UpdateLeafQuantity(
+        event.parentBranchId(),
+        event.leafId(),
+        StockItemsBranch.Quantity.of(event.quantity().acquired(), event.quantity().available()));
+
+    var done = componentClient.forEventSourcedEntity(event.parentBranchId())
+        .method(StockItemsBranchEntity::updateLeafQuantity)
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
+
+  Effect onEvent(StockItemsLeaf.Event.StockItemsNeedOrderItems event) {
+    log.info("Event: {}", event);
+
+    var command = new StockAllocation.Command.AddSupply(
+        event.stockId(),
+        event.leafId(),
+        event.quantity().available());
+
+    var done = componentClient.forEventSourcedEntity(event.stockId())
+        .method(StockAllocationEntity::addSupply)
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
+
+  // Applied even when nothing was allocated, so the order items leaf asks for stock items again
+  Effect onEvent(StockItemsLeaf.Event.StockItemsAllocatedToOrderItems event) {
+    log.info("Event: {}", event);
+
+    var allocations = event.allocations().stream()
+        .map(a -> new OrderItemsLeaf.Allocation(a.orderItemsLeafId(), a.orderItemId(), a.stockItemLeafId(), a.stockItemId()))
+        .toList();
+
+    var command = new OrderItemsLeaf.Command.ApplyStockItemsAllocation(
+        event.orderItemsLeafId(),
+        event.leafId(),
+        allocations);
+
+    var done = componentClient.forEventSourcedEntity(event.orderItemsLeafId())
+        .method(OrderItemsLeafEntity::applyAllocation)
+        .invokeAsync(command);
+
+    return effects().asyncDone(done);
+  }
+}
@@ -41,6 +41,22 @@ public class StockItemsLeafEntity extends EventSourcedEntity<StockItemsLeaf.Stat
         .thenReply(newState -> done());
   }
 
+  public Effect<Done> requestLeavesAllocation(StockItemsLeaf.Command.AllocateStockItemsToOrderItemsLeaves command) {
+    log.info("EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
+  public Effect<Done> applyAllocation(StockItemsLeaf.Command.ApplyOrderItemsAllocation command) {
+    log.info("EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+
+    return effects()
+        .persistAll(currentState().onCommand(command))
+        .thenReply(newState -> done());
+  }
+
   public Effect<Done> setAvailableForOrders(StockItemsLeaf.Command.SetAvailableForOrders command) {
     log.info("EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
 
@@ -0,0 +1,96 @@
+package io.earthship3.application.stock;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.annotations.Query;
+import akka.javasdk.view.TableUpdater;
+import akka.javasdk.view.View;
+import io.earthship3.domain.stock.StockItemsLeaf;
+
+@ComponentId("stock-items-view")
+public class StockItemsView extends View {
+  private final Logger log = LoggerFactory.getLogger(StockItemsView.class);
+
+  // Stock items leaves of a stock that can take orders, the ones with the most available stock items first
+  @Query("""
+      SELECT * as stockItems, next_page_token() as nextPageToken, has_more() as hasMore
+      FROM stockItems
+      WHERE stockId = :stockId
+      AND available > 0
+      AND availableForOrders = TRUE
+      ORDER BY available DESC
+      OFFSET page_token_offset(:nextPageToken)
+      LIMIT :limit
+      """)
+  public QueryEffect<StockItemsPage> findAvailable(SupplyRequest request) {
+    log.info("{} {} {}", request.stockId(), request.limit(), request.nextPageToken());
+    return queryResult();
+  }
+
+  @Consume.FromEventSourcedEntity(StockItemsLeafEntity.class)
+  public static class StockItemsConsumer extends TableUpdater<StockItemsRow> {
+    private final Logger log = LoggerFactory.getLogger(StockItemsConsumer.class);
+
+    @Override
+    public StockItemsRow emptyRow() {
+      return new StockItemsRow(null, null, 0, 0, false);
+    }
+
+    // Only the events that change the row, the allocation traffic of the leaf is not stored
+    public Effect<StockItemsRow> onEvent(StockItemsLeaf.Event event) {
+      return switch (event) {
+        case StockItemsLeaf.Event.StockItemsCreated e -> updateRow(event);
+        case StockItemsLeaf.Event.LeafQuantityUpdated e -> updateRow(event);
+        case StockItemsLeaf.Event.AvailableForOrdersSet e -> updateRow(event);
+        default -> effects().ignore();
+      };
+    }
+
+    Effect<StockItemsRow> updateRow(StockItemsLeaf.Event event) {
+      log.info("{}", event);
+      return effects().updateRow(StockItemsRow.eventToRow(rowState(), event));
+    }
+  }
+
+  public record SupplyRequest(String stockId, int limit, String nextPageToken) {}
+
+  public record StockItemsPage(List<StockItemsRow> stockItems, String nextPageToken, boolean hasMore) {}
+
+  public record StockItemsRow(
+      String stockItemsLeafId,
+      String stockId,
+      int acquired,
+      int available,
+      boolean availableForOrders) {
+
+    static StockItemsRow eventToRow(StockItemsRow row, StockItemsLeaf.Event event) {
+
+      return switch (event) {
+        case StockItemsLeaf.Event.StockItemsCreated e -> new StockItemsRow(
+            e.leafId(),
+            e.stockId(),
+            e.quantity().acquired(),
+            e.quantity().available(),
+            false);
+        case StockItemsLeaf.Event.LeafQuantityUpdated e -> new StockItemsRow(
+            e.leafId(),
+            e.stockId(),
+            e.quantity().acquired(),
+            e.quantity().available(),
+            e.availableForOrders());
+        case StockItemsLeaf.Event.AvailableForOrdersSet e -> new StockItemsRow(
+            e.leafId(),
+            row.stockId(),
+            row.acquired(),
+            row.available(),
+            e.availableForOrders());
+        default -> row;
+      };
+    }
+  }
+}
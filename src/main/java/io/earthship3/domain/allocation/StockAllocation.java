@@ -0,0 +1,656 @@
+package io.earthship3.domain.allocation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Matching engine of one stock. It pairs stock items leaves with available stock items and order items leaves with
+ * unallocated order items, oldest first, and backs off order items leaves that hit allocation conflicts.
+ */
+public interface StockAllocation {
+
+  public record State(
+      String stockId,
+      List<Supply> supply,
+      List<Demand> demand,
+      int backlog,
+      int supplyBacklog,
+      List<String> inFlight,
+      List<Retry> retries,
+      List<LeafScore> leafScores,
+      Metrics metrics) {
+
+    public static final int maxQueuedLeaves = 1_000;
+    public static final int maxOrderItemsLeavesPerRound = 20;
+    public static final int backlogRefillSize = 100;
+    public static final Duration refillInterval = Duration.ofSeconds(1);
+    public static final Duration rateWindow = Duration.ofSeconds(1);
+    public static final Duration baseBackoff = Duration.ofMillis(100);
+    public static final Duration maxBackoff = Duration.ofSeconds(5);
+    public static final Duration retryResetAfter = Duration.ofSeconds(10);
+    static final double conflictRateWeight = 0.2;
+    static final double minConflictRate = 0.01;
+
+    public static State empty() {
+      return new State(null, List.of(), List.of(), 0, 0, List.of(), List.of(), List.of(), Metrics.zero());
+    }
+
+    public boolean isEmpty() {
+      return stockId == null;
+    }
+
+    // Handle command to add a stock items leaf with available stock items
+    public List<Event> onCommand(Command.AddSupply command) {
+      if (command.available() <= 0) {
+        return List.of();
+      }
+
+      var queued = supply.stream()
+          .filter(s -> s.stockItemsLeafId().equals(command.stockItemsLeafId()))
+          .findFirst();
+      if (queued.isPresent()) {
+        return queued.get().available() == command.available()
+            ? List.of()
+            : List.of(new Event.SupplyQueued(command.stockId(), command.stockItemsLeafId(), command.available()));
+      }
+
+      var now = Instant.now();
+      var matches = new ArrayList<Match>();
+      var available = command.available();
+      for (var d : demand) {
+        if (available == 0 || matches.size() == maxOrderItemsLeavesPerRound) {
+          break;
+        }
+        if (!isBackingOff(d.orderItemsLeafId(), now)) {
+          var quantity = Math.min(available, d.unallocated());
+          matches.add(new Match(d.orderItemsLeafId(), quantity));
+          available -= quantity;
+        }
+      }
+
+      if (!matches.isEmpty()) {
+        return List.of(new Event.AllocationsMatched(
+            command.stockId(),
+            command.stockItemsLeafId(),
+            matches,
+            now));
+      }
+
+      if (supply.size() >= maxQueuedLeaves) {
+        return List.of(new Event.SupplyBacklogged(command.stockId(), command.stockItemsLeafId()));
+      }
+
+      // New supply with no demand to match wakes up the order items leaves that did not fit in the demand queue
+      var supplyQueued = new Event.SupplyQueued(command.stockId(), command.stockItemsLeafId(), command.available());
+      return backlog > 0 && demand.isEmpty()
+          ? List.of(supplyQueued, new Event.BacklogRefillRequested(command.stockId(), backlogRefillSize))
+          : List.of(supplyQueued);
+    }
+
+    // Handle command to add an order items leaf with unallocated order items
+    public List<Event> onCommand(Command.AddDemand command) {
+      if (command.unallocated() <= 0) {
+        return List.of();
+      }
+
+      var queued = demand.stream()
+          .filter(d -> d.orderItemsLeafId().equals(command.orderItemsLeafId()))
+          .findFirst();
+      if (queued.isPresent()) {
+        return queued.get().unallocated() == command.unallocated()
+            ? List.of()
+            : List.of(new Event.DemandQueued(command.stockId(), command.orderItemsLeafId(), command.unallocated()));
+      }
+
+      var now = Instant.now();
+      var bestSupply = bestSupply(command.orderItemsLeafId());
+      if (bestSupply.isPresent() && !isBackingOff(command.orderItemsLeafId(), now)) {
+        return List.of(new Event.AllocationMatched(
+            command.stockId(),
+            bestSupply.get().stockItemsLeafId(),
+            command.orderItemsLeafId(),
+            Math.min(bestSupply.get().available(), command.unallocated()),
+            now));
+      }
+
+      if (demand.size() >= maxQueuedLeaves) {
+        return List.of(new Event.DemandBacklogged(command.stockId(), command.orderItemsLeafId()));
+      }
+
+      // New demand with no supply to match wakes up the stock items leaves that did not fit in the supply queue
+      var demandQueued = new Event.DemandQueued(command.stockId(), command.orderItemsLeafId(), command.unallocated());
+      return supplyBacklog > 0 && supply.isEmpty()
+          ? List.of(demandQueued, new Event.SupplyRefillRequested(command.stockId(), backlogRefillSize))
+          : List.of(demandQueued);
+    }
+
+    // Handle command to record an allocation conflict between a stock items leaf and an order items leaf
+    public List<Event> onCommand(Command.RecordConflict command) {
+      if (command.conflicts() <= 0) {
+        return List.of();
+      }
+
+      var now = Instant.now();
+      var attempts = retry(command.orderItemsLeafId())
+          .filter(r -> r.retryAt().plus(retryResetAfter).isAfter(now))
+          .map(r -> r.attempts() + 1)
+          .orElse(1);
+
+      // Equal jitter, half of the exponential backoff plus a random part of the other half
+      var backoff = baseBackoff.multipliedBy(1L << Math.min(attempts - 1, 16));
+      var backoffMs = Math.min(backoff.toMillis(), maxBackoff.toMillis());
+      var retryAt = now.plusMillis(backoffMs / 2 + ThreadLocalRandom.current().nextLong(backoffMs / 2 + 1));
+
+      return List.of(new Event.ConflictRecorded(
+          command.stockId(),
+          command.stockItemsLeafId(),
+          command.orderItemsLeafId(),
+          command.conflicts(),
+          attempts,
+          now,
+          retryAt));
+    }
+
+    // Handle command to queue the oldest backlogged order items leaves, up to the free room in the demand queue
+    public List<Event> onCommand(Command.RefillBacklog command) {
+      var events = new LinkedHashSet<Event>();
+      var state = this;
+      var refilled = 0;
+      var full = false;
+      // Adding one order items leaf only moves that leaf in or out of the queue and the in flight list, so the
+      // membership of the others is looked up in sets taken before the loop
+      var inFlightIds = Set.copyOf(inFlight);
+      var queuedIds = demand.stream().map(Demand::orderItemsLeafId).collect(Collectors.toSet());
+      var seenIds = new HashSet<String>();
+      for (var d : command.demands()) {
+        // An order items leaf in an allocation round announces itself again when the round is over
+        if (inFlightIds.contains(d.orderItemsLeafId()) || !seenIds.add(d.orderItemsLeafId())) {
+          continue;
+        }
+        // The view also lists the order items leaves that are already queued, only the others leave the backlog
+        var wasQueued = queuedIds.contains(d.orderItemsLeafId());
+        var demandEvents = state.onCommand(new Command.AddDemand(command.stockId(), d.orderItemsLeafId(), d.unallocated()));
+        if (demandEvents.stream().anyMatch(e -> e instanceof Event.DemandBacklogged)) {
+          full = true;
+          break;
+        }
+        for (var e : demandEvents) {
+          state = state.onEvent(e);
+        }
+        // A refill of the other side asked for by several of these leaves is requested once
+        events.addAll(demandEvents);
+        refilled += wasQueued ? 0 : 1;
+      }
+
+      events.add(new Event.BacklogRefilled(command.stockId(), refilled, command.drained() && !full));
+      return List.copyOf(events);
+    }
+
+    // Handle command to queue the backlogged stock items leaves, up to the free room in the supply queue
+    public List<Event> onCommand(Command.RefillSupply command) {
+      var events = new LinkedHashSet<Event>();
+      var state = this;
+      var refilled = 0;
+      var full = false;
+      // Adding one stock items leaf only moves that leaf in or out of the supply queue, see RefillBacklog
+      var queuedIds = supply.stream().map(Supply::stockItemsLeafId).collect(Collectors.toSet());
+      var seenIds = new HashSet<String>();
+      for (var s : command.supplies()) {
+        if (!seenIds.add(s.stockItemsLeafId())) {
+          continue;
+        }
+        var wasQueued = queuedIds.contains(s.stockItemsLeafId());
+        var supplyEvents = state.onCommand(new Command.AddSupply(command.stockId(), s.stockItemsLeafId(), s.available()));
+        if (supplyEvents.stream().anyMatch(e -> e instanceof Event.SupplyBacklogged)) {
+          full = true;
+          break;
+        }
+        for (var e : supplyEvents) {
+          state = state.onEvent(e);
+        }
+        // A refill of the other side asked for by several of these leaves is requested once
+        events.addAll(supplyEvents);
+        refilled += wasQueued ? 0 : 1;
+      }
+
+      events.add(new Event.SupplyRefilled(command.stockId(), refilled, command.drained() && !full));
+      return List.copyOf(events);
+    }
+
+    // Handle command to ask again for the backlogged leaves after a refill that did not reach the end of the backlog
+    public List<Event> onCommand(Command.RequestRefill command) {
+      var events = new ArrayList<Event>();
+      if (backlog > 0 && !supply.isEmpty()) {
+        events.add(new Event.BacklogRefillRequested(command.stockId(), backlogRefillSize));
+      }
+      if (supplyBacklog > 0 && !demand.isEmpty()) {
+        events.add(new Event.SupplyRefillRequested(command.stockId(), backlogRefillSize));
+      }
+      return events;
+    }
+
+    // Handle command to match an order items leaf once its backoff is over
+    public List<Event> onCommand(Command.RetryDemand command) {
+      var queued = demand.stream()
+          .filter(d -> d.orderItemsLeafId().equals(command.orderItemsLeafId()))
+          .findFirst();
+      var now = Instant.now();
+      if (queued.isEmpty() || isBackingOff(command.orderItemsLeafId(), now)) {
+        return List.of();
+      }
+
+      return bestSupply(command.orderItemsLeafId())
+          .map(s -> List.<Event>of(new Event.AllocationMatched(
+              command.stockId(),
+              s.stockItemsLeafId(),
+              command.orderItemsLeafId(),
+              Math.min(s.available(), queued.get().unallocated()),
+              now)))
+          .orElse(List.of());
+    }
+
+    public State onEvent(Event.SupplyQueued event) {
+      var newSupply = new Supply(event.stockItemsLeafId(), event.available());
+      return new State(
+          event.stockId(),
+          supply.stream().anyMatch(s -> s.stockItemsLeafId().equals(event.stockItemsLeafId()))
+              ? supply.stream().map(s -> s.stockItemsLeafId().equals(event.stockItemsLeafId()) ? newSupply : s).toList()
+              : Stream.concat(supply.stream(), Stream.of(newSupply)).toList(),
+          demand,
+          backlog,
+          supplyBacklog,
+          inFlight,
+          retries,
+          leafScores,
+          metrics);
+    }
+
+    public State onEvent(Event.DemandQueued event) {
+      var newDemand = new Demand(event.orderItemsLeafId(), event.unallocated());
+      return new State(
+          event.stockId(),
+          supply,
+          demand.stream().anyMatch(d -> d.orderItemsLeafId().equals(event.orderItemsLeafId()))
+              ? demand.stream().map(d -> d.orderItemsLeafId().equals(event.orderItemsLeafId()) ? newDemand : d).toList()
+              : Stream.concat(demand.stream(), Stream.of(newDemand)).toList(),
+          backlog,
+          supplyBacklog,
+          inFlight.stream().filter(id -> !id.equals(event.orderItemsLeafId())).toList(),
+          retries,
+          leafScores,
+          metrics);
+    }
+
+    public State onEvent(Event.AllocationMatched event) {
+      return new State(
+          event.stockId(),
+          supply.stream().filter(s -> !s.stockItemsLeafId().equals(event.stockItemsLeafId())).toList(),
+          demand.stream().filter(d -> !d.orderItemsLeafId().equals(event.orderItemsLeafId())).toList(),
+          backlog,
+          supplyBacklog,
+          sentOut(List.of(event.orderItemsLeafId())),
+          retries,
+          scored(event.stockItemsLeafId(), false),
+          metrics.matched(1, event.quantity(), event.matchedAt()));
+    }
+
+    public State onEvent(Event.AllocationsMatched event) {
+      var matchedOrderItemsLeafIds = event.orderItemsLeaves().stream().map(Match::orderItemsLeafId).collect(Collectors.toSet());
+      return new State(
+          event.stockId(),
+          supply.stream().filter(s -> !s.stockItemsLeafId().equals(event.stockItemsLeafId())).toList(),
+          demand.stream().filter(d -> !matchedOrderItemsLeafIds.contains(d.orderItemsLeafId())).toList(),
+          backlog,
+          supplyBacklog,
+          sentOut(event.orderItemsLeaves().stream().map(Match::orderItemsLeafId).toList()),
+          retries,
+          scored(event.stockItemsLeafId(), false),
+          metrics.matched(
+              event.orderItemsLeaves().size(),
+              event.orderItemsLeaves().stream().mapToInt(Match::quantity).sum(),
+              event.matchedAt()));
+    }
+
+    public State onEvent(Event.ConflictRecorded event) {
+      // Retries that are long over are dropped, so the list only holds the recently conflicted order items leaves
+      var newRetries = Stream.concat(
+          retries.stream()
+              .filter(r -> !r.orderItemsLeafId().equals(event.orderItemsLeafId()))
+              .filter(r -> r.retryAt().plus(retryResetAfter).isAfter(event.recordedAt())),
+          Stream.of(new Retry(event.orderItemsLeafId(), event.attempts(), event.stockItemsLeafId(), event.retryAt())))
+          .toList();
+      return new State(
+          event.stockId(),
+          supply,
+          demand,
+          backlog,
+          supplyBacklog,
+          inFlight,
+          newRetries.size() > maxQueuedLeaves ? newRetries.subList(newRetries.size() - maxQueuedLeaves, newRetries.size()) : newRetries,
+          scored(event.stockItemsLeafId(), true),
+          metrics.conflicted(event.conflicts(), event.recordedAt()));
+    }
+
+    public State onEvent(Event.DemandBacklogged event) {
+      return new State(
+          event.stockId(),
+          supply,
+          demand,
+          backlog + 1,
+          supplyBacklog,
+          inFlight.stream().filter(id -> !id.equals(event.orderItemsLeafId())).toList(),
+          retries,
+          leafScores,
+          metrics.overflowed());
+    }
+
+    public State onEvent(Event.SupplyBacklogged event) {
+      return new State(event.stockId(), supply, demand, backlog, supplyBacklog + 1, inFlight, retries, leafScores, metrics.overflowed());
+    }
+
+    public State onEvent(Event.BacklogRefillRequested event) {
+      return this;
+    }
+
+    public State onEvent(Event.SupplyRefillRequested event) {
+      return this;
+    }
+
+    public State onEvent(Event.SupplyRefilled event) {
+      return new State(
+          event.stockId(),
+          supply,
+          demand,
+          backlog,
+          event.drained() ? 0 : Math.max(1, supplyBacklog - event.refilled()),
+          inFlight,
+          retries,
+          leafScores,
+          metrics);
+    }
+
+    // The backlog count is a hint, the view lists queued and in flight leaves too, so only a drained refill clears it
+    public State onEvent(Event.BacklogRefilled event) {
+      return new State(
+          event.stockId(),
+          supply,
+          demand,
+          event.drained() ? 0 : Math.max(1, backlog - event.refilled()),
+          supplyBacklog,
+          inFlight,
+          retries,
+          leafScores,
+          metrics);
+    }
+
+    public State onEvent(Event event) {
+      return switch (event) {
+        case Event.SupplyQueued e -> onEvent(e);
+        case Event.DemandQueued e -> onEvent(e);
+        case Event.AllocationMatched e -> onEvent(e);
+        case Event.AllocationsMatched e -> onEvent(e);
+        case Event.ConflictRecorded e -> onEvent(e);
+        case Event.DemandBacklogged e -> onEvent(e);
+        case Event.BacklogRefillRequested e -> onEvent(e);
+        case Event.BacklogRefilled e -> onEvent(e);
+        case Event.SupplyBacklogged e -> onEvent(e);
+        case Event.SupplyRefillRequested e -> onEvent(e);
+        case Event.SupplyRefilled e -> onEvent(e);
+      };
+    }
+
+    private Optional<Retry> retry(String orderItemsLeafId) {
+      return retries.stream()
+          .filter(r -> r.orderItemsLeafId().equals(orderItemsLeafId))
+          .findFirst();
+    }
+
+    private boolean isBackingOff(String orderItemsLeafId, Instant now) {
+      return retry(orderItemsLeafId).map(r -> r.retryAt().isAfter(now)).orElse(false);
+    }
+
+    private double conflictRate(String stockItemsLeafId) {
+      return leafScores.stream()
+          .filter(s -> s.stockItemsLeafId().equals(stockItemsLeafId))
+          .mapToDouble(LeafScore::conflictRate)
+          .findFirst()
+          .orElse(0.0);
+    }
+
+    // The queued stock items leaf with the lowest recent conflict rate, oldest first, other than the one that the order
+    // items leaf last conflicted with unless that is the only one
+    private Optional<Supply> bestSupply(String orderItemsLeafId) {
+      var avoidStockItemsLeafId = retry(orderItemsLeafId).map(Retry::stockItemsLeafId).orElse("");
+      var candidates = supply.stream()
+          .filter(s -> !s.stockItemsLeafId().equals(avoidStockItemsLeafId))
+          .toList();
+      return (candidates.isEmpty() ? supply : candidates).stream()
+          .min(Comparator.comparingDouble(s -> conflictRate(s.stockItemsLeafId())));
+    }
+
+    // Order items leaves of a match are in flight until they announce what is left, fully allocated ones never do and
+    // are dropped once the list is full
+    private List<String> sentOut(List<String> orderItemsLeafIds) {
+      var sentOutIds = Set.copyOf(orderItemsLeafIds);
+      var newInFlight = Stream.concat(
+          inFlight.stream().filter(id -> !sentOutIds.contains(id)),
+          orderItemsLeafIds.stream())
+          .toList();
+      return newInFlight.size() > maxQueuedLeaves ? newInFlight.subList(newInFlight.size() - maxQueuedLeaves, newInFlight.size()) : newInFlight;
+    }
+
+    // Moving average of conflicts per round of a stock items leaf, leaves without recent conflicts are dropped
+    private List<LeafScore> scored(String stockItemsLeafId, boolean conflicted) {
+      var newRate = conflictRate(stockItemsLeafId) * (1 - conflictRateWeight) + (conflicted ? conflictRateWeight : 0.0);
+      return Stream.concat(
+          leafScores.stream().filter(s -> !s.stockItemsLeafId().equals(stockItemsLeafId)),
+          newRate < minConflictRate ? Stream.empty() : Stream.of(new LeafScore(stockItemsLeafId, newRate)))
+          .toList();
+    }
+  }
+
+  record Supply(String stockItemsLeafId, int available) {}
+
+  record Demand(String orderItemsLeafId, int unallocated) {}
+
+  record Match(String orderItemsLeafId, int quantity) {}
+
+  record Retry(String orderItemsLeafId, int attempts, String stockItemsLeafId, Instant retryAt) {}
+
+  record LeafScore(String stockItemsLeafId, double conflictRate) {}
+
+  // Allocations per second and conflicts per matched order items leaf are those of the last completed rate window
+  record Metrics(
+      long matches,
+      long matchedQuantity,
+      long conflicts,
+      long conflictedAllocations,
+      long overflowedLeaves,
+      Instant rateWindowStartedAt,
+      long rateWindowMatches,
+      long rateWindowQuantity,
+      long rateWindowConflicts,
+      double allocationsPerSecond,
+      double conflictRate) {
+
+    public static Metrics zero() {
+      return new Metrics(0, 0, 0, 0, 0, Instant.EPOCH, 0, 0, 0, 0.0, 0.0);
+    }
+
+    Metrics matched(int leaves, int quantity, Instant matchedAt) {
+      var m = rolled(matchedAt);
+      return new Metrics(
+          m.matches + leaves,
+          m.matchedQuantity + quantity,
+          m.conflicts,
+          m.conflictedAllocations,
+          m.overflowedLeaves,
+          m.rateWindowStartedAt,
+          m.rateWindowMatches + leaves,
+          m.rateWindowQuantity + quantity,
+          m.rateWindowConflicts,
+          m.allocationsPerSecond,
+          m.conflictRate);
+    }
+
+    Metrics conflicted(int allocations, Instant recordedAt) {
+      var m = rolled(recordedAt);
+      return new Metrics(
+          m.matches,
+          m.matchedQuantity,
+          m.conflicts + 1,
+          m.conflictedAllocations + allocations,
+          m.overflowedLeaves,
+          m.rateWindowStartedAt,
+          m.rateWindowMatches,
+          m.rateWindowQuantity,
+          m.rateWindowConflicts + 1,
+          m.allocationsPerSecond,
+          m.conflictRate);
+    }
+
+    Metrics overflowed() {
+      return new Metrics(
+          matches,
+          matchedQuantity,
+          conflicts,
+          conflictedAllocations,
+          overflowedLeaves + 1,
+          rateWindowStartedAt,
+          rateWindowMatches,
+          rateWindowQuantity,
+          rateWindowConflicts,
+          allocationsPerSecond,
+          conflictRate);
+    }
+
+    // Close the rate window once it has run its length, a gap of more than a whole window counts as an idle window
+    private Metrics rolled(Instant at) {
+      var elapsed = Duration.between(rateWindowStartedAt, at);
+      if (elapsed.compareTo(State.rateWindow) < 0) {
+        return this;
+      }
+
+      var closed = elapsed.compareTo(State.rateWindow.multipliedBy(2)) < 0;
+      return new Metrics(
+          matches,
+          matchedQuantity,
+          conflicts,
+          conflictedAllocations,
+          overflowedLeaves,
+          at,
+          0,
+          0,
+          0,
+          closed ? rateWindowQuantity * 1000.0 / elapsed.toMillis() : 0.0,
+          closed && rateWindowMatches > 0 ? (double) rateWindowConflicts / rateWindowMatches : 0.0);
+    }
+  }
+
+  public sealed interface Command {
+    record AddSupply(
+        String stockId,
+        String stockItemsLeafId,
+        int available) implements Command {}
+
+    record AddDemand(
+        String stockId,
+        String orderItemsLeafId,
+        int unallocated) implements Command {}
+
+    record RecordConflict(
+        String stockId,
+        String stockItemsLeafId,
+        String orderItemsLeafId,
+        int conflicts) implements Command {}
+
+    record RetryDemand(
+        String stockId,
+        String orderItemsLeafId) implements Command {}
+
+    // demands oldest first, drained when they are the last of the backlog
+    record RefillBacklog(
+        String stockId,
+        List<Demand> demands,
+        boolean drained) implements Command {}
+
+    // supplies most available first, drained when they are the last of the supply backlog
+    record RefillSupply(
+        String stockId,
+        List<Supply> supplies,
+        boolean drained) implements Command {}
+
+    record RequestRefill(
+        String stockId) implements Command {}
+  }
+
+  public sealed interface Event {
+    record SupplyQueued(
+        String stockId,
+        String stockItemsLeafId,
+        int available) implements Event {}
+
+    record DemandQueued(
+        String stockId,
+        String orderItemsLeafId,
+        int unallocated) implements Event {}
+
+    record AllocationMatched(
+        String stockId,
+        String stockItemsLeafId,
+        String orderItemsLeafId,
+        int quantity,
+        Instant matchedAt) implements Event {}
+
+    record AllocationsMatched(
+        String stockId,
+        String stockItemsLeafId,
+        List<Match> orderItemsLeaves,
+        Instant matchedAt) implements Event {}
+
+    record ConflictRecorded(
+        String stockId,
+        String stockItemsLeafId,
+        String orderItemsLeafId,
+        int conflicts,
+        int attempts,
+        Instant recordedAt,
+        Instant retryAt) implements Event {}
+
+    record DemandBacklogged(
+        String stockId,
+        String orderItemsLeafId) implements Event {}
+
+    record BacklogRefillRequested(
+        String stockId,
+        int limit) implements Event {}
+
+    record BacklogRefilled(
+        String stockId,
+        int refilled,
+        boolean drained) implements Event {}
+
+    record SupplyBacklogged(
+        String stockId,
+        String stockItemsLeafId) implements Event {}
+
+    record SupplyRefillRequested(
+        String stockId,
+        int limit) implements Event {}
+
+    record SupplyRefilled(
+        String stockId,
+        int refilled,
+        boolean drained) implements Event {}
+  }
+}
@@ -0,0 +1,131 @@
+package io.earthship3.domain.order;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import io.earthship3.domain.order.Order.Status;
+
+/**
+ * Order counts by status, total spend and last order time of one customer, keyed by customerId. Each order reports the
+ * status it moves from and to, so only the counts are kept, and the recent changes to skip a redelivered one.
+ */
+public interface CustomerOrders {
+
+  // Money is kept in cents, so the entity and the view add up the same amounts
+  public static long cents(BigDecimal amount) {
+    return amount.setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+  }
+
+  public record State(
+      String customerId,
+      int open,
+      int backOrdered,
+      int readyToShip,
+      int cancelled,
+      long totalSpendCents,
+      Instant lastOrderedAt,
+      LinkedHashSet<String> recentChanges) {
+
+    public static final int maxRecentChanges = 1_000;
+
+    public static State empty() {
+      return new State(null, 0, 0, 0, 0, 0L, Instant.EPOCH, new LinkedHashSet<>());
+    }
+
+    public boolean isEmpty() {
+      return customerId == null;
+    }
+
+    // Handle command to count a new order of the customer as open
+    public List<Event> onCommand(Command.AddOrder command) {
+      if (recentChanges.contains(changeId(command.orderId(), Status.open, command.orderedAt()))) {
+        return List.of();
+      }
+
+      return List.of(new Event.OrderAdded(command.customerId(), command.orderId(), cents(command.totalPrice()), command.orderedAt()));
+    }
+
+    // Handle command to move an order of the customer from the count of its old status to the count of its new status
+    public List<Event> onCommand(Command.ChangeOrderStatus command) {
+      if (recentChanges.contains(changeId(command.orderId(), command.to(), command.changedAt()))) {
+        return List.of();
+      }
+
+      return List.of(new Event.OrderStatusChanged(
+          command.customerId(),
+          command.orderId(),
+          cents(command.totalPrice()),
+          command.from(),
+          command.to(),
+          command.changedAt()));
+    }
+
+    public State onEvent(Event.OrderAdded event) {
+      var newLastOrderedAt = event.orderedAt().isAfter(lastOrderedAt) ? event.orderedAt() : lastOrderedAt;
+
+      return new State(
+          event.customerId(),
+          open + 1,
+          backOrdered,
+          readyToShip,
+          cancelled,
+          totalSpendCents + event.totalPriceCents(),
+          newLastOrderedAt,
+          withRecentChange(changeId(event.orderId(), Status.open, event.orderedAt())));
+    }
+
+    public State onEvent(Event.OrderStatusChanged event) {
+      var newTotalSpendCents = totalSpendCents + event.spendDeltaCents();
+
+      return new State(
+          event.customerId(),
+          open + event.delta(Status.open),
+          backOrdered + event.delta(Status.backOrdered),
+          readyToShip + event.delta(Status.readyToShip),
+          cancelled + event.delta(Status.cancelled),
+          newTotalSpendCents,
+          lastOrderedAt,
+          withRecentChange(changeId(event.orderId(), event.to(), event.changedAt())));
+    }
+
+    // An order can move to the same status more than once, the time of the change tells a redelivery apart
+    static String changeId(String orderId, Status status, Instant changedAt) {
+      return "%s_%s_%s".formatted(orderId, status, changedAt);
+    }
+
+    // The oldest change is dropped once the set is full, in insertion order
+    private LinkedHashSet<String> withRecentChange(String changeId) {
+      var newRecentChanges = new LinkedHashSet<>(recentChanges);
+      newRecentChanges.add(changeId);
+      if (newRecentChanges.size() > maxRecentChanges) {
+        newRecentChanges.remove(newRecentChanges.iterator().next());
+      }
+      return newRecentChanges;
+    }
+  }
+
+  public sealed interface Command {
+    record AddOrder(String customerId, String orderId, BigDecimal totalPrice, Instant orderedAt) implements Command {}
+
+    record ChangeOrderStatus(String customerId, String orderId, BigDecimal totalPrice, Status from, Status to, Instant changedAt) implements Command {}
+  }
+
+  public sealed interface Event {
+    record OrderAdded(String customerId, String orderId, long totalPriceCents, Instant orderedAt) implements Event {}
+
+    // The total price and previous status of the order let the summary view move the order between counts
+    record OrderStatusChanged(String customerId, String orderId, long totalPriceCents, Status from, Status to, Instant changedAt) implements Event {
+      public int delta(Status status) {
+        return (to == status ? 1 : 0) - (from == status ? 1 : 0);
+      }
+
+      // A cancelled order does not count towards the total spend
+      public long spendDeltaCents() {
+        return -delta(Status.cancelled) * totalPriceCents;
+      }
+    }
+  }
+}
@@ -8,6 +8,13 @@ import java.util.stream.Stream;
 
 public interface Order {
 
+  public enum Status {
+    open,
+    backOrdered,
+    readyToShip,
+    cancelled
+  }
+
   public record LineItem(
       String stockId,
       String stockName,
@@ -43,6 +50,13 @@ public interface Order {
       return orderId == null;
     }
 
+    public Status status() {
+      return cancelledAt.isPresent() ? Status.cancelled
+          : readyToShipAt.isPresent() ? Status.readyToShip
+              : backOrderedAt.isPresent() ? Status.backOrdered
+                  : Status.open;
+    }
+
     public List<Event> onCommand(Command.CreateOrder command) {
       if (!lineItems.isEmpty()) {
         return List.of();
@@ -54,7 +68,7 @@ public interface Order {
 
       var event = new Event.OrderCreated(command.orderId(), command.customerId(), command.orderedAt(), List.copyOf(command.lineItems()), totalPrice);
       var events = command.lineItems().stream()
-          .map(item -> new Event.OrderItemCreated(command.orderId(), item.stockId(), item))
+          .map(item -> new Event.OrderItemCreated(command.orderId(), item.stockId(), item, command.orderedAt()))
           .toList();
 
       return Stream.concat(Stream.of((Event) event), events.stream()).toList();
@@ -70,9 +84,15 @@ public interface Order {
           .toList();
       var orderItemReadyToShip = new Event.OrderItemReadyToShip(command.orderId(), command.stockId(), newLineItems);
 
-      return isOrderReadyToShip(newLineItems)
-          ? List.of(orderItemReadyToShip, new Event.OrderReadyToShip(orderId, Optional.of(Instant.now())))
-          : List.of(orderItemReadyToShip);
+      if (!isOrderReadyToShip(newLineItems)) {
+        return List.of(orderItemReadyToShip);
+      }
+
+      var now = Instant.now();
+      var orderReadyToShip = new Event.OrderReadyToShip(orderId, Optional.of(now));
+      return status() == Status.readyToShip
+          ? List.of(orderItemReadyToShip, orderReadyToShip)
+          : List.of(orderItemReadyToShip, orderReadyToShip, statusChanged(Status.readyToShip, now));
     }
 
     public List<Event> onCommand(Command.OrderItemBackOrdered command) {
@@ -85,9 +105,15 @@ public interface Order {
           .toList();
       var orderItemBackOrdered = new Event.OrderItemBackOrdered(command.orderId(), command.stockId(), newLineItems);
 
-      return isOrderBackOrdered(newLineItems)
-          ? List.of(orderItemBackOrdered, new Event.OrderBackOrdered(orderId, Optional.of(Instant.now())))
-          : List.of(orderItemBackOrdered);
+      if (!isOrderBackOrdered(newLineItems)) {
+        return List.of(orderItemBackOrdered);
+      }
+
+      var now = Instant.now();
+      var orderBackOrdered = new Event.OrderBackOrdered(orderId, Optional.of(now));
+      return status() == Status.backOrdered
+          ? List.of(orderItemBackOrdered, orderBackOrdered)
+          : List.of(orderItemBackOrdered, orderBackOrdered, statusChanged(Status.backOrdered, now));
     }
 
     public List<Event> onCommand(Command.CancelOrder command) {
@@ -95,12 +121,17 @@ public interface Order {
         return List.of();
       }
 
-      var event = new Event.OrderCancelled(orderId, Optional.of(Instant.now()));
+      var now = Instant.now();
+      var event = new Event.OrderCancelled(orderId, Optional.of(now));
       var events = lineItems.stream()
           .map(item -> new Event.OrderItemCancelled(orderId, item.stockId(), Optional.of(Instant.now())))
           .toList();
 
-      return Stream.concat(Stream.of((Event) event), events.stream()).toList();
+      return Stream.concat(Stream.of(event, statusChanged(Status.cancelled, now)), events.stream()).toList();
+    }
+
+    private Event statusChanged(Status to, Instant changedAt) {
+      return new Event.OrderStatusChanged(orderId, customerId, totalPrice, status(), to, changedAt);
     }
 
     private boolean isOrderReadyToShip(List<LineItem> lineItems) {
@@ -189,6 +220,10 @@ public interface Order {
     public State onEvent(Event.OrderItemCancelled event) {
       return this;
     }
+
+    public State onEvent(Event.OrderStatusChanged event) {
+      return this;
+    }
   }
 
   public sealed interface Command {
@@ -204,7 +239,7 @@ public interface Order {
   public sealed interface Event {
     record OrderCreated(String orderId, String customerId, Instant orderedAt, List<LineItem> lineItems, BigDecimal totalPrice) implements Event {}
 
-    record OrderItemCreated(String orderId, String stockId, LineItem lineItem) implements Event {}
+    record OrderItemCreated(String orderId, String stockId, LineItem lineItem, Instant orderedAt) implements Event {}
 
     record OrderReadyToShip(String orderId, Optional<Instant> readyToShipAt) implements Event {}
 
@@ -217,5 +252,8 @@ public interface Order {
     record OrderCancelled(String orderId, Optional<Instant> cancelledAt) implements Event {}
 
     record OrderItemCancelled(String orderId, String stockId, Optional<Instant> cancelledAt) implements Event {}
+
+    // Emitted each time the status of an order changes, with the status it moves from
+    record OrderStatusChanged(String orderId, String customerId, BigDecimal totalPrice, Status from, Status to, Instant changedAt) implements Event {}
   }
 }
@@ -1,7 +1,5 @@
 package io.earthship3.domain.order;
 
-import static io.earthship3.ShortUUID.randomUUID;
-
 import java.time.Instant;
 import java.util.Collection;
 import java.util.List;
@@ -22,14 +20,15 @@ public interface OrderItemsBranch {
       Optional<Instant> readyToShipAt,
       Optional<Instant> backOrderedAt,
       List<SubOrderItems> subBranches,
-      List<LeafOrderItems> leaves) {
+      List<LeafOrderItems> leaves,
+      boolean rollUpPending) {
 
     public static final int maxSubBranches = 10;
     public static final int maxOrderItemsPerLeaf = 20;
     public static final int maxOrderItemsPerBranch = maxOrderItemsPerLeaf * maxSubBranches;
 
     public static State empty() {
-      return new State(null, Optional.empty(), null, null, Quantity.zero(), Optional.empty(), Optional.empty(), List.of(), List.of());
+      return new State(null, Optional.empty(), null, null, Quantity.zero(), Optional.empty(), Optional.empty(), List.of(), List.of(), false);
     }
 
     public boolean isEmpty() {
@@ -52,16 +51,31 @@ public interface OrderItemsBranch {
     }
 
     private List<Event> create(Command.AddQuantityToTree command) {
-      var leafOrderItems = DistributeQuantity.distributeAllowLeftover(command.quantity().ordered(), maxOrderItemsPerLeaf, maxSubBranches);
-      var leftoverOrderItems = leafOrderItems.leftoverQuantity();
-      var branchOrderItems = DistributeQuantity.distributeWithoutLeftover(leftoverOrderItems, maxOrderItemsPerBranch, maxSubBranches);
-
-      var newBranchSubOrderItems = Stream.generate(() -> new SubOrderItems(randomUUID(), command.stockId, Quantity.zero(), Optional.empty(), Optional.empty()))
-          .limit(maxSubBranches)
+      var leafOrderItems = new int[maxSubBranches];
+      var leftoverOrderItems = DistributeQuantity.distributeAllowLeftover(command.quantity().ordered(), maxOrderItemsPerLeaf, maxSubBranches, leafOrderItems);
+      var branchOrderItems = new int[maxSubBranches];
+      DistributeQuantity.distributeWithoutLeftover(leftoverOrderItems, maxOrderItemsPerBranch, maxSubBranches, branchOrderItems);
+
+      // Only the children that get a quantity are created, they start with that quantity so the branch total is right
+      // before they roll up
+      var newBranchSubOrderItems = IntStream.range(0, maxSubBranches)
+          .filter(i -> branchOrderItems[i] > 0)
+          .mapToObj(i -> new SubOrderItems(
+              subBranchId(command.branchId, i),
+              command.stockId,
+              Quantity.of(branchOrderItems[i]),
+              Optional.empty(),
+              Optional.empty()))
           .toList();
 
-      var newLeafSubOrderItems = Stream.generate(() -> new LeafOrderItems(randomUUID(), command.stockId, Quantity.zero(), Optional.empty(), Optional.empty()))
-          .limit(maxSubBranches)
+      var newLeafSubOrderItems = IntStream.range(0, maxSubBranches)
+          .filter(i -> leafOrderItems[i] > 0)
+          .mapToObj(i -> new LeafOrderItems(
+              leafId(command.branchId, i),
+              command.stockId,
+              Quantity.of(leafOrderItems[i]),
+              Optional.empty(),
+              Optional.empty()))
           .toList();
 
       var orderItemCreated = new Event.OrderItemsCreated(
@@ -73,11 +87,12 @@ public interface OrderItemsBranch {
           newBranchSubOrderItems,
           newLeafSubOrderItems);
 
-      var branchEvents = IntStream.range(0, branchOrderItems.bucketLevels().size())
+      var branchEvents = IntStream.range(0, maxSubBranches)
+          .filter(i -> branchOrderItems[i] > 0)
           .mapToObj(i -> new SubOrderItems(
               newBranchSubOrderItems.get(i).branchId,
               command.stockId,
-              Quantity.of(branchOrderItems.bucketLevels().get(i)),
+              Quantity.of(branchOrderItems[i]),
               Optional.empty(),
               Optional.empty()))
           .map(s -> new Event.BranchToBeAdded(
@@ -88,11 +103,12 @@ public interface OrderItemsBranch {
               command.branchId()))
           .toList();
 
-      var leafEvents = IntStream.range(0, leafOrderItems.bucketLevels().size())
+      var leafEvents = IntStream.range(0, maxSubBranches)
+          .filter(i -> leafOrderItems[i] > 0)
           .mapToObj(i -> new SubOrderItems(
               newLeafSubOrderItems.get(i).leafId,
               command.stockId,
-              Quantity.of(leafOrderItems.bucketLevels().get(i)),
+              Quantity.of(leafOrderItems[i]),
               Optional.empty(),
               Optional.empty()))
           .map(s -> new Event.LeafToBeAdded(
@@ -109,8 +125,56 @@ public interface OrderItemsBranch {
           .toList();
     }
 
+    // Child IDs are derived from the branch ID and the child ordinal, so they need no random numbers and a sub branch
+    // that was not used at creation can still be delegated to later
+    public static String subBranchId(String branchId, int ordinal) {
+      return "%s-b%d".formatted(branchId, ordinal);
+    }
+
+    public static String leafId(String branchId, int ordinal) {
+      return "%s-l%d".formatted(branchId, ordinal);
+    }
+
+    // A branch journaled before child IDs were derived keeps the random IDs of its sub branches, they take the first
+    // slots and the derived IDs fill the rest
+    public List<String> subBranchIds() {
+      var derivedIds = IntStream.range(0, maxSubBranches)
+          .mapToObj(i -> subBranchId(branchId, i))
+          .toList();
+      var legacyIds = subBranches.stream()
+          .map(SubOrderItems::branchId)
+          .filter(id -> !derivedIds.contains(id))
+          .toList();
+      return Stream.concat(legacyIds.stream(), derivedIds.stream())
+          .limit(maxSubBranches)
+          .toList();
+    }
+
+    public List<String> leafIds() {
+      return IntStream.range(0, maxSubBranches)
+          .mapToObj(i -> leafId(branchId, i))
+          .toList();
+    }
+
+    // Route to the least loaded sub branches, so repeated adds fill the tree in width before depth. Sub branches
+    // within one branch of the least loaded are picked by quantity ID hash, which spreads bursts of adds that arrive
+    // before the sub branch quantities roll up. The branch ID is part of the hash, otherwise a burst that lands in one
+    // sub branch picks the same ordinal again at every level below it and grows a chain instead of a tree.
     private List<Event> delegate(Command.AddQuantityToTree command) {
-      var subBranchId = subBranches.get(Math.abs(command.quantityId().hashCode()) % subBranches.size()).branchId;
+      var allSubBranches = subBranchIds().stream()
+          .map(id -> subBranches.stream()
+              .filter(s -> s.branchId.equals(id))
+              .findFirst()
+              .orElse(new SubOrderItems(id, stockId, Quantity.zero(), Optional.empty(), Optional.empty())))
+          .toList();
+      var leastLoaded = allSubBranches.stream()
+          .mapToInt(s -> s.quantity.ordered())
+          .min()
+          .orElse(0);
+      var candidates = allSubBranches.stream()
+          .filter(s -> s.quantity.ordered() <= leastLoaded + maxOrderItemsPerBranch)
+          .toList();
+      var subBranchId = candidates.get(Math.floorMod(routingHash(branchId, command.quantityId()), candidates.size())).branchId;
       return List.of(new Event.DelegateToSubBranch(
           branchId,
           subBranchId,
@@ -119,13 +183,37 @@ public interface OrderItemsBranch {
           command.quantity()));
     }
 
+    // String hashes are sums of powers of 31, and 31 is 1 modulo 10, so modulo the sub branch count a plain hash of
+    // branch ID and quantity ID only shifts by a constant per branch. The hash is mixed (the murmur3 finalizer) first.
+    static int routingHash(String branchId, String quantityId) {
+      var h = branchId.hashCode() * 31 + quantityId.hashCode();
+      h ^= h >>> 16;
+      h *= 0x85ebca6b;
+      h ^= h >>> 13;
+      h *= 0xc2b2ae35;
+      h ^= h >>> 16;
+      return h;
+    }
+
+    // Handle command to update branch quantity, a no-op when the sub branch quantity is unchanged
     public List<Event> onCommand(Command.UpdateBranchQuantity command) {
-      var newSubBranches = subBranches.stream()
+      var branchQuantity = Quantity.of(command.branchQuantity().ordered(), command.branchQuantity().unallocated());
+      var isSubBranch = subBranches.stream().anyMatch(s -> s.branchId.equals(command.subBranchId));
+      var isUnchanged = subBranches.stream().anyMatch(s -> s.branchId.equals(command.subBranchId) && s.quantity.equals(branchQuantity));
+      if (isUnchanged || (!isSubBranch && !subBranchIds().contains(command.subBranchId))) {
+        return List.of();
+      }
+
+      // A sub branch created by delegation joins the branch with its first update
+      var currentSubBranches = isSubBranch
+          ? subBranches
+          : Stream.concat(subBranches.stream(), Stream.of(new SubOrderItems(command.subBranchId, stockId, Quantity.zero(), Optional.empty(), Optional.empty()))).toList();
+      var newSubBranches = currentSubBranches.stream()
           .map(s -> s.branchId.equals(command.subBranchId)
               ? new SubOrderItems(
                   s.branchId,
                   s.stockId,
-                  Quantity.of(command.branchQuantity().ordered(), command.branchQuantity().unallocated()),
+                  branchQuantity,
                   s.readyToShipAt,
                   s.backOrderedAt)
               : s)
@@ -147,7 +235,7 @@ public interface OrderItemsBranch {
                   ? Optional.of(Instant.now())
                   : Optional.<Instant>empty();
 
-      return List.of(new Event.BranchQuantityUpdated(
+      return withRollUp(new Event.BranchQuantityUpdated(
           branchId,
           parentBranchId,
           newBranchesQuantity.add(newLeavesQuantity),
@@ -157,13 +245,19 @@ public interface OrderItemsBranch {
           newSubBranches));
     }
 
+    // Handle command to update leaf quantity, a no-op when the leaf quantity is unchanged
     public List<Event> onCommand(Command.UpdateLeafQuantity command) {
+      var leafQuantity = Quantity.of(command.leafQuantity().ordered(), command.leafQuantity().unallocated());
+      if (leaves.stream().noneMatch(s -> s.leafId.equals(command.leafId) && !s.quantity.equals(leafQuantity))) {
+        return List.of();
+      }
+
       var newLeaves = leaves.stream()
           .map(s -> s.leafId.equals(command.leafId())
               ? new LeafOrderItems(
                   s.leafId,
                   s.stockId,
-                  Quantity.of(command.leafQuantity().ordered(), command.leafQuantity().unallocated()),
+                  leafQuantity,
                   s.readyToShipAt,
                   s.backOrderedAt)
               : s)
@@ -185,7 +279,7 @@ public interface OrderItemsBranch {
                   ? Optional.of(Instant.now())
                   : Optional.<Instant>empty();
 
-      return List.of(new Event.LeafQuantityUpdated(
+      return withRollUp(new Event.LeafQuantityUpdated(
           branchId,
           parentBranchId,
           newBranchesQuantity.add(newLeavesQuantity),
@@ -195,6 +289,25 @@ public interface OrderItemsBranch {
           newLeaves));
     }
 
+    // The first change after a roll up schedules the next one, later changes ride along with it
+    private List<Event> withRollUp(Event quantityUpdated) {
+      return isTreeTrunk() || rollUpPending
+          ? List.of(quantityUpdated)
+          : List.of(quantityUpdated, new Event.RollUpScheduled(branchId));
+    }
+
+    // Handle command to roll up the branch quantity to the parent branch
+    public List<Event> onCommand(Command.RollUpQuantity command) {
+      if (!rollUpPending || isTreeTrunk()) {
+        return List.of();
+      }
+
+      return List.of(new Event.QuantityRolledUp(
+          branchId,
+          parentBranchId.get(),
+          quantity));
+    }
+
     public State onEvent(Event.OrderItemsCreated event) {
       return new State(
           event.branchId(),
@@ -205,7 +318,8 @@ public interface OrderItemsBranch {
           Optional.empty(),
           Optional.empty(),
           event.subBranches(),
-          event.leaves());
+          event.leaves(),
+          false);
     }
 
     public State onEvent(Event.BranchQuantityUpdated event) {
@@ -218,7 +332,8 @@ public interface OrderItemsBranch {
           Optional.empty(),
           Optional.empty(),
           event.subBranches(),
-          leaves);
+          leaves,
+          rollUpPending);
     }
 
     public State onEvent(Event.LeafQuantityUpdated event) {
@@ -231,7 +346,16 @@ public interface OrderItemsBranch {
           Optional.empty(),
           Optional.empty(),
           subBranches,
-          event.leaves());
+          event.leaves(),
+          rollUpPending);
+    }
+
+    public State onEvent(Event.RollUpScheduled event) {
+      return new State(branchId, parentBranchId, stockId, quantityId, quantity, readyToShipAt, backOrderedAt, subBranches, leaves, true);
+    }
+
+    public State onEvent(Event.QuantityRolledUp event) {
+      return new State(branchId, parentBranchId, stockId, quantityId, quantity, readyToShipAt, backOrderedAt, subBranches, leaves, false);
     }
 
     public State onEvent(Event.BranchToBeAdded event) {
@@ -300,6 +424,9 @@ public interface OrderItemsBranch {
         String branchId,
         String leafId,
         Quantity leafQuantity) implements Command {}
+
+    record RollUpQuantity(
+        String branchId) implements Command {}
   }
 
   public sealed interface Event {
@@ -350,5 +477,13 @@ public interface OrderItemsBranch {
         Optional<Instant> readyToShipAt,
         Optional<Instant> backOrderedAt,
         List<LeafOrderItems> leaves) implements Event {}
+
+    record RollUpScheduled(
+        String branchId) implements Event {}
+
+    record QuantityRolledUp(
+        String branchId,
+        String parentBranchId,
+        Quantity quantity) implements Event {}
   }
 }
@@ -3,8 +3,16 @@ package io.earthship3.domain.order;
 import static io.earthship3.ShortUUID.randomUUID;
 
 import java.time.Instant;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.Set;
 import java.util.stream.Stream;
 
 public interface OrderItemsLeaf {
@@ -16,10 +24,15 @@ public interface OrderItemsLeaf {
       Quantity quantity,
       List<OrderStockItem> orderStockItems,
       Optional<Instant> readyToShipAt,
-      Optional<Instant> backOrderedAt) {
+      Optional<Instant> backOrderedAt,
+      Optional<Instant> cancelledAt) {
+
+    public State {
+      orderStockItems = OrderStockItems.of(orderStockItems);
+    }
 
     public static State empty() {
-      return new State(null, null, null, null, Quantity.zero(), List.of(), Optional.empty(), Optional.empty());
+      return new State(null, null, null, null, Quantity.zero(), List.of(), Optional.empty(), Optional.empty(), Optional.empty());
     }
 
     public boolean isEmpty() {
@@ -43,14 +56,15 @@ public interface OrderItemsLeaf {
               command.stockId(),
               command.quantityId(),
               command.quantity(),
-              orderStockItems),
+              orderStockItems,
+              Instant.now()),
           new Event.LeafQuantityUpdated(
               command.leafId(),
               command.parentBranchId(),
               command.stockId(),
               command.quantityId(),
               command.quantity(),
-              orderStockItems,
+              List.of(),
               Optional.empty(),
               Optional.empty()),
           new Event.OrderItemsNeedStockItems(
@@ -58,13 +72,12 @@ public interface OrderItemsLeaf {
               command.parentBranchId(),
               command.stockId(),
               command.quantityId(),
-              command.quantity(),
-              orderStockItems));
+              command.quantity()));
     }
 
-    // Allocate order items to stock items
+    // Allocate order items to stock items, a leaf takes allocations until it is ready to ship or cancelled
     public List<Event> onCommand(Command.AllocateOrderItemsToStockItems command) {
-      if (isEmpty() || readyToShipAt.isPresent() || backOrderedAt.isEmpty()) {
+      if (isEmpty() || readyToShipAt.isPresent() || cancelledAt.isPresent()) {
         return List.of(
             new Event.OrderItemsAllocatedToStockItems(
                 leafId,
@@ -72,13 +85,8 @@ public interface OrderItemsLeaf {
                 List.of()));
       }
 
-      var newOrderStockItems = orderStockItems;
-      for (var stockItemId : command.stockItemsIds) {
-        newOrderStockItems = allocateStockItemToOrderItem(command.stockItemsLeafId, stockItemId, newOrderStockItems);
-      }
-
-      var availableCount = (int) newOrderStockItems.stream().filter(item -> item.stockItemId().isEmpty()).count();
-      var newQuantity = Quantity.of(quantity.ordered(), availableCount);
+      var allocatedOrderStockItems = slots().allocate(command.stockItemsLeafId, command.stockItemsIds);
+      var newQuantity = Quantity.of(quantity.ordered(), quantity.unallocated() - allocatedOrderStockItems.size());
 
       var leafQuantityUpdated = new Event.LeafQuantityUpdated(
           leafId,
@@ -86,17 +94,21 @@ public interface OrderItemsLeaf {
           stockId,
           quantityId,
           newQuantity,
-          newOrderStockItems,
+          allocatedOrderStockItems,
           newQuantity.unallocated() > 0 ? Optional.empty() : Optional.of(Instant.now()),
           Optional.empty());
 
+      // Report both the previously allocated and the newly allocated stock items of the stock items leaf
+      var allocations = Stream.concat(
+          slots().allocations(leafId, command.stockItemsLeafId).stream(),
+          allocatedOrderStockItems.stream()
+              .map(item -> new Allocation(leafId, item.orderItemId(), command.stockItemsLeafId, item.stockItemId().get())))
+          .toList();
+
       var orderItemsAllocatedToStockItems = new Event.OrderItemsAllocatedToStockItems(
           leafId,
           command.stockItemsLeafId,
-          newOrderStockItems.stream()
-              .filter(item -> item.stockItemsLeafId().isPresent() && item.stockItemsLeafId().get().equals(command.stockItemsLeafId))
-              .map(item -> new Allocation(leafId, item.orderItemId(), command.stockItemsLeafId, item.stockItemId().get()))
-              .toList());
+          allocations);
 
       return newQuantity.unallocated() == 0
           ? List.of(leafQuantityUpdated, orderItemsAllocatedToStockItems)
@@ -108,54 +120,83 @@ public interface OrderItemsLeaf {
                   parentBranchId,
                   stockId,
                   quantityId,
-                  newQuantity,
-                  newOrderStockItems));
+                  newQuantity));
     }
 
     // Apply stock items allocation
     public List<Event> onCommand(Command.ApplyStockItemsAllocation command) {
-      if (isEmpty() || readyToShipAt.isPresent() || backOrderedAt.isEmpty()) {
-        return List.of(
-            new Event.OrderItemsAllocationConflictDetected(
-                leafId,
-                command.stockItemsLeafId,
-                command.allocations));
+      // An allocation the leaf already holds is a redelivery or a re-report and changes nothing, an order item named
+      // twice in the batch is applied once, and the rest are reported as conflicts so that their stock items are released
+      var accepting = !(isEmpty() || readyToShipAt.isPresent() || cancelledAt.isPresent());
+      var availableAllocations = new ArrayList<Allocation>();
+      var conflictingAllocations = new ArrayList<Allocation>();
+      var stockItemIdByOrderItemIdApplied = new HashMap<String, String>();
+      for (var allocation : command.allocations) {
+        var appliedStockItemId = stockItemIdByOrderItemIdApplied.get(allocation.orderItemId());
+        if (slots().holds(allocation) || allocation.stockItemId().equals(appliedStockItemId)) {
+          continue;
+        }
+        if (accepting && appliedStockItemId == null && slots().isUnallocated(allocation.orderItemId())) {
+          stockItemIdByOrderItemIdApplied.put(allocation.orderItemId(), allocation.stockItemId());
+          availableAllocations.add(allocation);
+        } else {
+          conflictingAllocations.add(allocation);
+        }
       }
 
-      // First, verify that all of the allocations are still available
-      var availableAllocations = command.allocations.stream()
-          .filter(allocation -> orderStockItems.stream()
-              .anyMatch(item -> item.orderItemId().equals(allocation.orderItemId())
-                  && item.stockItemsLeafId().isEmpty()))
-          .toList();
-
-      if (availableAllocations.size() != command.allocations.size()) {
-        return List.of(
-            new Event.OrderItemsAllocationConflictDetected(
-                leafId,
-                command.stockItemsLeafId,
-                command.allocations));
+      // A round that changes nothing still ends with the leaf asking for what it needs, so that it is matched again
+      if (availableAllocations.isEmpty()) {
+        return conflictingAllocations.isEmpty()
+            ? needStockItems(quantity)
+            : withNeedStockItems(
+                new Event.OrderItemsAllocationConflictDetected(
+                    leafId,
+                    command.stockItemsLeafId,
+                    conflictingAllocations),
+                quantity);
       }
 
-      var newOrderStockItems = orderStockItems;
-      for (var allocation : availableAllocations) {
-        newOrderStockItems = allocateStockItemToOrderItem(allocation.stockItemsLeafId(), allocation.stockItemId(), newOrderStockItems);
-      }
+      var allocatedOrderStockItems = slots().apply(availableAllocations);
+      var newQuantity = Quantity.of(quantity.ordered(), quantity.unallocated() - allocatedOrderStockItems.size());
 
-      var newQuantity = Quantity.of(
-          quantity.ordered(),
-          (int) newOrderStockItems.stream().filter(item -> item.stockItemId().isEmpty()).count());
+      var leafQuantityUpdated = new Event.LeafQuantityUpdated(
+          leafId,
+          parentBranchId,
+          stockId,
+          quantityId,
+          newQuantity,
+          allocatedOrderStockItems,
+          newQuantity.unallocated() > 0 ? Optional.empty() : Optional.of(Instant.now()),
+          newQuantity.unallocated() > 0 ? Optional.empty() : backOrderedAt);
+
+      return conflictingAllocations.isEmpty()
+          ? withNeedStockItems(leafQuantityUpdated, newQuantity)
+          : Stream.concat(
+              Stream.of(leafQuantityUpdated),
+              withNeedStockItems(
+                  new Event.OrderItemsAllocationConflictDetected(
+                      leafId,
+                      command.stockItemsLeafId,
+                      conflictingAllocations),
+                  newQuantity).stream())
+              .toList();
+    }
 
-      return List.of(
-          new Event.LeafQuantityUpdated(
-              leafId,
-              parentBranchId,
-              stockId,
-              quantityId,
-              newQuantity,
-              newOrderStockItems,
-              newQuantity.unallocated() > 0 ? Optional.empty() : Optional.of(Instant.now()),
-              newQuantity.unallocated() > 0 ? Optional.empty() : backOrderedAt));
+    // An order items leaf that still has unallocated order items asks for more stock items after each apply
+    private List<Event> withNeedStockItems(Event event, Quantity newQuantity) {
+      return Stream.concat(Stream.of(event), needStockItems(newQuantity).stream()).toList();
+    }
+
+    private List<Event> needStockItems(Quantity newQuantity) {
+      return isEmpty() || readyToShipAt.isPresent() || cancelledAt.isPresent() || newQuantity.unallocated() == 0
+          ? List.of()
+          : List.of(
+              new Event.OrderItemsNeedStockItems(
+                  leafId,
+                  parentBranchId,
+                  stockId,
+                  quantityId,
+                  newQuantity));
     }
 
     // Release stock items allocation
@@ -164,14 +205,8 @@ public interface OrderItemsLeaf {
         return List.of();
       }
 
-      var newOrderStockItems = orderStockItems;
-      for (var allocation : command.allocations) {
-        newOrderStockItems = releaseStockItemFromOrderItem(allocation.stockItemsLeafId(), allocation.stockItemId(), newOrderStockItems);
-      }
-
-      var newQuantity = Quantity.of(
-          quantity.ordered(),
-          (int) newOrderStockItems.stream().filter(item -> item.stockItemId().isEmpty()).count());
+      var releasedOrderStockItems = slots().release(command.allocations);
+      var newQuantity = Quantity.of(quantity.ordered(), quantity.unallocated() + releasedOrderStockItems.size());
 
       return List.of(
           new Event.LeafQuantityUpdated(
@@ -180,14 +215,14 @@ public interface OrderItemsLeaf {
               stockId,
               quantityId,
               newQuantity,
-              newOrderStockItems,
+              releasedOrderStockItems,
               newQuantity.unallocated() > 0 ? Optional.empty() : Optional.of(Instant.now()),
               newQuantity.unallocated() > 0 ? Optional.empty() : backOrderedAt));
     }
 
     // Set back ordered on/off
     public List<Event> onCommand(Command.SetBackOrdered command) {
-      if (isEmpty()) {
+      if (isEmpty() || cancelledAt.isPresent()) {
         return List.of();
       }
 
@@ -199,6 +234,33 @@ public interface OrderItemsLeaf {
               command.backOrderedAt()));
     }
 
+    // Cancel the order items, every allocation of the leaf is released and it takes no more allocations
+    public List<Event> onCommand(Command.CancelOrderItems command) {
+      if (isEmpty() || cancelledAt.isPresent()) {
+        return List.of();
+      }
+
+      var allocations = slots().allocations(leafId);
+      var releasedOrderStockItems = slots().release(allocations);
+      var newQuantity = Quantity.of(quantity.ordered(), quantity.unallocated() + releasedOrderStockItems.size());
+
+      return List.of(
+          new Event.LeafQuantityUpdated(
+              leafId,
+              parentBranchId,
+              stockId,
+              quantityId,
+              newQuantity,
+              releasedOrderStockItems,
+              Optional.empty(),
+              Optional.empty()),
+          new Event.OrderItemsCancelled(
+              leafId,
+              stockId,
+              allocations,
+              Instant.now()));
+    }
+
     public State onEvent(Event.OrderItemsCreated event) {
       return new State(
           event.leafId(),
@@ -208,6 +270,7 @@ public interface OrderItemsLeaf {
           event.quantity(),
           event.orderStockItems(),
           Optional.empty(),
+          Optional.empty(),
           Optional.empty());
     }
 
@@ -218,9 +281,10 @@ public interface OrderItemsLeaf {
           stockId,
           quantityId,
           event.quantity(),
-          event.orderStockItems(),
+          slots().update(event.orderStockItems()),
           event.readyToShipAt(),
-          event.backOrderedAt());
+          event.backOrderedAt(),
+          cancelledAt);
     }
 
     public State onEvent(Event.OrderItemsNeedStockItems event) {
@@ -235,6 +299,19 @@ public interface OrderItemsLeaf {
       return this;
     }
 
+    public State onEvent(Event.OrderItemsCancelled event) {
+      return new State(
+          leafId,
+          parentBranchId,
+          stockId,
+          quantityId,
+          quantity,
+          orderStockItems,
+          readyToShipAt,
+          backOrderedAt,
+          Optional.of(event.cancelledAt()));
+    }
+
     public State onEvent(Event.BackOrderedSet event) {
       return new State(
           leafId,
@@ -244,32 +321,12 @@ public interface OrderItemsLeaf {
           quantity,
           orderStockItems,
           event.readyToShipAt(),
-          event.backOrderedAt());
+          event.backOrderedAt(),
+          cancelledAt);
     }
 
-    private List<OrderStockItem> allocateStockItemToOrderItem(String stockItemsLeafId, String stockItemId, List<OrderStockItem> orderStockItems) {
-      if (orderStockItems.stream().anyMatch(item -> item.stockItemId().isPresent() && item.stockItemId().get().equals(stockItemId))) {
-        return orderStockItems;
-      }
-      var availableItem = orderStockItems.stream()
-          .filter(item -> item.stockItemId().isEmpty())
-          .findFirst();
-      return availableItem.isPresent()
-          ? orderStockItems.stream()
-              .map(item -> item.equals(availableItem.get())
-                  ? new OrderStockItem(item.orderItemId(), Optional.of(stockItemId), Optional.of(stockItemsLeafId))
-                  : item)
-              .toList()
-          : orderStockItems;
-    }
-
-    private List<OrderStockItem> releaseStockItemFromOrderItem(String stockItemsLeafId, String stockItemId, List<OrderStockItem> orderStockItems) {
-      return orderStockItems.stream()
-          .map(item -> item.stockItemsLeafId().isPresent() && item.stockItemsLeafId().get().equals(stockItemsLeafId)
-              && item.stockItemId().isPresent() && item.stockItemId().get().equals(stockItemId)
-                  ? new OrderStockItem(item.orderItemId(), Optional.empty(), Optional.empty())
-                  : item)
-          .toList();
+    private OrderStockItems slots() {
+      return (OrderStockItems) orderStockItems;
     }
   }
 
@@ -306,6 +363,192 @@ public interface OrderItemsLeaf {
       Optional<String> stockItemId,
       Optional<String> stockItemsLeafId) {}
 
+  /**
+   * Slot table of the order items in a leaf. It is exposed as a read-only {@code List<OrderStockItem>}, so the state
+   * shape is unchanged, and is backed by a bitset of unallocated slots, orderItemId and stockItemId indexes and the
+   * allocated slots grouped by stockItemsLeafId.
+   * <p>
+   * Commands ask the table for the order items that an allocate, apply or release would change, in time proportional
+   * to the batch, and the resulting events carry only those changed order items. Applying an event folds the changed
+   * order items into a copy of the table.
+   */
+  final class OrderStockItems extends AbstractList<OrderStockItem> implements RandomAccess {
+    private final OrderStockItem[] items;
+    private final BitSet unallocated;
+    private final Map<String, Integer> slotByOrderItemId;
+    private final Map<String, Integer> slotByStockItemId;
+    private final Map<String, BitSet> slotsByStockItemsLeafId;
+    private final Set<String> copiedGroups = new HashSet<>();
+
+    private OrderStockItems(
+        OrderStockItem[] items,
+        BitSet unallocated,
+        Map<String, Integer> slotByOrderItemId,
+        Map<String, Integer> slotByStockItemId,
+        Map<String, BitSet> slotsByStockItemsLeafId) {
+      this.items = items;
+      this.unallocated = unallocated;
+      this.slotByOrderItemId = slotByOrderItemId;
+      this.slotByStockItemId = slotByStockItemId;
+      this.slotsByStockItemsLeafId = slotsByStockItemsLeafId;
+    }
+
+    public static OrderStockItems of(List<OrderStockItem> orderStockItems) {
+      if (orderStockItems instanceof OrderStockItems slots) {
+        return slots;
+      }
+
+      var items = orderStockItems.toArray(OrderStockItem[]::new);
+      var unallocated = new BitSet(items.length);
+      var slotByOrderItemId = new HashMap<String, Integer>(items.length * 2);
+      var slotByStockItemId = new HashMap<String, Integer>();
+      var slotsByStockItemsLeafId = new HashMap<String, BitSet>();
+      for (int slot = 0; slot < items.length; slot++) {
+        slotByOrderItemId.put(items[slot].orderItemId(), slot);
+        if (items[slot].stockItemId().isPresent()) {
+          slotByStockItemId.put(items[slot].stockItemId().get(), slot);
+          slotsByStockItemsLeafId.computeIfAbsent(items[slot].stockItemsLeafId().get(), k -> new BitSet()).set(slot);
+        } else {
+          unallocated.set(slot);
+        }
+      }
+
+      return new OrderStockItems(items, unallocated, slotByOrderItemId, slotByStockItemId, slotsByStockItemsLeafId);
+    }
+
+    @Override
+    public OrderStockItem get(int index) {
+      return items[index];
+    }
+
+    @Override
+    public int size() {
+      return items.length;
+    }
+
+    public boolean isUnallocated(String orderItemId) {
+      var slot = slotByOrderItemId.get(orderItemId);
+      return slot != null && unallocated.get(slot);
+    }
+
+    // The next unallocated order items allocated to the stock items that are not already allocated
+    public List<OrderStockItem> allocate(String stockItemsLeafId, List<String> stockItemIds) {
+      var allocated = new ArrayList<OrderStockItem>();
+      var stockItemIdsAllocated = new HashSet<String>();
+      var slot = unallocated.nextSetBit(0);
+      for (var stockItemId : stockItemIds) {
+        if (slot < 0) {
+          break;
+        }
+        if (!slotByStockItemId.containsKey(stockItemId) && stockItemIdsAllocated.add(stockItemId)) {
+          allocated.add(new OrderStockItem(items[slot].orderItemId(), Optional.of(stockItemId), Optional.of(stockItemsLeafId)));
+          slot = unallocated.nextSetBit(slot + 1);
+        }
+      }
+      return allocated;
+    }
+
+    // Whether the order item of the allocation is already allocated to the stock item of the allocation
+    public boolean holds(Allocation allocation) {
+      var slot = slotByOrderItemId.get(allocation.orderItemId());
+      return slot != null
+          && items[slot].stockItemId().equals(Optional.of(allocation.stockItemId()))
+          && items[slot].stockItemsLeafId().equals(Optional.of(allocation.stockItemsLeafId()));
+    }
+
+    // The specific order items named in the allocations, the caller verifies that they are unallocated
+    public List<OrderStockItem> apply(List<Allocation> allocations) {
+      return allocations.stream()
+          .map(allocation -> new OrderStockItem(
+              allocation.orderItemId(),
+              Optional.of(allocation.stockItemId()),
+              Optional.of(allocation.stockItemsLeafId())))
+          .toList();
+    }
+
+    // The allocated order items that are released from the stock items in the allocations
+    public List<OrderStockItem> release(List<Allocation> allocations) {
+      var released = new ArrayList<OrderStockItem>();
+      var slotsReleased = new BitSet();
+      for (var allocation : allocations) {
+        var slot = slotByStockItemId.get(allocation.stockItemId());
+        if (slot != null && !slotsReleased.get(slot) && items[slot].stockItemsLeafId().equals(Optional.of(allocation.stockItemsLeafId()))) {
+          released.add(new OrderStockItem(items[slot].orderItemId(), Optional.empty(), Optional.empty()));
+          slotsReleased.set(slot);
+        }
+      }
+      return released;
+    }
+
+    // All of the allocations held by the given stock items leaf
+    public List<Allocation> allocations(String leafId, String stockItemsLeafId) {
+      var slots = slotsByStockItemsLeafId.get(stockItemsLeafId);
+      return slots == null
+          ? List.of()
+          : slots.stream()
+              .mapToObj(slot -> new Allocation(leafId, items[slot].orderItemId(), stockItemsLeafId, items[slot].stockItemId().get()))
+              .toList();
+    }
+
+    // All of the allocations held by the leaf
+    public List<Allocation> allocations(String leafId) {
+      return slotsByStockItemsLeafId.keySet().stream()
+          .flatMap(stockItemsLeafId -> allocations(leafId, stockItemsLeafId).stream())
+          .toList();
+    }
+
+    // Fold the changed order items into a copy of this table, unknown order items are ignored
+    public OrderStockItems update(List<OrderStockItem> changedOrderStockItems) {
+      if (changedOrderStockItems.isEmpty()) {
+        return this;
+      }
+
+      // order item ids never change after the leaf is created, so that index is shared between copies, and the
+      // stock items leaf groups are copied on first write
+      var next = new OrderStockItems(
+          items.clone(),
+          (BitSet) unallocated.clone(),
+          slotByOrderItemId,
+          new HashMap<>(slotByStockItemId),
+          new HashMap<>(slotsByStockItemsLeafId));
+      for (var item : changedOrderStockItems) {
+        var slot = slotByOrderItemId.get(item.orderItemId());
+        if (slot != null) {
+          next.put(slot, item);
+        }
+      }
+      return next;
+    }
+
+    private BitSet group(String stockItemsLeafId) {
+      var slots = slotsByStockItemsLeafId.get(stockItemsLeafId);
+      var copied = slots == null ? new BitSet() : copiedGroups.contains(stockItemsLeafId) ? slots : (BitSet) slots.clone();
+      copiedGroups.add(stockItemsLeafId);
+      slotsByStockItemsLeafId.put(stockItemsLeafId, copied);
+      return copied;
+    }
+
+    private void put(int slot, OrderStockItem item) {
+      if (items[slot].stockItemId().isPresent()) {
+        var stockItemsLeafId = items[slot].stockItemsLeafId().get();
+        var slots = group(stockItemsLeafId);
+        slots.clear(slot);
+        if (slots.isEmpty()) {
+          slotsByStockItemsLeafId.remove(stockItemsLeafId);
+        }
+        slotByStockItemId.remove(items[slot].stockItemId().get());
+      }
+      items[slot] = item;
+      if (item.stockItemId().isPresent()) {
+        slotByStockItemId.put(item.stockItemId().get(), slot);
+        group(item.stockItemsLeafId().get()).set(slot);
+        unallocated.clear(slot);
+      } else {
+        unallocated.set(slot);
+      }
+    }
+  }
+
   public sealed interface Command {
     record CreateOrderItems(
         String leafId,
@@ -332,6 +575,9 @@ public interface OrderItemsLeaf {
     record SetBackOrdered(
         String leafId,
         Optional<Instant> backOrderedAt) implements Command {}
+
+    record CancelOrderItems(
+        String leafId) implements Command {}
   }
 
   public sealed interface Event {
@@ -341,8 +587,11 @@ public interface OrderItemsLeaf {
         String stockId,
         String quantityId,
         Quantity quantity,
-        List<OrderStockItem> orderStockItems) implements Event {}
+        List<OrderStockItem> orderStockItems,
+        Instant createdAt) implements Event {}
 
+    // orderStockItems holds only the order items changed by this update, older events that hold every order item of
+    // the leaf fold in the same way
     record LeafQuantityUpdated(
         String leafId,
         String parentBranchId,
@@ -353,13 +602,24 @@ public interface OrderItemsLeaf {
         Optional<Instant> readyToShipAt,
         Optional<Instant> backOrderedAt) implements Event {}
 
+    // The orderStockItems list is no longer written and is always empty, it is kept so that journaled events that still
+    // carry the list deserialize
     record OrderItemsNeedStockItems(
         String leafId,
         String parentBranchId,
         String stockId,
         String quantityId,
         Quantity quantity,
-        List<OrderStockItem> orderStockItems) implements Event {}
+        @Deprecated List<OrderStockItem> orderStockItems) implements Event {
+
+      public OrderItemsNeedStockItems {
+        orderStockItems = List.of();
+      }
+
+      public OrderItemsNeedStockItems(String leafId, String parentBranchId, String stockId, String quantityId, Quantity quantity) {
+        this(leafId, parentBranchId, stockId, quantityId, quantity, List.of());
+      }
+    }
 
     record OrderItemsAllocatedToStockItems(
         String leafId,
@@ -371,6 +631,13 @@ public interface OrderItemsLeaf {
         String stockItemsLeafId,
         List<Allocation> allocations) implements Event {}
 
+    // allocations are the released allocations of the leaf, of any number of stock items leaves
+    record OrderItemsCancelled(
+        String leafId,
+        String stockId,
+        List<Allocation> allocations,
+        Instant cancelledAt) implements Event {}
+
     record BackOrderedSet(
         String leafId,
         String parentBranchId,
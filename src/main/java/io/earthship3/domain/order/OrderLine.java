@@ -0,0 +1,195 @@
+package io.earthship3.domain.order;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Readiness of one line item of an order, reported by the order items leaves of its stock. The line also tracks those
+ * leaves, so that per order operations such as cancel address them directly.
+ */
+public interface OrderLine {
+
+  public static String orderLineId(String orderId, String stockId) {
+    return "%s_%s".formatted(orderId, stockId);
+  }
+
+  public record State(
+      String orderId,
+      String stockId,
+      int ordered,
+      Instant orderedAt,
+      List<LeafReadiness> leaves,
+      Optional<Instant> backOrderedAt,
+      Optional<Instant> readyToShipAt,
+      Optional<Instant> cancelledAt) {
+
+    public static State empty() {
+      return new State(null, null, 0, null, List.of(), Optional.empty(), Optional.empty(), Optional.empty());
+    }
+
+    public boolean isEmpty() {
+      return orderId == null;
+    }
+
+    public List<String> leafIds() {
+      return leaves.stream().map(LeafReadiness::leafId).toList();
+    }
+
+    // Handle command to create the line with the ordered quantity of the order
+    public List<Event> onCommand(Command.CreateOrderLine command) {
+      if (ordered > 0) {
+        return List.of();
+      }
+
+      var lineCreated = new Event.OrderLineCreated(command.orderId(), command.stockId(), command.ordered(), command.orderedAt());
+      return Stream.concat(Stream.of(lineCreated), readiness(command.orderId(), command.stockId(), command.ordered(), command.orderedAt(), leaves).stream())
+          .toList();
+    }
+
+    // Handle command to update the quantity and back ordered status of one leaf of the line
+    public List<Event> onCommand(Command.UpdateLeafReadiness command) {
+      var leaf = new LeafReadiness(command.leafId(), command.ordered(), command.unallocated(), command.backOrdered());
+      if (leaves.contains(leaf)) {
+        return List.of();
+      }
+
+      var leafUpdated = new Event.LeafReadinessUpdated(
+          command.orderId(),
+          command.stockId(),
+          command.leafId(),
+          command.ordered(),
+          command.unallocated(),
+          command.backOrdered());
+
+      if (cancelledAt.isPresent()) {
+        var isNewLeaf = leaves.stream().noneMatch(l -> l.leafId().equals(command.leafId()));
+        return isNewLeaf
+            ? List.of(leafUpdated, new Event.OrderLineCancelled(command.orderId(), command.stockId(), List.of(command.leafId()), cancelledAt.get()))
+            : List.of(leafUpdated);
+      }
+
+      return Stream.concat(Stream.of(leafUpdated), readiness(command.orderId(), command.stockId(), ordered, orderedAt, withLeaf(leaf)).stream())
+          .toList();
+    }
+
+    // Handle command to cancel the line, the leaves known so far are in the event
+    public List<Event> onCommand(Command.CancelOrderLine command) {
+      if (cancelledAt.isPresent()) {
+        return List.of();
+      }
+
+      return List.of(new Event.OrderLineCancelled(command.orderId(), command.stockId(), leafIds(), Instant.now()));
+    }
+
+    // The line is ready to ship when its leaves hold the whole ordered quantity and none of it is unallocated, it is
+    // back ordered when one of its leaves is back ordered before that
+    private List<Event> readiness(String orderId, String stockId, int ordered, Instant orderedAt, List<LeafReadiness> leaves) {
+      if (readyToShipAt.isPresent() || cancelledAt.isPresent()) {
+        return List.of();
+      }
+
+      var leavesOrdered = leaves.stream().mapToInt(LeafReadiness::ordered).sum();
+      var leavesUnallocated = leaves.stream().mapToInt(LeafReadiness::unallocated).sum();
+      if (ordered > 0 && leavesOrdered == ordered && leavesUnallocated == 0) {
+        return List.of(new Event.OrderLineReadyToShip(orderId, stockId, orderedAt, Instant.now()));
+      }
+
+      if (backOrderedAt.isEmpty() && leaves.stream().anyMatch(LeafReadiness::backOrdered)) {
+        return List.of(new Event.OrderLineBackOrdered(orderId, stockId, Instant.now()));
+      }
+
+      return List.of();
+    }
+
+    private List<LeafReadiness> withLeaf(LeafReadiness leaf) {
+      return Stream.concat(
+          leaves.stream().filter(l -> !l.leafId().equals(leaf.leafId())),
+          Stream.of(leaf))
+          .toList();
+    }
+
+    public State onEvent(Event.OrderLineCreated event) {
+      return new State(event.orderId(), event.stockId(), event.ordered(), event.orderedAt(), leaves, backOrderedAt, readyToShipAt, cancelledAt);
+    }
+
+    public State onEvent(Event.LeafReadinessUpdated event) {
+      var leaf = new LeafReadiness(event.leafId(), event.ordered(), event.unallocated(), event.backOrdered());
+      return new State(event.orderId(), event.stockId(), ordered, orderedAt, withLeaf(leaf), backOrderedAt, readyToShipAt, cancelledAt);
+    }
+
+    public State onEvent(Event.OrderLineBackOrdered event) {
+      return new State(orderId, stockId, ordered, orderedAt, leaves, Optional.of(event.backOrderedAt()), readyToShipAt, cancelledAt);
+    }
+
+    public State onEvent(Event.OrderLineReadyToShip event) {
+      return new State(orderId, stockId, ordered, orderedAt, leaves, backOrderedAt, Optional.of(event.readyToShipAt()), cancelledAt);
+    }
+
+    public State onEvent(Event.OrderLineCancelled event) {
+      return new State(orderId, stockId, ordered, orderedAt, leaves, backOrderedAt, readyToShipAt, Optional.of(event.cancelledAt()));
+    }
+  }
+
+  record LeafReadiness(
+      String leafId,
+      int ordered,
+      int unallocated,
+      boolean backOrdered) {}
+
+  public sealed interface Command {
+    record CreateOrderLine(
+        String orderId,
+        String stockId,
+        int ordered,
+        Instant orderedAt) implements Command {}
+
+    record UpdateLeafReadiness(
+        String orderId,
+        String stockId,
+        String leafId,
+        int ordered,
+        int unallocated,
+        boolean backOrdered) implements Command {}
+
+    record CancelOrderLine(
+        String orderId,
+        String stockId) implements Command {}
+  }
+
+  public sealed interface Event {
+    record OrderLineCreated(
+        String orderId,
+        String stockId,
+        int ordered,
+        Instant orderedAt) implements Event {}
+
+    record LeafReadinessUpdated(
+        String orderId,
+        String stockId,
+        String leafId,
+        int ordered,
+        int unallocated,
+        boolean backOrdered) implements Event {}
+
+    record OrderLineBackOrdered(
+        String orderId,
+        String stockId,
+        Instant backOrderedAt) implements Event {}
+
+    // orderedAt is null for lines created before the order time was carried
+    record OrderLineReadyToShip(
+        String orderId,
+        String stockId,
+        Instant orderedAt,
+        Instant readyToShipAt) implements Event {}
+
+    // leafIds are the leaves to cancel, all leaves known when the line is cancelled or one leaf that reports later
+    record OrderLineCancelled(
+        String orderId,
+        String stockId,
+        List<String> leafIds,
+        Instant cancelledAt) implements Event {}
+  }
+}
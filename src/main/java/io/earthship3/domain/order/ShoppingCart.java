@@ -4,6 +4,9 @@ import static io.earthship3.ShortUUID.randomUUID;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,6 +18,8 @@ public interface ShoppingCart {
       String customerId,
       List<LineItem> lineItems) {
 
+    public static final int maxLineItemsPerApply = 1_000;
+
     public static State empty() {
       return new State(null, List.of());
     }
@@ -23,11 +28,14 @@ public interface ShoppingCart {
       return customerId == null;
     }
 
-    public Optional<Event> onCommand(Command.AddLineItem command) {
-      var exists = lineItems.stream()
-          .anyMatch(item -> item.stockId().equals(command.stockId()));
+    public Optional<LineItem> lineItem(String stockId) {
+      return lineItems.stream()
+          .filter(item -> item.stockId().equals(stockId))
+          .findFirst();
+    }
 
-      if (exists) {
+    public Optional<Event> onCommand(Command.AddLineItem command) {
+      if (lineItem(command.stockId()).isPresent()) {
         return Optional.empty();
       }
 
@@ -37,17 +45,11 @@ public interface ShoppingCart {
           command.price(),
           command.quantity());
 
-      var updatedItems = new java.util.ArrayList<>(lineItems);
-      updatedItems.add(newItem);
-
-      return Optional.of(new Event.LineItemAdded(command.customerId(), newItem, List.copyOf(updatedItems)));
+      return Optional.of(new Event.LineItemAdded(command.customerId(), newItem));
     }
 
     public Optional<Event> onCommand(Command.UpdateLineItem command) {
-      var exists = lineItems.stream()
-          .anyMatch(item -> item.stockId().equals(command.stockId()));
-
-      if (!exists) {
+      if (lineItem(command.stockId()).isEmpty()) {
         return Optional.empty();
       }
 
@@ -57,26 +59,43 @@ public interface ShoppingCart {
           command.price(),
           command.quantity());
 
-      var updatedItems = lineItems.stream()
-          .map(item -> item.stockId().equals(command.stockId()) ? updatedLineItem : item)
-          .toList();
-
-      return Optional.of(new Event.LineItemUpdated(command.customerId(), updatedLineItem, List.copyOf(updatedItems)));
+      return Optional.of(new Event.LineItemUpdated(command.customerId(), updatedLineItem));
     }
 
     public Optional<Event> onCommand(Command.RemoveLineItem command) {
-      var exists = lineItems.stream()
-          .anyMatch(item -> item.stockId().equals(command.stockId()));
-
-      if (!exists) {
+      if (lineItem(command.stockId()).isEmpty()) {
         return Optional.empty();
       }
 
-      var updatedItems = lineItems.stream()
-          .filter(item -> !item.stockId().equals(command.stockId()))
-          .toList();
+      return Optional.of(new Event.LineItemRemoved(command.customerId(), command.stockId()));
+    }
+
+    // Handle command to add, update and remove many line items in one event, a line item with a quantity of zero is
+    // removed, the last change of a stockId wins and changes that leave the cart as it is are dropped
+    public Optional<Event> onCommand(Command.ApplyLineItems command) {
+      var changes = new LinkedHashMap<String, LineItem>();
+      command.lineItems().forEach(item -> changes.put(item.stockId(), item));
+
+      var lineItemByStockId = new HashMap<String, LineItem>();
+      lineItems.forEach(item -> lineItemByStockId.put(item.stockId(), item));
+
+      var changedItems = new ArrayList<LineItem>();
+      var removedStockIds = new ArrayList<String>();
+      changes.forEach((stockId, item) -> {
+        if (item.quantity() <= 0) {
+          if (lineItemByStockId.containsKey(stockId)) {
+            removedStockIds.add(stockId);
+          }
+        } else if (!item.equals(lineItemByStockId.get(stockId))) {
+          changedItems.add(item);
+        }
+      });
+
+      if (changedItems.isEmpty() && removedStockIds.isEmpty()) {
+        return Optional.empty();
+      }
 
-      return Optional.of(new Event.LineItemRemoved(command.customerId(), command.stockId(), List.copyOf(updatedItems)));
+      return Optional.of(new Event.LineItemsApplied(command.customerId(), changedItems, removedStockIds));
     }
 
     public Optional<Event> onCommand(Command.Checkout command) {
@@ -89,20 +108,33 @@ public interface ShoppingCart {
     }
 
     public State onEvent(Event.LineItemAdded event) {
-      return new State(event.customerId(), event.lineItems);
+      return new State(event.customerId(), withLineItems(List.of(event.lineItem()), List.of()));
     }
 
     public State onEvent(Event.LineItemUpdated event) {
-      return new State(event.customerId(), event.lineItems);
+      return new State(event.customerId(), withLineItems(List.of(event.lineItem()), List.of()));
     }
 
     public State onEvent(Event.LineItemRemoved event) {
-      return new State(event.customerId(), event.lineItems);
+      return new State(event.customerId(), withLineItems(List.of(), List.of(event.stockId())));
+    }
+
+    public State onEvent(Event.LineItemsApplied event) {
+      return new State(event.customerId(), withLineItems(event.lineItems(), event.removedStockIds()));
     }
 
     public State onEvent(Event.CheckedOut event) {
       return new State(event.customerId(), List.of());
     }
+
+    // A changed line item keeps its place in the cart, a new one is added at the end
+    private List<LineItem> withLineItems(List<LineItem> changedLineItems, List<String> removedStockIds) {
+      var newLineItems = new LinkedHashMap<String, LineItem>();
+      lineItems.forEach(item -> newLineItems.put(item.stockId(), item));
+      changedLineItems.forEach(item -> newLineItems.put(item.stockId(), item));
+      removedStockIds.forEach(newLineItems::remove);
+      return List.copyOf(newLineItems.values());
+    }
   }
 
   public sealed interface Command {
@@ -112,15 +144,45 @@ public interface ShoppingCart {
 
     record RemoveLineItem(String customerId, String stockId) implements Command {}
 
+    record ApplyLineItems(String customerId, List<LineItem> lineItems) implements Command {}
+
     record Checkout(String customerId) implements Command {}
   }
 
+  // The lineItems list of the line item events is no longer written and is always empty, it is kept so that journaled
+  // events that still carry a snapshot of the cart deserialize, their line item or stockId is the same change
   public sealed interface Event {
-    record LineItemAdded(String customerId, LineItem lineItem, List<LineItem> lineItems) implements Event {}
+    record LineItemAdded(String customerId, LineItem lineItem, @Deprecated List<LineItem> lineItems) implements Event {
+      public LineItemAdded {
+        lineItems = List.of();
+      }
+
+      public LineItemAdded(String customerId, LineItem lineItem) {
+        this(customerId, lineItem, List.of());
+      }
+    }
+
+    record LineItemUpdated(String customerId, LineItem lineItem, @Deprecated List<LineItem> lineItems) implements Event {
+      public LineItemUpdated {
+        lineItems = List.of();
+      }
 
-    record LineItemUpdated(String customerId, LineItem lineItem, List<LineItem> lineItems) implements Event {}
+      public LineItemUpdated(String customerId, LineItem lineItem) {
+        this(customerId, lineItem, List.of());
+      }
+    }
+
+    record LineItemRemoved(String customerId, String stockId, @Deprecated List<LineItem> lineItems) implements Event {
+      public LineItemRemoved {
+        lineItems = List.of();
+      }
+
+      public LineItemRemoved(String customerId, String stockId) {
+        this(customerId, stockId, List.of());
+      }
+    }
 
-    record LineItemRemoved(String customerId, String stockId, List<LineItem> lineItems) implements Event {}
+    record LineItemsApplied(String customerId, List<LineItem> lineItems, List<String> removedStockIds) implements Event {}
 
     record CheckedOut(String customerId, Instant checkedOutAt, String orderId, List<LineItem> lineItems) implements Event {}
   }
@@ -1,7 +1,5 @@
 package io.earthship3.domain.stock;
 
-import static io.earthship3.ShortUUID.randomUUID;
-
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
@@ -19,14 +17,15 @@ public interface StockItemsBranch {
       String quantityId,
       Quantity quantity,
       List<SubStockItems> subBranches,
-      List<LeafStockItems> leaves) {
+      List<LeafStockItems> leaves,
+      boolean rollUpPending) {
 
     public static final int maxSubBranches = 10;
     public static final int maxStockItemsPerLeaf = 20;
     public static final int maxStockItemsPerBranch = maxStockItemsPerLeaf * maxSubBranches;
 
     public static State empty() {
-      return new State(null, Optional.empty(), null, null, Quantity.zero(), List.of(), List.of());
+      return new State(null, Optional.empty(), null, null, Quantity.zero(), List.of(), List.of(), false);
     }
 
     public boolean isEmpty() {
@@ -49,16 +48,27 @@ public interface StockItemsBranch {
     }
 
     private List<Event> create(Command.AddQuantityToTree command) {
-      var leafQuantities = DistributeQuantity.distributeAllowLeftover(command.quantity().acquired(), maxStockItemsPerLeaf, maxSubBranches);
-      var leftoverQuantity = leafQuantities.leftoverQuantity();
-      var branchQuantities = DistributeQuantity.distributeWithoutLeftover(leftoverQuantity, maxStockItemsPerBranch, maxSubBranches);
-
-      var newBranchSubStockItems = Stream.generate(() -> new SubStockItems(randomUUID(), command.stockId, Quantity.zero()))
-          .limit(maxSubBranches)
+      var leafQuantities = new int[maxSubBranches];
+      var leftoverQuantity = DistributeQuantity.distributeAllowLeftover(command.quantity().acquired(), maxStockItemsPerLeaf, maxSubBranches, leafQuantities);
+      var branchQuantities = new int[maxSubBranches];
+      DistributeQuantity.distributeWithoutLeftover(leftoverQuantity, maxStockItemsPerBranch, maxSubBranches, branchQuantities);
+
+      // Only the children that get a quantity are created, they start with that quantity so the branch total is right
+      // before they roll up
+      var newBranchSubStockItems = IntStream.range(0, maxSubBranches)
+          .filter(i -> branchQuantities[i] > 0)
+          .mapToObj(i -> new SubStockItems(
+              subBranchId(command.branchId, i),
+              command.stockId,
+              Quantity.of(branchQuantities[i])))
           .toList();
 
-      var newLeafSubStockItems = Stream.generate(() -> new LeafStockItems(randomUUID(), command.stockId, Quantity.zero()))
-          .limit(maxSubBranches)
+      var newLeafSubStockItems = IntStream.range(0, maxSubBranches)
+          .filter(i -> leafQuantities[i] > 0)
+          .mapToObj(i -> new LeafStockItems(
+              leafId(command.branchId, i),
+              command.stockId,
+              Quantity.of(leafQuantities[i])))
           .toList();
 
       var stockItemsCreated = new Event.StockItemsCreated(
@@ -70,11 +80,12 @@ public interface StockItemsBranch {
           newBranchSubStockItems,
           newLeafSubStockItems);
 
-      var branchEvents = IntStream.range(0, branchQuantities.bucketLevels().size())
+      var branchEvents = IntStream.range(0, maxSubBranches)
+          .filter(i -> branchQuantities[i] > 0)
           .mapToObj(i -> new SubStockItems(
               newBranchSubStockItems.get(i).branchId,
               command.stockId,
-              Quantity.of(branchQuantities.bucketLevels().get(i).intValue())))
+              Quantity.of(branchQuantities[i])))
           .map(s -> new Event.BranchToBeAdded(
               s.branchId,
               command.stockId,
@@ -83,11 +94,12 @@ public interface StockItemsBranch {
               command.branchId()))
           .toList();
 
-      var leafEvents = IntStream.range(0, leafQuantities.bucketLevels().size())
+      var leafEvents = IntStream.range(0, maxSubBranches)
+          .filter(i -> leafQuantities[i] > 0)
           .mapToObj(i -> new SubStockItems(
               newLeafSubStockItems.get(i).leafId,
               command.stockId,
-              Quantity.of(leafQuantities.bucketLevels().get(i))))
+              Quantity.of(leafQuantities[i])))
           .map(s -> new Event.LeafToBeAdded(
               s.branchId,
               command.stockId,
@@ -102,8 +114,56 @@ public interface StockItemsBranch {
           .toList();
     }
 
+    // Child IDs are derived from the branch ID and the child ordinal, so they need no random numbers and a sub branch
+    // that was not used at creation can still be delegated to later
+    public static String subBranchId(String branchId, int ordinal) {
+      return "%s-b%d".formatted(branchId, ordinal);
+    }
+
+    public static String leafId(String branchId, int ordinal) {
+      return "%s-l%d".formatted(branchId, ordinal);
+    }
+
+    // A branch journaled before child IDs were derived keeps the random IDs of its sub branches, they take the first
+    // slots and the derived IDs fill the rest
+    public List<String> subBranchIds() {
+      var derivedIds = IntStream.range(0, maxSubBranches)
+          .mapToObj(i -> subBranchId(branchId, i))
+          .toList();
+      var legacyIds = subBranches.stream()
+          .map(SubStockItems::branchId)
+          .filter(id -> !derivedIds.contains(id))
+          .toList();
+      return Stream.concat(legacyIds.stream(), derivedIds.stream())
+          .limit(maxSubBranches)
+          .toList();
+    }
+
+    public List<String> leafIds() {
+      return IntStream.range(0, maxSubBranches)
+          .mapToObj(i -> leafId(branchId, i))
+          .toList();
+    }
+
+    // Route to the least loaded sub branches, so repeated adds fill the tree in width before depth. Sub branches
+    // within one branch of the least loaded are picked by quantity ID hash, which spreads bursts of adds that arrive
+    // before the sub branch quantities roll up. The branch ID is part of the hash, otherwise a burst that lands in one
+    // sub branch picks the same ordinal again at every level below it and grows a chain instead of a tree.
     private List<Event> delegate(Command.AddQuantityToTree command) {
-      var subBranchId = subBranches.get(Math.abs(command.quantityId().hashCode()) % subBranches.size()).branchId;
+      var allSubBranches = subBranchIds().stream()
+          .map(id -> subBranches.stream()
+              .filter(s -> s.branchId.equals(id))
+              .findFirst()
+              .orElse(new SubStockItems(id, stockId, Quantity.zero())))
+          .toList();
+      var leastLoaded = allSubBranches.stream()
+          .mapToInt(s -> s.quantity.acquired())
+          .min()
+          .orElse(0);
+      var candidates = allSubBranches.stream()
+          .filter(s -> s.quantity.acquired() <= leastLoaded + maxStockItemsPerBranch)
+          .toList();
+      var subBranchId = candidates.get(Math.floorMod(routingHash(branchId, command.quantityId()), candidates.size())).branchId;
       return List.of(new Event.DelegateToSubBranch(
           branchId,
           subBranchId,
@@ -112,11 +172,34 @@ public interface StockItemsBranch {
           command.quantity()));
     }
 
-    // Handle command to update branch quantity
-    public Event onCommand(Command.UpdateBranchQuantity command) {
-      var newSubBranches = subBranches.stream()
+    // String hashes are sums of powers of 31, and 31 is 1 modulo 10, so modulo the sub branch count a plain hash of
+    // branch ID and quantity ID only shifts by a constant per branch. The hash is mixed (the murmur3 finalizer) first.
+    static int routingHash(String branchId, String quantityId) {
+      var h = branchId.hashCode() * 31 + quantityId.hashCode();
+      h ^= h >>> 16;
+      h *= 0x85ebca6b;
+      h ^= h >>> 13;
+      h *= 0xc2b2ae35;
+      h ^= h >>> 16;
+      return h;
+    }
+
+    // Handle command to update branch quantity, a no-op when the sub branch quantity is unchanged
+    public List<Event> onCommand(Command.UpdateBranchQuantity command) {
+      var branchQuantity = Quantity.of(command.branchQuantity().acquired(), command.branchQuantity().available());
+      var isSubBranch = subBranches.stream().anyMatch(s -> s.branchId.equals(command.subBranchId));
+      var isUnchanged = subBranches.stream().anyMatch(s -> s.branchId.equals(command.subBranchId) && s.quantity.equals(branchQuantity));
+      if (isUnchanged || (!isSubBranch && !subBranchIds().contains(command.subBranchId))) {
+        return List.of();
+      }
+
+      // A sub branch created by delegation joins the branch with its first update
+      var currentSubBranches = isSubBranch
+          ? subBranches
+          : Stream.concat(subBranches.stream(), Stream.of(new SubStockItems(command.subBranchId, stockId, Quantity.zero()))).toList();
+      var newSubBranches = currentSubBranches.stream()
           .map(s -> s.branchId.equals(command.subBranchId)
-              ? new SubStockItems(s.branchId, s.stockId, Quantity.of(command.branchQuantity().acquired(), command.branchQuantity().available()))
+              ? new SubStockItems(s.branchId, s.stockId, branchQuantity)
               : s)
           .toList();
       var newBranchesQuantity = newSubBranches.stream()
@@ -126,18 +209,24 @@ public interface StockItemsBranch {
           .map(s -> s.quantity())
           .reduce(Quantity.zero(), (a, c) -> a.add(c));
 
-      return new Event.BranchQuantityUpdated(
+      return withRollUp(new Event.BranchQuantityUpdated(
           command.branchId,
           parentBranchId,
           newBranchesQuantity.add(newLeavesQuantity),
           command.subBranchId,
-          newSubBranches);
+          newSubBranches));
     }
 
-    public Event onCommand(Command.UpdateLeafQuantity command) {
+    // Handle command to update leaf quantity, a no-op when the leaf quantity is unchanged
+    public List<Event> onCommand(Command.UpdateLeafQuantity command) {
+      var leafQuantity = Quantity.of(command.leafQuantity().acquired(), command.leafQuantity().available());
+      if (leaves.stream().noneMatch(s -> s.leafId.equals(command.leafId) && !s.quantity.equals(leafQuantity))) {
+        return List.of();
+      }
+
       var newLeaves = leaves.stream()
           .map(s -> s.leafId.equals(command.leafId)
-              ? new LeafStockItems(s.leafId, s.stockId, Quantity.of(command.leafQuantity().acquired(), command.leafQuantity().available()))
+              ? new LeafStockItems(s.leafId, s.stockId, leafQuantity)
               : s)
           .toList();
       var newLeavesQuantity = newLeaves.stream()
@@ -147,12 +236,31 @@ public interface StockItemsBranch {
           .map(s -> s.quantity())
           .reduce(Quantity.zero(), (a, c) -> a.add(c));
 
-      return new Event.LeafQuantityUpdated(
+      return withRollUp(new Event.LeafQuantityUpdated(
           branchId,
           parentBranchId,
           newBranchesQuantity.add(newLeavesQuantity),
           command.leafId,
-          newLeaves);
+          newLeaves));
+    }
+
+    // The first change after a roll up schedules the next one, later changes ride along with it
+    private List<Event> withRollUp(Event quantityUpdated) {
+      return isTreeTrunk() || rollUpPending
+          ? List.of(quantityUpdated)
+          : List.of(quantityUpdated, new Event.RollUpScheduled(branchId));
+    }
+
+    // Handle command to roll up the branch quantity to the parent branch
+    public List<Event> onCommand(Command.RollUpQuantity command) {
+      if (!rollUpPending || isTreeTrunk()) {
+        return List.of();
+      }
+
+      return List.of(new Event.QuantityRolledUp(
+          branchId,
+          parentBranchId.get(),
+          quantity));
     }
 
     public State onEvent(Event.StockItemsCreated event) {
@@ -163,7 +271,8 @@ public interface StockItemsBranch {
           event.quantityId(),
           event.quantity(),
           event.subBranches(),
-          event.leaves());
+          event.leaves(),
+          false);
     }
 
     public State onEvent(Event.BranchQuantityUpdated event) {
@@ -174,7 +283,8 @@ public interface StockItemsBranch {
           quantityId,
           event.quantity(),
           event.subBranches(),
-          leaves);
+          leaves,
+          rollUpPending);
     }
 
     public State onEvent(Event.LeafQuantityUpdated event) {
@@ -185,7 +295,16 @@ public interface StockItemsBranch {
           quantityId,
           event.quantity(),
           subBranches,
-          event.leaves);
+          event.leaves,
+          rollUpPending);
+    }
+
+    public State onEvent(Event.RollUpScheduled event) {
+      return new State(branchId, parentBranchId, stockId, quantityId, quantity, subBranches, leaves, true);
+    }
+
+    public State onEvent(Event.QuantityRolledUp event) {
+      return new State(branchId, parentBranchId, stockId, quantityId, quantity, subBranches, leaves, false);
     }
 
     public State onEvent(Event.DelegateToSubBranch event) {
@@ -250,6 +369,9 @@ public interface StockItemsBranch {
         String branchId,
         String leafId,
         Quantity leafQuantity) implements Command {}
+
+    record RollUpQuantity(
+        String branchId) implements Command {}
   }
 
   public sealed interface Event {
@@ -296,5 +418,13 @@ public interface StockItemsBranch {
         Quantity quantity,
         String leafId,
         List<LeafStockItems> leaves) implements Event {}
+
+    record RollUpScheduled(
+        String branchId) implements Event {}
+
+    record QuantityRolledUp(
+        String branchId,
+        String parentBranchId,
+        Quantity quantity) implements Event {}
   }
 }
@@ -2,8 +2,15 @@ package io.earthship3.domain.stock;
 
 import static io.earthship3.ShortUUID.randomUUID;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.RandomAccess;
 import java.util.stream.Stream;
 
 public interface StockItemsLeaf {
@@ -17,6 +24,10 @@ public interface StockItemsLeaf {
       List<StockOrderItem> stockOrderItems,
       boolean availableForOrders) {
 
+    public State {
+      stockOrderItems = StockOrderItems.of(stockOrderItems);
+    }
+
     public static State empty() {
       return new State(null, null, null, null, Quantity.zero(), List.of(), false);
     }
@@ -49,15 +60,14 @@ public interface StockItemsLeaf {
               command.stockId,
               command.quantityId,
               command.quantity,
-              stockOrderItems,
+              List.of(),
               true),
           new Event.StockItemsNeedOrderItems(
               command.leafId,
               command.parentBranchId,
               command.stockId,
               command.quantityId,
-              command.quantity,
-              stockOrderItems));
+              command.quantity));
     }
 
     // Allocate stock items to order items
@@ -70,13 +80,8 @@ public interface StockItemsLeaf {
                 List.of()));
       }
 
-      var newStockOrderItems = stockOrderItems;
-      for (var orderItemId : command.orderItemsIds) {
-        newStockOrderItems = updateStockOrderItems(command.orderItemsLeafId, orderItemId, newStockOrderItems);
-      }
-
-      var availableCount = (int) newStockOrderItems.stream().filter(item -> item.orderItemId().isEmpty()).count();
-      var newQuantity = Quantity.of(quantity.acquired(), availableCount);
+      var allocatedStockOrderItems = slots().allocate(command.orderItemsLeafId, command.orderItemsIds);
+      var newQuantity = Quantity.of(quantity.acquired(), quantity.available() - allocatedStockOrderItems.size());
 
       var leafQuantityUpdated = new Event.LeafQuantityUpdated(
           leafId,
@@ -84,16 +89,20 @@ public interface StockItemsLeaf {
           stockId,
           quantityId,
           newQuantity,
-          newStockOrderItems,
+          allocatedStockOrderItems,
           newQuantity.available() > 0 ? availableForOrders : false);
 
+      // Report both the previously allocated and the newly allocated order items
+      var allocations = Stream.concat(
+          slots().allocations(leafId, command.orderItemsLeafId, command.orderItemsIds).stream(),
+          allocatedStockOrderItems.stream()
+              .map(item -> new Allocation(leafId, item.stockItemId(), command.orderItemsLeafId, item.orderItemId().get())))
+          .toList();
+
       var stockItemsAllocatedToOrderItems = new Event.StockItemsAllocatedToOrderItems(
           leafId,
           command.orderItemsLeafId,
-          newStockOrderItems.stream()
-              .filter(item -> item.orderItemsLeafId().isPresent() && item.orderItemsLeafId().get().equals(command.orderItemsLeafId))
-              .map(item -> new Allocation(leafId, item.orderItemId().get(), command.orderItemsLeafId, item.orderItemId().get()))
-              .toList());
+          allocations);
 
       return newQuantity.available() == 0
           ? List.of(leafQuantityUpdated, stockItemsAllocatedToOrderItems)
@@ -105,28 +114,69 @@ public interface StockItemsLeaf {
                   parentBranchId,
                   stockId,
                   quantityId,
-                  newQuantity,
-                  newStockOrderItems));
+                  newQuantity));
     }
 
-    // Apply order items allocation
-    public List<Event> onCommand(Command.ApplyOrderItemsAllocation command) {
+    // Allocate stock items to the order items of several order items leaves in one round, each order items leaf gets
+    // its own allocated event so that it applies its allocations in one command
+    public List<Event> onCommand(Command.AllocateStockItemsToOrderItemsLeaves command) {
       if (isEmpty() || !availableForOrders) {
-        return List.of(
-            new Event.StockItemsAllocationConflictDetected(
+        return command.orderItemsLeaves.stream()
+            .map(request -> (Event) new Event.StockItemsAllocatedToOrderItems(
                 leafId,
-                command.orderItemsLeafId,
-                command.allocations));
+                request.orderItemsLeafId(),
+                List.of()))
+            .toList();
       }
 
-      // First, verify that all of the allocations are still available
-      var availableAllocations = command.allocations.stream()
-          .filter(allocation -> stockOrderItems.stream()
-              .anyMatch(item -> item.stockItemId().equals(allocation.stockItemId())
-                  && item.orderItemsLeafId().isEmpty()))
-          .toList();
+      var slots = slots();
+      var allocatedStockOrderItems = new ArrayList<StockOrderItem>();
+      var stockItemsAllocatedToOrderItems = new ArrayList<Event>();
+      for (var request : command.orderItemsLeaves) {
+        var allocated = slots.allocate(request.orderItemsLeafId(), request.orderItemsIds());
+
+        // Report both the previously allocated and the newly allocated order items
+        var allocations = Stream.concat(
+            slots.allocations(leafId, request.orderItemsLeafId(), request.orderItemsIds()).stream(),
+            allocated.stream()
+                .map(item -> new Allocation(leafId, item.stockItemId(), request.orderItemsLeafId(), item.orderItemId().get())))
+            .toList();
+
+        slots = slots.update(allocated);
+        allocatedStockOrderItems.addAll(allocated);
+        stockItemsAllocatedToOrderItems.add(new Event.StockItemsAllocatedToOrderItems(leafId, request.orderItemsLeafId(), allocations));
+      }
+
+      var newQuantity = Quantity.of(quantity.acquired(), quantity.available() - allocatedStockOrderItems.size());
+
+      var events = new ArrayList<Event>();
+      events.add(new Event.LeafQuantityUpdated(
+          leafId,
+          parentBranchId,
+          stockId,
+          quantityId,
+          newQuantity,
+          allocatedStockOrderItems,
+          newQuantity.available() > 0 ? availableForOrders : false));
+      events.addAll(stockItemsAllocatedToOrderItems);
+      if (newQuantity.available() > 0) {
+        events.add(new Event.StockItemsNeedOrderItems(
+            leafId,
+            parentBranchId,
+            stockId,
+            quantityId,
+            newQuantity));
+      }
+      return events;
+    }
+
+    // Apply order items allocation
+    public List<Event> onCommand(Command.ApplyOrderItemsAllocation command) {
+      if (command.allocations.isEmpty()) {
+        return List.of();
+      }
 
-      if (availableAllocations.size() != command.allocations.size()) {
+      if (isEmpty() || !availableForOrders) {
         return List.of(
             new Event.StockItemsAllocationConflictDetected(
                 leafId,
@@ -134,24 +184,43 @@ public interface StockItemsLeaf {
                 command.allocations));
       }
 
-      var newStockOrderItems = stockOrderItems;
-      for (var allocation : availableAllocations) {
-        newStockOrderItems = updateStockOrderItems(allocation.orderItemsLeafId(), allocation.orderItemId(), newStockOrderItems);
+      // Each allocation is resolved on its own, the ones whose stock items are still available are applied and the
+      // rest are reported as conflicts, a stock item named twice in the batch is applied once
+      var availableAllocations = new ArrayList<Allocation>();
+      var conflictingAllocations = new ArrayList<Allocation>();
+      var stockItemIdsApplied = new HashSet<String>();
+      for (var allocation : command.allocations) {
+        if (slots().isAvailable(allocation.stockItemId()) && stockItemIdsApplied.add(allocation.stockItemId())) {
+          availableAllocations.add(allocation);
+        } else {
+          conflictingAllocations.add(allocation);
+        }
       }
 
-      var newQuantity = StockItemsLeaf.Quantity.of(
-          quantity.acquired(),
-          (int) newStockOrderItems.stream().filter(item -> item.orderItemId().isPresent()).count());
+      var stockItemsAllocationConflictDetected = new Event.StockItemsAllocationConflictDetected(
+          leafId,
+          command.orderItemsLeafId,
+          conflictingAllocations);
 
-      return List.of(
-          new Event.LeafQuantityUpdated(
-              leafId,
-              parentBranchId,
-              stockId,
-              quantityId,
-              newQuantity,
-              newStockOrderItems,
-              newQuantity.available() > 0 ? availableForOrders : false));
+      if (availableAllocations.isEmpty() && !conflictingAllocations.isEmpty()) {
+        return List.of(stockItemsAllocationConflictDetected);
+      }
+
+      var allocatedStockOrderItems = slots().apply(availableAllocations);
+      var newQuantity = Quantity.of(quantity.acquired(), quantity.available() - allocatedStockOrderItems.size());
+
+      var leafQuantityUpdated = new Event.LeafQuantityUpdated(
+          leafId,
+          parentBranchId,
+          stockId,
+          quantityId,
+          newQuantity,
+          allocatedStockOrderItems,
+          newQuantity.available() > 0 ? availableForOrders : false);
+
+      return conflictingAllocations.isEmpty()
+          ? List.of(leafQuantityUpdated)
+          : List.of(leafQuantityUpdated, stockItemsAllocationConflictDetected);
     }
 
     // Release order items allocation
@@ -160,24 +229,31 @@ public interface StockItemsLeaf {
         return List.of();
       }
 
-      var newStockOrderItems = stockOrderItems;
-      for (var allocation : command.allocations) {
-        newStockOrderItems = releaseOrderItemFromStockItem(allocation.orderItemsLeafId(), allocation.orderItemId(), newStockOrderItems);
-      }
+      var releasedStockOrderItems = slots().release(command.allocations);
+      var newQuantity = Quantity.of(quantity.acquired(), quantity.available() + releasedStockOrderItems.size());
 
-      var newQuantity = StockItemsLeaf.Quantity.of(
-          quantity.acquired(),
-          (int) newStockOrderItems.stream().filter(item -> item.orderItemId().isPresent()).count());
+      // A leaf that was taken off orders because it ran out is available again once stock items are released
+      var newAvailableForOrders = newQuantity.available() > 0 && (availableForOrders || quantity.available() == 0);
 
-      return List.of(
-          new Event.LeafQuantityUpdated(
-              leafId,
-              parentBranchId,
-              stockId,
-              quantityId,
-              newQuantity,
-              newStockOrderItems,
-              newQuantity.available() > 0 ? availableForOrders : false));
+      var leafQuantityUpdated = new Event.LeafQuantityUpdated(
+          leafId,
+          parentBranchId,
+          stockId,
+          quantityId,
+          newQuantity,
+          releasedStockOrderItems,
+          newAvailableForOrders);
+
+      return releasedStockOrderItems.isEmpty() || !newAvailableForOrders
+          ? List.of(leafQuantityUpdated)
+          : List.of(
+              leafQuantityUpdated,
+              new Event.StockItemsNeedOrderItems(
+                  leafId,
+                  parentBranchId,
+                  stockId,
+                  quantityId,
+                  newQuantity));
     }
 
     // Set available for orders on/off
@@ -210,7 +286,7 @@ public interface StockItemsLeaf {
           stockId,
           quantityId,
           event.quantity(),
-          event.stockOrderItems(),
+          slots().update(event.stockOrderItems()),
           event.availableForOrders());
     }
 
@@ -237,29 +313,8 @@ public interface StockItemsLeaf {
           event.availableForOrders());
     }
 
-    private List<StockOrderItem> updateStockOrderItems(String orderItemsLeafId, String orderItemId, List<StockOrderItem> stockOrderItems) {
-      if (stockOrderItems.stream().anyMatch(item -> item.orderItemId().isPresent() && item.orderItemId().get().equals(orderItemId))) {
-        return stockOrderItems;
-      }
-      var availableItem = stockOrderItems.stream()
-          .filter(item -> item.orderItemId().isEmpty())
-          .findFirst();
-      return availableItem.isPresent()
-          ? stockOrderItems.stream()
-              .map(item -> item.equals(availableItem.get())
-                  ? new StockOrderItem(item.stockItemId(), Optional.of(orderItemId), Optional.of(orderItemsLeafId))
-                  : item)
-              .toList()
-          : stockOrderItems;
-    }
-
-    private List<StockOrderItem> releaseOrderItemFromStockItem(String orderItemsLeafId, String orderItemId, List<StockOrderItem> stockOrderItems) {
-      return stockOrderItems.stream()
-          .map(item -> item.orderItemId().isPresent() && item.orderItemId().get().equals(orderItemId)
-              && item.orderItemsLeafId().isPresent() && item.orderItemsLeafId().get().equals(orderItemsLeafId)
-                  ? new StockOrderItem(item.stockItemId(), Optional.empty(), Optional.empty())
-                  : item)
-          .toList();
+    private StockOrderItems slots() {
+      return (StockOrderItems) stockOrderItems;
     }
   }
 
@@ -291,11 +346,155 @@ public interface StockItemsLeaf {
       String orderItemsLeafId,
       String orderItemId) {}
 
+  record OrderItemsRequest(
+      String orderItemsLeafId,
+      List<String> orderItemsIds) {}
+
   record StockOrderItem(
       String stockItemId,
       Optional<String> orderItemId,
       Optional<String> orderItemsLeafId) {}
 
+  /**
+   * Slot table of the stock items in a leaf. It is exposed as a read-only {@code List<StockOrderItem>}, so the state
+   * shape is unchanged, and is backed by a bitset of available slots plus stockItemId and orderItemId indexes.
+   * <p>
+   * Commands ask the table for the stock items that an allocate, apply or release would change, in O(k) for k order
+   * items, and the resulting events carry only those changed stock items. Applying an event folds the changed stock
+   * items into a copy of the table.
+   */
+  final class StockOrderItems extends AbstractList<StockOrderItem> implements RandomAccess {
+    private final StockOrderItem[] items;
+    private final BitSet available;
+    private final Map<String, Integer> slotByStockItemId;
+    private final Map<String, Integer> slotByOrderItemId;
+
+    private StockOrderItems(
+        StockOrderItem[] items,
+        BitSet available,
+        Map<String, Integer> slotByStockItemId,
+        Map<String, Integer> slotByOrderItemId) {
+      this.items = items;
+      this.available = available;
+      this.slotByStockItemId = slotByStockItemId;
+      this.slotByOrderItemId = slotByOrderItemId;
+    }
+
+    public static StockOrderItems of(List<StockOrderItem> stockOrderItems) {
+      if (stockOrderItems instanceof StockOrderItems slots) {
+        return slots;
+      }
+
+      var items = stockOrderItems.toArray(StockOrderItem[]::new);
+      var available = new BitSet(items.length);
+      var slotByStockItemId = new HashMap<String, Integer>(items.length * 2);
+      var slotByOrderItemId = new HashMap<String, Integer>();
+      for (int slot = 0; slot < items.length; slot++) {
+        slotByStockItemId.put(items[slot].stockItemId(), slot);
+        if (items[slot].orderItemId().isPresent()) {
+          slotByOrderItemId.put(items[slot].orderItemId().get(), slot);
+        } else {
+          available.set(slot);
+        }
+      }
+
+      return new StockOrderItems(items, available, slotByStockItemId, slotByOrderItemId);
+    }
+
+    @Override
+    public StockOrderItem get(int index) {
+      return items[index];
+    }
+
+    @Override
+    public int size() {
+      return items.length;
+    }
+
+    public boolean isAvailable(String stockItemId) {
+      var slot = slotByStockItemId.get(stockItemId);
+      return slot != null && available.get(slot);
+    }
+
+    // The next available stock items allocated to the order items that are not already allocated
+    public List<StockOrderItem> allocate(String orderItemsLeafId, List<String> orderItemIds) {
+      var allocated = new ArrayList<StockOrderItem>();
+      var orderItemIdsAllocated = new HashSet<String>();
+      var slot = available.nextSetBit(0);
+      for (var orderItemId : orderItemIds) {
+        if (slot < 0) {
+          break;
+        }
+        if (!slotByOrderItemId.containsKey(orderItemId) && orderItemIdsAllocated.add(orderItemId)) {
+          allocated.add(new StockOrderItem(items[slot].stockItemId(), Optional.of(orderItemId), Optional.of(orderItemsLeafId)));
+          slot = available.nextSetBit(slot + 1);
+        }
+      }
+      return allocated;
+    }
+
+    // The specific stock items named in the allocations, the caller verifies that they are available
+    public List<StockOrderItem> apply(List<Allocation> allocations) {
+      return allocations.stream()
+          .map(allocation -> new StockOrderItem(
+              allocation.stockItemId(),
+              Optional.of(allocation.orderItemId()),
+              Optional.of(allocation.orderItemsLeafId())))
+          .toList();
+    }
+
+    // The allocated stock items that are released from the order items in the allocations
+    public List<StockOrderItem> release(List<Allocation> allocations) {
+      var released = new ArrayList<StockOrderItem>();
+      var slotsReleased = new BitSet();
+      for (var allocation : allocations) {
+        var slot = slotByOrderItemId.get(allocation.orderItemId());
+        if (slot != null && !slotsReleased.get(slot) && items[slot].orderItemsLeafId().equals(Optional.of(allocation.orderItemsLeafId()))) {
+          released.add(new StockOrderItem(items[slot].stockItemId(), Optional.empty(), Optional.empty()));
+          slotsReleased.set(slot);
+        }
+      }
+      return released;
+    }
+
+    // The allocations of the given order items that are held by the given order items leaf
+    public List<Allocation> allocations(String leafId, String orderItemsLeafId, List<String> orderItemIds) {
+      return orderItemIds.stream()
+          .map(slotByOrderItemId::get)
+          .filter(slot -> slot != null && items[slot].orderItemsLeafId().equals(Optional.of(orderItemsLeafId)))
+          .map(slot -> new Allocation(leafId, items[slot].stockItemId(), orderItemsLeafId, items[slot].orderItemId().get()))
+          .toList();
+    }
+
+    // Fold the changed stock items into a copy of this table, unknown stock items are ignored
+    public StockOrderItems update(List<StockOrderItem> changedStockOrderItems) {
+      if (changedStockOrderItems.isEmpty()) {
+        return this;
+      }
+
+      // stock item ids never change after the leaf is created, so that index is shared between copies
+      var next = new StockOrderItems(items.clone(), (BitSet) available.clone(), slotByStockItemId, new HashMap<>(slotByOrderItemId));
+      for (var item : changedStockOrderItems) {
+        var slot = slotByStockItemId.get(item.stockItemId());
+        if (slot != null) {
+          next.put(slot, item);
+        }
+      }
+      return next;
+    }
+
+    private void put(int slot, StockOrderItem item) {
+      items[slot].orderItemId().ifPresent(slotByOrderItemId::remove);
+      items[slot] = item;
+      if (item.orderItemId().isPresent()) {
+        slotByOrderItemId.put(item.orderItemId().get(), slot);
+        available.clear(slot);
+      } else {
+        available.set(slot);
+      }
+    }
+  }
+
   public sealed interface Command {
     record CreateStockItems(
         String leafId,
@@ -309,6 +508,10 @@ public interface StockItemsLeaf {
         String orderItemsLeafId,
         List<String> orderItemsIds) implements Command {}
 
+    record AllocateStockItemsToOrderItemsLeaves(
+        String leafId,
+        List<OrderItemsRequest> orderItemsLeaves) implements Command {}
+
     record ApplyOrderItemsAllocation(
         String leafId,
         String orderItemsLeafId,
@@ -333,6 +536,8 @@ public interface StockItemsLeaf {
         Quantity quantity,
         List<StockOrderItem> stockOrderItems) implements Event {}
 
+    // stockOrderItems holds only the stock items changed by this update, older events that hold every stock item of
+    // the leaf fold in the same way
     record LeafQuantityUpdated(
         String leafId,
         String parentBranchId,
@@ -342,13 +547,24 @@ public interface StockItemsLeaf {
         List<StockOrderItem> stockOrderItems,
         boolean availableForOrders) implements Event {}
 
+    // The stockOrderItems list is no longer written and is always empty, it is kept so that journaled events that still
+    // carry the list deserialize
     record StockItemsNeedOrderItems(
         String leafId,
         String parentBranchId,
         String stockId,
         String quantityId,
         Quantity quantity,
-        List<StockOrderItem> stockOrderItems) implements Event {}
+        @Deprecated List<StockOrderItem> stockOrderItems) implements Event {
+
+      public StockItemsNeedOrderItems {
+        stockOrderItems = List.of();
+      }
+
+      public StockItemsNeedOrderItems(String leafId, String parentBranchId, String stockId, String quantityId, Quantity quantity) {
+        this(leafId, parentBranchId, stockId, quantityId, quantity, List.of());
+      }
+    }
 
     record StockItemsAllocatedToOrderItems(
         String leafId,
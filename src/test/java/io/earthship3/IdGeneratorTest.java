@@ -0,0 +1,74 @@
+package io.earthship3;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.typesafe.config.ConfigFactory;
+
+public class IdGeneratorTest {
+  static final String format = "[0-9a-zA-Z]{5}-[0-9a-zA-Z]{5}-[0-9a-zA-Z]{5}";
+
+  @Test
+  void testAllGeneratorsKeepTheShortUUIDFormat() {
+    for (var name : List.of("secure", "fast", "time-ordered")) {
+      var generator = IdGenerator.of(name);
+      IntStream.range(0, 1_000).forEach(i -> {
+        var id = generator.nextId();
+        assertTrue(id.matches(format), name + " " + id);
+        var randomId = generator.randomId(8);
+        assertTrue(randomId.matches("[0-9a-zA-Z]{8}"), name + " " + randomId);
+      });
+    }
+  }
+
+  @Test
+  void testNoCollisionsUnderConcurrentLoad() throws InterruptedException {
+    for (var name : List.of("fast", "time-ordered")) {
+      var generator = IdGenerator.of(name);
+      var threads = 8;
+      var idsPerThread = 250_000;
+      Set<String> ids = ConcurrentHashMap.newKeySet();
+
+      var executor = Executors.newFixedThreadPool(threads);
+      IntStream.range(0, threads).forEach(t -> executor.execute(() -> {
+        for (int i = 0; i < idsPerThread; i++) {
+          ids.add(generator.nextId());
+        }
+      }));
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+      assertEquals(threads * idsPerThread, ids.size(), name);
+    }
+  }
+
+  @Test
+  void testGeneratorIsChosenFromConfig() {
+    assertTrue(IdGenerator.of(ConfigFactory.load()) instanceof IdGenerator.Secure);
+    assertTrue(IdGenerator.of(ConfigFactory.parseString("earth-ship-3.id-generator = fast")) instanceof IdGenerator.Fast);
+  }
+
+  @Test
+  void testTimeOrderedIdsSortByCreationSecond() {
+    var currentTimeMillis = new AtomicLong(IdGenerator.TimeOrdered.epochSecond * 1000);
+    var generator = new IdGenerator.TimeOrdered(currentTimeMillis::get);
+
+    var previousId = generator.nextId();
+    for (int i = 0; i < 1_000; i++) {
+      currentTimeMillis.addAndGet(1_000 + i * 7_919L);
+      var id = generator.nextId();
+      assertTrue(previousId.compareTo(id) < 0, previousId + " " + id);
+      previousId = id;
+    }
+  }
+}
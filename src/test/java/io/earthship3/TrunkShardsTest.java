@@ -0,0 +1,47 @@
+package io.earthship3;
+
+import static io.earthship3.ShortUUID.randomUUID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import com.typesafe.config.ConfigFactory;
+
+public class TrunkShardsTest {
+  private final TrunkShards trunkShards = TrunkShards.of(ConfigFactory.parseString("""
+      earth-ship-3.tree.trunk-shards {
+        default = 1
+        stocks { stock-hot = 4 }
+      }
+      """));
+
+  @Test
+  void testUnshardedStockUsesStockIdAsTrunkId() {
+    assertEquals(1, trunkShards.shards("stock-123"));
+    assertEquals("stock-123", trunkShards.trunkId("stock-123", randomUUID()));
+    assertEquals(List.of("stock-123"), trunkShards.trunkIds("stock-123"));
+  }
+
+  @Test
+  void testShardedStockSpreadsQuantitiesOverAllShards() {
+    var trunkIds = trunkShards.trunkIds("stock-hot");
+    assertEquals(List.of("stock-hot", "stock-hot#1", "stock-hot#2", "stock-hot#3"), trunkIds);
+
+    var usedTrunkIds = Stream.generate(() -> trunkShards.trunkId("stock-hot", randomUUID()))
+        .limit(1_000)
+        .collect(Collectors.toSet());
+    assertEquals(4, usedTrunkIds.size());
+    assertTrue(trunkIds.containsAll(usedTrunkIds));
+  }
+
+  @Test
+  void testSameQuantityIdAlwaysRoutesToSameShard() {
+    var quantityId = randomUUID();
+    assertEquals(trunkShards.trunkId("stock-hot", quantityId), trunkShards.trunkId("stock-hot", quantityId));
+  }
+}
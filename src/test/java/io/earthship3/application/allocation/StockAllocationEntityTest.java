@@ -0,0 +1,298 @@
+package io.earthship3.application.allocation;
+
+import static akka.Done.done;
+import static io.earthship3.ShortUUID.randomUUID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import akka.javasdk.testkit.EventSourcedTestKit;
+import io.earthship3.domain.allocation.StockAllocation;
+
+public class StockAllocationEntityTest {
+  @Test
+  void testQueueSupplyThenMatchDemand() {
+    var testKit = EventSourcedTestKit.of(StockAllocationEntity::new);
+
+    var stockId = "stock-123";
+    var stockItemsLeafId = randomUUID();
+    var orderItemsLeafId = randomUUID();
+
+    {
+      var result = testKit.method(StockAllocationEntity::addSupply).invoke(new StockAllocation.Command.AddSupply(stockId, stockItemsLeafId, 5));
+      assertTrue(result.isReply());
+      assertEquals(done(), result.getReply());
+
+      var event = result.getNextEventOfType(StockAllocation.Event.SupplyQueued.class);
+      assertEquals(stockItemsLeafId, event.stockItemsLeafId());
+      assertEquals(5, event.available());
+      assertEquals(1, testKit.getState().supply().size());
+    }
+
+    {
+      var result = testKit.method(StockAllocationEntity::addDemand).invoke(new StockAllocation.Command.AddDemand(stockId, orderItemsLeafId, 3));
+      assertTrue(result.isReply());
+
+      var event = result.getNextEventOfType(StockAllocation.Event.AllocationMatched.class);
+      assertEquals(stockItemsLeafId, event.stockItemsLeafId());
+      assertEquals(orderItemsLeafId, event.orderItemsLeafId());
+      assertEquals(3, event.quantity());
+
+      var state = testKit.getState();
+      assertTrue(state.supply().isEmpty());
+      assertTrue(state.demand().isEmpty());
+      assertEquals(1, state.metrics().matches());
+      assertEquals(3, state.metrics().matchedQuantity());
+    }
+  }
+
+  @Test
+  void testSupplyMatchesOldestDemandsInOneRound() {
+    var testKit = EventSourcedTestKit.of(StockAllocationEntity::new);
+
+    var stockId = "stock-123";
+    var orderItemsLeafId1 = randomUUID();
+    var orderItemsLeafId2 = randomUUID();
+    var orderItemsLeafId3 = randomUUID();
+    var stockItemsLeafId = randomUUID();
+
+    testKit.method(StockAllocationEntity::addDemand).invoke(new StockAllocation.Command.AddDemand(stockId, orderItemsLeafId1, 2));
+    testKit.method(StockAllocationEntity::addDemand).invoke(new StockAllocation.Command.AddDemand(stockId, orderItemsLeafId2, 4));
+    testKit.method(StockAllocationEntity::addDemand).invoke(new StockAllocation.Command.AddDemand(stockId, orderItemsLeafId3, 5));
+    assertEquals(3, testKit.getState().demand().size());
+
+    var result = testKit.method(StockAllocationEntity::addSupply).invoke(new StockAllocation.Command.AddSupply(stockId, stockItemsLeafId, 8));
+    var event = result.getNextEventOfType(StockAllocation.Event.AllocationsMatched.class);
+    assertEquals(stockItemsLeafId, event.stockItemsLeafId());
+    assertEquals(List.of(
+        new StockAllocation.Match(orderItemsLeafId1, 2),
+        new StockAllocation.Match(orderItemsLeafId2, 4),
+        new StockAllocation.Match(orderItemsLeafId3, 2)),
+        event.orderItemsLeaves());
+
+    var state = testKit.getState();
+    assertTrue(state.supply().isEmpty());
+    assertTrue(state.demand().isEmpty());
+    assertEquals(3, state.metrics().matches());
+    assertEquals(8, state.metrics().matchedQuantity());
+  }
+
+  @Test
+  void testRequeuedLeafKeepsItsPlace() {
+    var testKit = EventSourcedTestKit.of(StockAllocationEntity::new);
+
+    var stockId = "stock-123";
+    var stockItemsLeafId1 = randomUUID();
+    var stockItemsLeafId2 = randomUUID();
+
+    testKit.method(StockAllocationEntity::addSupply).invoke(new StockAllocation.Command.AddSupply(stockId, stockItemsLeafId1, 5));
+    testKit.method(StockAllocationEntity::addSupply).invoke(new StockAllocation.Command.AddSupply(stockId, stockItemsLeafId2, 5));
+
+    {
+      var result = testKit.method(StockAllocationEntity::addSupply).invoke(new StockAllocation.Command.AddSupply(stockId, stockItemsLeafId1, 5));
+      assertEquals(0, result.getAllEvents().size());
+    }
+
+    {
+      var result = testKit.method(StockAllocationEntity::addSupply).invoke(new StockAllocation.Command.AddSupply(stockId, stockItemsLeafId1, 2));
+      var event = result.getNextEventOfType(StockAllocation.Event.SupplyQueued.class);
+      assertEquals(2, event.available());
+
+      var state = testKit.getState();
+      assertEquals(2, state.supply().size());
+      assertEquals(stockItemsLeafId1, state.supply().get(0).stockItemsLeafId());
+      assertEquals(2, state.supply().get(0).available());
+    }
+  }
+
+  @Test
+  void testConflictedDemandBacksOffThenTriesAnotherLeaf() throws InterruptedException {
+    var testKit = EventSourcedTestKit.of(StockAllocationEntity::new);
+
+    var stockId = "stock-123";
+    var stockItemsLeafId1 = randomUUID();
+    var stockItemsLeafId2 = randomUUID();
+    var orderItemsLeafId = randomUUID();
+
+    testKit.method(StockAllocationEntity::addSupply).invoke(new StockAllocation.Command.AddSupply(stockId, stockItemsLeafId1, 5));
+    testKit.method(StockAllocationEntity::addSupply).invoke(new StockAllocation.Command.AddSupply(stockId, stockItemsLeafId2, 5));
+
+    {
+      var result = testKit.method(StockAllocationEntity::recordConflict).invoke(new StockAllocation.Command.RecordConflict(stockId, stockItemsLeafId1, orderItemsLeafId, 2));
+      var event = result.getNextEventOfType(StockAllocation.Event.ConflictRecorded.class);
+      assertEquals(1, event.attempts());
+      assertTrue(event.retryAt().isAfter(event.recordedAt()));
+      assertTrue(!event.retryAt().isAfter(event.recordedAt().plus(StockAllocation.State.baseBackoff)));
+
+      var metrics = testKit.getState().metrics();
+      assertEquals(1, metrics.conflicts());
+      assertEquals(2, metrics.conflictedAllocations());
+    }
+
+    {
+      // The order items leaf announces its demand right after the conflict, it waits in the queue
+      var result = testKit.method(StockAllocationEntity::addDemand).invoke(new StockAllocation.Command.AddDemand(stockId, orderItemsLeafId, 3));
+      result.getNextEventOfType(StockAllocation.Event.DemandQueued.class);
+      assertEquals(1, testKit.getState().demand().size());
+      assertEquals(2, testKit.getState().supply().size());
+    }
+
+    Thread.sleep(StockAllocation.State.baseBackoff.toMillis() + 50);
+
+    {
+      // Once the backoff is over it is matched with the other stock items leaf
+      var result = testKit.method(StockAllocationEntity::retryDemand).invoke(new StockAllocation.Command.RetryDemand(stockId, orderItemsLeafId));
+      var event = result.getNextEventOfType(StockAllocation.Event.AllocationMatched.class);
+      assertEquals(stockItemsLeafId2, event.stockItemsLeafId());
+      assertEquals(orderItemsLeafId, event.orderItemsLeafId());
+      assertEquals(3, event.quantity());
+    }
+
+    {
+      // A second conflict soon after doubles the backoff
+      var result = testKit.method(StockAllocationEntity::recordConflict).invoke(new StockAllocation.Command.RecordConflict(stockId, stockItemsLeafId2, orderItemsLeafId, 1));
+      var event = result.getNextEventOfType(StockAllocation.Event.ConflictRecorded.class);
+      assertEquals(2, event.attempts());
+      assertTrue(!event.retryAt().isBefore(event.recordedAt().plus(StockAllocation.State.baseBackoff)));
+    }
+  }
+
+  @Test
+  void testDemandPrefersLeafWithFewerConflicts() {
+    var testKit = EventSourcedTestKit.of(StockAllocationEntity::new);
+
+    var stockId = "stock-123";
+    var stockItemsLeafId1 = randomUUID();
+    var stockItemsLeafId2 = randomUUID();
+
+    testKit.method(StockAllocationEntity::addSupply).invoke(new StockAllocation.Command.AddSupply(stockId, stockItemsLeafId1, 5));
+    testKit.method(StockAllocationEntity::addSupply).invoke(new StockAllocation.Command.AddSupply(stockId, stockItemsLeafId2, 5));
+    testKit.method(StockAllocationEntity::recordConflict).invoke(new StockAllocation.Command.RecordConflict(stockId, stockItemsLeafId1, randomUUID(), 1));
+
+    var result = testKit.method(StockAllocationEntity::addDemand).invoke(new StockAllocation.Command.AddDemand(stockId, randomUUID(), 2));
+    var event = result.getNextEventOfType(StockAllocation.Event.AllocationMatched.class);
+    assertEquals(stockItemsLeafId2, event.stockItemsLeafId());
+  }
+
+  @Test
+  void testQueuesAreBoundedAndBacklogIsRefilledOnNewSupply() {
+    var testKit = EventSourcedTestKit.of(StockAllocationEntity::new);
+
+    var stockId = "stock-123";
+
+    for (int i = 0; i < StockAllocation.State.maxQueuedLeaves; i++) {
+      testKit.method(StockAllocationEntity::addDemand).invoke(new StockAllocation.Command.AddDemand(stockId, randomUUID(), 1));
+    }
+
+    var orderItemsLeafId = randomUUID();
+    {
+      var result = testKit.method(StockAllocationEntity::addDemand).invoke(new StockAllocation.Command.AddDemand(stockId, orderItemsLeafId, 1));
+      var event = result.getNextEventOfType(StockAllocation.Event.DemandBacklogged.class);
+      assertEquals(orderItemsLeafId, event.orderItemsLeafId());
+
+      var state = testKit.getState();
+      assertEquals(StockAllocation.State.maxQueuedLeaves, state.demand().size());
+      assertEquals(1, state.backlog());
+      assertEquals(1, state.metrics().overflowedLeaves());
+    }
+
+    // Drain the demand queue, each stock items leaf fills up to a round of order items leaves
+    while (!testKit.getState().demand().isEmpty()) {
+      testKit.method(StockAllocationEntity::addSupply).invoke(new StockAllocation.Command.AddSupply(stockId, randomUUID(), 100));
+    }
+
+    {
+      // Then new supply that finds no demand asks for the backlog
+      var result = testKit.method(StockAllocationEntity::addSupply).invoke(new StockAllocation.Command.AddSupply(stockId, randomUUID(), 5));
+      result.getNextEventOfType(StockAllocation.Event.SupplyQueued.class);
+      var event = result.getNextEventOfType(StockAllocation.Event.BacklogRefillRequested.class);
+      assertEquals(StockAllocation.State.backlogRefillSize, event.limit());
+    }
+
+    {
+      // The backlogged order items leaf is matched with the waiting supply
+      var demands = List.of(new StockAllocation.Demand(orderItemsLeafId, 1));
+      var result = testKit.method(StockAllocationEntity::refillBacklog).invoke(new StockAllocation.Command.RefillBacklog(stockId, demands, true));
+      var matched = result.getNextEventOfType(StockAllocation.Event.AllocationMatched.class);
+      assertEquals(orderItemsLeafId, matched.orderItemsLeafId());
+      var refilled = result.getNextEventOfType(StockAllocation.Event.BacklogRefilled.class);
+      assertEquals(1, refilled.refilled());
+      assertTrue(refilled.drained());
+      assertEquals(0, testKit.getState().backlog());
+    }
+  }
+
+  @Test
+  void testSupplyBacklogIsRefilledOnNewDemandUntilDrained() {
+    var testKit = EventSourcedTestKit.of(StockAllocationEntity::new);
+
+    var stockId = "stock-123";
+
+    for (int i = 0; i < StockAllocation.State.maxQueuedLeaves; i++) {
+      testKit.method(StockAllocationEntity::addSupply).invoke(new StockAllocation.Command.AddSupply(stockId, randomUUID(), 1));
+    }
+
+    var stockItemsLeafId = randomUUID();
+    {
+      var result = testKit.method(StockAllocationEntity::addSupply).invoke(new StockAllocation.Command.AddSupply(stockId, stockItemsLeafId, 5));
+      var event = result.getNextEventOfType(StockAllocation.Event.SupplyBacklogged.class);
+      assertEquals(stockItemsLeafId, event.stockItemsLeafId());
+      assertEquals(1, testKit.getState().supplyBacklog());
+    }
+
+    // Drain the supply queue, each order items leaf takes one stock items leaf
+    while (!testKit.getState().supply().isEmpty()) {
+      testKit.method(StockAllocationEntity::addDemand).invoke(new StockAllocation.Command.AddDemand(stockId, randomUUID(), 1));
+    }
+
+    var orderItemsLeafId = randomUUID();
+    {
+      // Then new demand that finds no supply asks for the supply backlog
+      var result = testKit.method(StockAllocationEntity::addDemand).invoke(new StockAllocation.Command.AddDemand(stockId, orderItemsLeafId, 2));
+      result.getNextEventOfType(StockAllocation.Event.DemandQueued.class);
+      var event = result.getNextEventOfType(StockAllocation.Event.SupplyRefillRequested.class);
+      assertEquals(StockAllocation.State.backlogRefillSize, event.limit());
+    }
+
+    {
+      // A refill that is not the last page keeps the supply backlog
+      var supplies = List.of(new StockAllocation.Supply(stockItemsLeafId, 5));
+      var result = testKit.method(StockAllocationEntity::refillSupply).invoke(new StockAllocation.Command.RefillSupply(stockId, supplies, false));
+      var matched = result.getNextEventOfType(StockAllocation.Event.AllocationsMatched.class);
+      assertEquals(stockItemsLeafId, matched.stockItemsLeafId());
+      assertEquals(orderItemsLeafId, matched.orderItemsLeaves().get(0).orderItemsLeafId());
+      var refilled = result.getNextEventOfType(StockAllocation.Event.SupplyRefilled.class);
+      assertEquals(1, refilled.refilled());
+      assertFalse(refilled.drained());
+      assertEquals(1, testKit.getState().supplyBacklog());
+      assertTrue(testKit.getState().inFlight().contains(orderItemsLeafId));
+    }
+
+    {
+      // The order items leaf of the round is not queued again by a backlog refill, it announces itself when the round is over
+      var demands = List.of(new StockAllocation.Demand(orderItemsLeafId, 2));
+      var result = testKit.method(StockAllocationEntity::refillBacklog).invoke(new StockAllocation.Command.RefillBacklog(stockId, demands, true));
+      var refilled = result.getNextEventOfType(StockAllocation.Event.BacklogRefilled.class);
+      assertEquals(0, refilled.refilled());
+      assertEquals(1, result.getAllEvents().size());
+    }
+
+    {
+      // Nothing is asked for while there is no demand waiting
+      var result = testKit.method(StockAllocationEntity::requestRefill).invoke(new StockAllocation.Command.RequestRefill(stockId));
+      assertEquals(done(), result.getReply());
+      assertEquals(0, result.getAllEvents().size());
+    }
+
+    {
+      var result = testKit.method(StockAllocationEntity::refillSupply).invoke(new StockAllocation.Command.RefillSupply(stockId, List.of(), true));
+      var refilled = result.getNextEventOfType(StockAllocation.Event.SupplyRefilled.class);
+      assertTrue(refilled.drained());
+      assertEquals(0, testKit.getState().supplyBacklog());
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package io.earthship3.application.order;
+
+import static io.earthship3.ShortUUID.randomUUID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+
+import akka.javasdk.testkit.EventSourcedTestKit;
+import io.earthship3.domain.order.CustomerOrders;
+import io.earthship3.domain.order.Order.Status;
+
+public class CustomerOrdersEntityTest {
+  @Test
+  void testOrdersMoveBetweenStatusCounts() {
+    var testKit = EventSourcedTestKit.of(CustomerOrdersEntity::new);
+
+    var customerId = "customer-1";
+    var orderId1 = randomUUID();
+    var orderId2 = randomUUID();
+    var price1 = new BigDecimal("100.10");
+    var price2 = new BigDecimal("25.05");
+    var orderedAt1 = Instant.now().minusSeconds(60);
+    var orderedAt2 = Instant.now();
+
+    testKit.method(CustomerOrdersEntity::addOrder).invoke(new CustomerOrders.Command.AddOrder(customerId, orderId2, price2, orderedAt2));
+
+    {
+      // Orders can be added out of order, the last order time is the latest one
+      var result = testKit.method(CustomerOrdersEntity::addOrder).invoke(new CustomerOrders.Command.AddOrder(customerId, orderId1, price1, orderedAt1));
+      result.getNextEventOfType(CustomerOrders.Event.OrderAdded.class);
+
+      var state = testKit.getState();
+      assertEquals(2, state.open());
+      assertEquals(12_515L, state.totalSpendCents());
+      assertEquals(orderedAt2, state.lastOrderedAt());
+    }
+
+    {
+      // The same order again changes nothing
+      var result = testKit.method(CustomerOrdersEntity::addOrder).invoke(new CustomerOrders.Command.AddOrder(customerId, orderId1, price1, orderedAt1));
+      assertEquals(0, result.getAllEvents().size());
+    }
+
+    {
+      var command = new CustomerOrders.Command.ChangeOrderStatus(customerId, orderId1, price1, Status.open, Status.backOrdered, Instant.now());
+      var result = testKit.method(CustomerOrdersEntity::changeOrderStatus).invoke(command);
+      var event = result.getNextEventOfType(CustomerOrders.Event.OrderStatusChanged.class);
+      assertEquals(Status.open, event.from());
+      assertEquals(Status.backOrdered, event.to());
+
+      // A redelivered status change changes nothing
+      assertEquals(0, testKit.method(CustomerOrdersEntity::changeOrderStatus).invoke(command).getAllEvents().size());
+    }
+
+    {
+      testKit.method(CustomerOrdersEntity::changeOrderStatus)
+          .invoke(new CustomerOrders.Command.ChangeOrderStatus(customerId, orderId1, price1, Status.backOrdered, Status.readyToShip, Instant.now()));
+      testKit.method(CustomerOrdersEntity::changeOrderStatus)
+          .invoke(new CustomerOrders.Command.ChangeOrderStatus(customerId, orderId2, price2, Status.open, Status.cancelled, Instant.now()));
+
+      var state = testKit.getState();
+      assertEquals(0, state.open());
+      assertEquals(0, state.backOrdered());
+      assertEquals(1, state.readyToShip());
+      assertEquals(1, state.cancelled());
+      assertEquals(10_010L, state.totalSpendCents());
+    }
+
+    {
+      // An order can move back to a status it had before, and a cancelled order counts towards the spend again
+      testKit.method(CustomerOrdersEntity::changeOrderStatus)
+          .invoke(new CustomerOrders.Command.ChangeOrderStatus(customerId, orderId1, price1, Status.readyToShip, Status.backOrdered, Instant.now()));
+      testKit.method(CustomerOrdersEntity::changeOrderStatus)
+          .invoke(new CustomerOrders.Command.ChangeOrderStatus(customerId, orderId2, price2, Status.cancelled, Status.readyToShip, Instant.now()));
+
+      var state = testKit.getState();
+      assertEquals(1, state.backOrdered());
+      assertEquals(1, state.readyToShip());
+      assertEquals(0, state.cancelled());
+      assertEquals(12_515L, state.totalSpendCents());
+    }
+  }
+}
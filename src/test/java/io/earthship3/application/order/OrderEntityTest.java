@@ -145,7 +145,7 @@ class OrderEntityTest {
 
       assertTrue(result.isReply());
       assertEquals(done(), result.getReply());
-      assertEquals(2, result.getAllEvents().size());
+      assertEquals(3, result.getAllEvents().size());
 
       {
         var event = result.getNextEventOfType(Order.Event.OrderItemReadyToShip.class);
@@ -160,6 +160,13 @@ class OrderEntityTest {
         assertEquals(orderId, event.orderId());
         assertTrue(event.readyToShipAt().isPresent());
       }
+
+      {
+        var event = result.getNextEventOfType(Order.Event.OrderStatusChanged.class);
+        assertEquals("123", event.customerId());
+        assertEquals(Order.Status.open, event.from());
+        assertEquals(Order.Status.readyToShip, event.to());
+      }
     }
 
     {
@@ -207,7 +214,7 @@ class OrderEntityTest {
 
       assertTrue(result.isReply());
       assertEquals(done(), result.getReply());
-      assertEquals(2, result.getAllEvents().size());
+      assertEquals(3, result.getAllEvents().size());
 
       {
         var event = result.getNextEventOfType(Order.Event.OrderItemBackOrdered.class);
@@ -224,6 +231,14 @@ class OrderEntityTest {
         assertEquals(orderId, event.orderId());
         assertTrue(event.backOrderedAt().isPresent());
       }
+
+      {
+        var event = result.getNextEventOfType(Order.Event.OrderStatusChanged.class);
+        assertEquals("123", event.customerId());
+        assertEquals(totalPrice, event.totalPrice());
+        assertEquals(Order.Status.open, event.from());
+        assertEquals(Order.Status.backOrdered, event.to());
+      }
     }
 
     {
@@ -288,7 +303,7 @@ class OrderEntityTest {
 
       assertTrue(result.isReply());
       assertEquals(done(), result.getReply());
-      assertEquals(1 + lineItems.size(), result.getAllEvents().size());
+      assertEquals(2 + lineItems.size(), result.getAllEvents().size());
 
       {
         var event = result.getNextEventOfType(Order.Event.OrderCancelled.class);
@@ -296,6 +311,12 @@ class OrderEntityTest {
         assertTrue(event.cancelledAt().isPresent());
       }
 
+      {
+        var event = result.getNextEventOfType(Order.Event.OrderStatusChanged.class);
+        assertEquals(Order.Status.open, event.from());
+        assertEquals(Order.Status.cancelled, event.to());
+      }
+
       {
         var event = result.getNextEventOfType(Order.Event.OrderItemCancelled.class);
         assertEquals(orderId, event.orderId());
@@ -326,4 +347,48 @@ class OrderEntityTest {
       assertTrue(state.backOrderedAt().isEmpty());
     }
   }
-}
\ No newline at end of file
+
+  @Test
+  void testOrderStatusChanged() {
+    var testKit = EventSourcedTestKit.of(OrderEntity::new);
+
+    var orderId = "123";
+    var stockId1 = "456";
+    var stockId2 = "789";
+    var lineItems = List.of(
+        new Order.LineItem(stockId1, "1000", BigDecimal.valueOf(100), 1, Optional.empty(), Optional.empty()),
+        new Order.LineItem(stockId2, "1000", BigDecimal.valueOf(100), 1, Optional.empty(), Optional.empty()));
+    testKit.method(OrderEntity::createOrder).invoke(new Order.Command.CreateOrder(orderId, "123", Instant.now(), lineItems));
+
+    {
+      testKit.method(OrderEntity::orderItemBackOrdered).invoke(new Order.Command.OrderItemBackOrdered(orderId, stockId1));
+
+      // A second back ordered line item does not change the status again
+      var result = testKit.method(OrderEntity::orderItemBackOrdered).invoke(new Order.Command.OrderItemBackOrdered(orderId, stockId2));
+      assertTrue(result.getAllEvents().stream().noneMatch(event -> event instanceof Order.Event.OrderStatusChanged));
+    }
+
+    {
+      testKit.method(OrderEntity::orderItemReadyToShip).invoke(new Order.Command.OrderItemReadyToShip(orderId, stockId1));
+      var result = testKit.method(OrderEntity::orderItemReadyToShip).invoke(new Order.Command.OrderItemReadyToShip(orderId, stockId2));
+
+      result.getNextEventOfType(Order.Event.OrderItemReadyToShip.class);
+      result.getNextEventOfType(Order.Event.OrderReadyToShip.class);
+      var event = result.getNextEventOfType(Order.Event.OrderStatusChanged.class);
+      assertEquals(Order.Status.backOrdered, event.from());
+      assertEquals(Order.Status.readyToShip, event.to());
+    }
+
+    {
+      var result = testKit.method(OrderEntity::orderItemBackOrdered).invoke(new Order.Command.OrderItemBackOrdered(orderId, stockId1));
+
+      result.getNextEventOfType(Order.Event.OrderItemBackOrdered.class);
+      var backOrdered = result.getNextEventOfType(Order.Event.OrderBackOrdered.class);
+      var event = result.getNextEventOfType(Order.Event.OrderStatusChanged.class);
+      assertEquals(Order.Status.readyToShip, event.from());
+      assertEquals(Order.Status.backOrdered, event.to());
+      assertEquals(backOrdered.backOrderedAt(), Optional.of(event.changedAt()));
+      assertEquals(Order.Status.backOrdered, testKit.getState().status());
+    }
+  }
+}
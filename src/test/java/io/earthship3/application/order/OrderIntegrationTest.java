@@ -55,7 +55,7 @@ public class OrderIntegrationTest extends TestKitSupport {
     return await(
         componentClient.forView()
             .method(OrderView::findByCustomerId)
-            .invokeAsync(customerId));
+            .invokeAsync(new OrderView.CustomerPage(customerId, "")));
   }
 
   private void sleep(int seconds) {
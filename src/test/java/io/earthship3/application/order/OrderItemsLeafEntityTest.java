@@ -42,6 +42,7 @@ public class OrderItemsLeafEntityTest {
       assertEquals(stockId, event.stockId());
       assertEquals(quantity, event.quantity());
       assertEquals(quantity.ordered(), event.orderStockItems().size());
+      assertNotNull(event.createdAt());
     }
 
     {
@@ -51,7 +52,7 @@ public class OrderItemsLeafEntityTest {
       assertEquals(quantityId, event.quantityId());
       assertEquals(stockId, event.stockId());
       assertEquals(quantity, event.quantity());
-      assertEquals(quantity.ordered(), event.orderStockItems().size());
+      assertTrue(event.orderStockItems().isEmpty()); // no order items changed since they were created
     }
 
     {
@@ -61,7 +62,6 @@ public class OrderItemsLeafEntityTest {
       assertEquals(quantityId, event.quantityId());
       assertEquals(stockId, event.stockId());
       assertEquals(quantity, event.quantity());
-      assertEquals(quantity.ordered(), event.orderStockItems().size());
     }
 
     {
@@ -89,7 +89,7 @@ public class OrderItemsLeafEntityTest {
     var createCommand = new OrderItemsLeaf.Command.CreateOrderItems(leafId, parentBranchId, stockId, quantityId, quantity);
     testKit.method(OrderItemsLeafEntity::createLeaf).invoke(createCommand);
 
-    // Then set to back ordered on because allocation is only allowed when the leaf is back ordered
+    // Then set to back ordered on
     var setBackOrderedCommand = new OrderItemsLeaf.Command.SetBackOrdered(leafId, Optional.of(Instant.now()));
     testKit.method(OrderItemsLeafEntity::setToBackOrdered).invoke(setBackOrderedCommand);
 
@@ -169,7 +169,7 @@ public class OrderItemsLeafEntityTest {
     testKit.method(OrderItemsLeafEntity::createLeaf).invoke(createCommand);
 
     {
-      // Then set to back ordered on because allocation is only allowed when the leaf is back ordered
+      // Then set to back ordered on
       var setBackOrderedCommand = new OrderItemsLeaf.Command.SetBackOrdered(leafId, Optional.of(Instant.now()));
       testKit.method(OrderItemsLeafEntity::setToBackOrdered).invoke(setBackOrderedCommand);
 
@@ -235,7 +235,7 @@ public class OrderItemsLeafEntityTest {
     }
 
     {
-      // Then set to back ordered on because allocation is only allowed when the leaf is back ordered
+      // Then set to back ordered on
       var setBackOrderedCommand = new OrderItemsLeaf.Command.SetBackOrdered(leafId, Optional.of(Instant.now()));
       testKit.method(OrderItemsLeafEntity::setToBackOrdered).invoke(setBackOrderedCommand);
 
@@ -358,7 +358,7 @@ public class OrderItemsLeafEntityTest {
     testKit.method(OrderItemsLeafEntity::createLeaf).invoke(createCommand);
 
     {
-      // Then send a back order command because allocation is only allowed when in a back ordered state
+      // Then send a back order command
       var backOrderCommand = new OrderItemsLeaf.Command.SetBackOrdered(leafId, Optional.of(Instant.now()));
       testKit.method(OrderItemsLeafEntity::setToBackOrdered).invoke(backOrderCommand);
 
@@ -376,7 +376,7 @@ public class OrderItemsLeafEntityTest {
     var stockItemsLeafIdToBeReleased = randomUUID();
     var stockItemIdsToBeReleased = List.of(randomUUID(), randomUUID(), randomUUID(), randomUUID(), randomUUID());
     {
-      // Then send a back order command because allocation is only allowed when in a back ordered state
+      // Then send a back order command
       var backOrderCommand = new OrderItemsLeaf.Command.SetBackOrdered(leafId, Optional.of(Instant.now()));
       testKit.method(OrderItemsLeafEntity::setToBackOrdered).invoke(backOrderCommand);
 
@@ -390,7 +390,7 @@ public class OrderItemsLeafEntityTest {
     }
 
     {
-      // Then send a back order command because allocation is only allowed when in a back ordered state
+      // Then send a back order command
       var backOrderCommand = new OrderItemsLeaf.Command.SetBackOrdered(leafId, Optional.of(Instant.now()));
       testKit.method(OrderItemsLeafEntity::setToBackOrdered).invoke(backOrderCommand);
 
@@ -434,6 +434,170 @@ public class OrderItemsLeafEntityTest {
     }
   }
 
+  @Test
+  void testAllocationIsAppliedWithoutBackOrdering() {
+    var testKit = EventSourcedTestKit.of(OrderItemsLeafEntity::new);
+
+    var leafId = randomUUID();
+    var quantity = Quantity.of(5);
+    testKit.method(OrderItemsLeafEntity::createLeaf)
+        .invoke(new OrderItemsLeaf.Command.CreateOrderItems(leafId, randomUUID(), "stock-123", randomUUID(), quantity));
+
+    // The leaf is not back ordered, it takes allocations as they are matched
+    var stockItemsLeafId = randomUUID();
+    var allocations = testKit.getState().orderStockItems().subList(0, 2).stream()
+        .map(item -> new OrderItemsLeaf.Allocation(leafId, item.orderItemId(), stockItemsLeafId, randomUUID()))
+        .toList();
+    var result = testKit.method(OrderItemsLeafEntity::applyAllocation)
+        .invoke(new OrderItemsLeaf.Command.ApplyStockItemsAllocation(leafId, stockItemsLeafId, allocations));
+
+    var event = result.getNextEventOfType(OrderItemsLeaf.Event.LeafQuantityUpdated.class);
+    assertEquals(Quantity.of(quantity.ordered(), quantity.unallocated() - allocations.size()), event.quantity());
+    assertTrue(event.backOrderedAt().isEmpty());
+    assertTrue(testKit.getState().backOrderedAt().isEmpty());
+  }
+
+  @Test
+  void testApplyStockItemsAllocationToNamedOrderItems() {
+    var testKit = EventSourcedTestKit.of(OrderItemsLeafEntity::new);
+
+    // First create the leaf
+    var leafId = randomUUID();
+    var quantityId = randomUUID();
+    var quantity = Quantity.of(5);
+    var parentBranchId = randomUUID();
+    var stockId = "stock-123";
+
+    var createCommand = new OrderItemsLeaf.Command.CreateOrderItems(leafId, parentBranchId, stockId, quantityId, quantity);
+    testKit.method(OrderItemsLeafEntity::createLeaf).invoke(createCommand);
+
+    // Then set to back ordered on
+    var setBackOrderedCommand = new OrderItemsLeaf.Command.SetBackOrdered(leafId, Optional.of(Instant.now()));
+    testKit.method(OrderItemsLeafEntity::setToBackOrdered).invoke(setBackOrderedCommand);
+
+    // Then apply an allocation of the last two order items
+    var stockItemsLeafId = randomUUID();
+    var orderItems = testKit.getState().orderStockItems();
+    var allocations = orderItems.subList(3, 5).stream()
+        .map(item -> new OrderItemsLeaf.Allocation(leafId, item.orderItemId(), stockItemsLeafId, randomUUID()))
+        .toList();
+    {
+      var command = new OrderItemsLeaf.Command.ApplyStockItemsAllocation(leafId, stockItemsLeafId, allocations);
+      var result = testKit.method(OrderItemsLeafEntity::applyAllocation).invoke(command);
+
+      assertTrue(result.isReply());
+      assertEquals(done(), result.getReply());
+
+      var event = result.getNextEventOfType(OrderItemsLeaf.Event.LeafQuantityUpdated.class);
+      assertEquals(Quantity.of(quantity.ordered(), quantity.unallocated() - allocations.size()), event.quantity());
+      assertTrue(allocations.stream()
+          .allMatch(allocation -> event.orderStockItems().stream()
+              .anyMatch(item -> item.orderItemId().equals(allocation.orderItemId()) &&
+                  item.stockItemId().equals(Optional.of(allocation.stockItemId())) &&
+                  item.stockItemsLeafId().equals(Optional.of(stockItemsLeafId)))));
+    }
+
+    {
+      // Then applying the same allocation again, as a redelivery or a re-report does, changes nothing
+      var command = new OrderItemsLeaf.Command.ApplyStockItemsAllocation(leafId, stockItemsLeafId, allocations);
+      var result = testKit.method(OrderItemsLeafEntity::applyAllocation).invoke(command);
+
+      // and the leaf only asks again for the order items it still needs
+      assertTrue(result.isReply());
+      assertEquals(1, result.getAllEvents().size());
+      result.getNextEventOfType(OrderItemsLeaf.Event.OrderItemsNeedStockItems.class);
+      assertEquals(Quantity.of(quantity.ordered(), quantity.unallocated() - allocations.size()), testKit.getState().quantity());
+    }
+
+    {
+      // Then an order item named twice in one batch is applied once, with another stock item it is a conflict
+      var orderItemId = orderItems.get(2).orderItemId();
+      var duplicateAllocations = List.of(
+          new OrderItemsLeaf.Allocation(leafId, orderItemId, stockItemsLeafId, "stock-item-1"),
+          new OrderItemsLeaf.Allocation(leafId, orderItemId, stockItemsLeafId, "stock-item-1"),
+          new OrderItemsLeaf.Allocation(leafId, orderItemId, stockItemsLeafId, "stock-item-2"));
+      var command = new OrderItemsLeaf.Command.ApplyStockItemsAllocation(leafId, stockItemsLeafId, duplicateAllocations);
+      var result = testKit.method(OrderItemsLeafEntity::applyAllocation).invoke(command);
+
+      var updated = result.getNextEventOfType(OrderItemsLeaf.Event.LeafQuantityUpdated.class);
+      assertEquals(Quantity.of(quantity.ordered(), quantity.unallocated() - allocations.size() - 1), updated.quantity());
+      assertEquals(1, updated.orderStockItems().size());
+      var conflict = result.getNextEventOfType(OrderItemsLeaf.Event.OrderItemsAllocationConflictDetected.class);
+      assertEquals(List.of(duplicateAllocations.get(2)), conflict.allocations());
+    }
+
+    {
+      // Then an allocation that names one allocated and one unallocated order item applies the unallocated one
+      testKit.method(OrderItemsLeafEntity::setToBackOrdered).invoke(setBackOrderedCommand);
+      var partialAllocations = List.of(
+          new OrderItemsLeaf.Allocation(leafId, orderItems.get(3).orderItemId(), stockItemsLeafId, randomUUID()),
+          new OrderItemsLeaf.Allocation(leafId, orderItems.get(0).orderItemId(), stockItemsLeafId, randomUUID()));
+      var command = new OrderItemsLeaf.Command.ApplyStockItemsAllocation(leafId, stockItemsLeafId, partialAllocations);
+      var result = testKit.method(OrderItemsLeafEntity::applyAllocation).invoke(command);
+
+      assertTrue(result.isReply());
+      var updated = result.getNextEventOfType(OrderItemsLeaf.Event.LeafQuantityUpdated.class);
+      assertEquals(Quantity.of(quantity.ordered(), quantity.unallocated() - allocations.size() - 2), updated.quantity());
+      var conflict = result.getNextEventOfType(OrderItemsLeaf.Event.OrderItemsAllocationConflictDetected.class);
+      assertEquals(List.of(partialAllocations.get(0)), conflict.allocations());
+    }
+  }
+
+  @Test
+  void testCancelOrderItemsReleasesAllAllocations() {
+    var testKit = EventSourcedTestKit.of(OrderItemsLeafEntity::new);
+
+    var leafId = randomUUID();
+    var stockId = "stock-123";
+    var createCommand = new OrderItemsLeaf.Command.CreateOrderItems(leafId, randomUUID(), stockId, randomUUID(), Quantity.of(15));
+    testKit.method(OrderItemsLeafEntity::createLeaf).invoke(createCommand);
+
+    // Allocate 5 items to each of two stock items leaves
+    var stockItemsLeafId1 = randomUUID();
+    var stockItemsLeafId2 = randomUUID();
+    for (var stockItemsLeafId : List.of(stockItemsLeafId1, stockItemsLeafId2)) {
+      testKit.method(OrderItemsLeafEntity::setToBackOrdered).invoke(new OrderItemsLeaf.Command.SetBackOrdered(leafId, Optional.of(Instant.now())));
+      var stockItemIds = List.of(randomUUID(), randomUUID(), randomUUID(), randomUUID(), randomUUID());
+      testKit.method(OrderItemsLeafEntity::requestAllocation).invoke(new OrderItemsLeaf.Command.AllocateOrderItemsToStockItems(leafId, stockItemsLeafId, stockItemIds));
+    }
+    assertEquals(5, testKit.getState().quantity().unallocated());
+
+    {
+      var result = testKit.method(OrderItemsLeafEntity::cancelOrderItems).invoke(new OrderItemsLeaf.Command.CancelOrderItems(leafId));
+      assertEquals(2, result.getAllEvents().size());
+
+      var quantityUpdated = result.getNextEventOfType(OrderItemsLeaf.Event.LeafQuantityUpdated.class);
+      assertEquals(15, quantityUpdated.quantity().unallocated());
+      assertEquals(10, quantityUpdated.orderStockItems().size());
+
+      var cancelled = result.getNextEventOfType(OrderItemsLeaf.Event.OrderItemsCancelled.class);
+      assertEquals(10, cancelled.allocations().size());
+      assertEquals(5, cancelled.allocations().stream().filter(a -> a.stockItemsLeafId().equals(stockItemsLeafId1)).count());
+      assertEquals(5, cancelled.allocations().stream().filter(a -> a.stockItemsLeafId().equals(stockItemsLeafId2)).count());
+
+      var state = testKit.getState();
+      assertTrue(state.cancelledAt().isPresent());
+      assertTrue(state.orderStockItems().stream().allMatch(item -> item.stockItemId().isEmpty()));
+    }
+
+    {
+      // A cancelled leaf is cancelled once and takes no more allocations
+      var result = testKit.method(OrderItemsLeafEntity::cancelOrderItems).invoke(new OrderItemsLeaf.Command.CancelOrderItems(leafId));
+      assertEquals(0, result.getAllEvents().size());
+
+      result = testKit.method(OrderItemsLeafEntity::setToBackOrdered).invoke(new OrderItemsLeaf.Command.SetBackOrdered(leafId, Optional.of(Instant.now())));
+      assertEquals(0, result.getAllEvents().size());
+
+      var stockItemIds = List.of(randomUUID(), randomUUID());
+      result = testKit.method(OrderItemsLeafEntity::requestAllocation).invoke(new OrderItemsLeaf.Command.AllocateOrderItemsToStockItems(leafId, randomUUID(), stockItemIds));
+      assertTrue(result.getAllEvents().stream()
+          .filter(event -> event instanceof OrderItemsLeaf.Event.OrderItemsAllocatedToStockItems)
+          .allMatch(event -> ((OrderItemsLeaf.Event.OrderItemsAllocatedToStockItems) event).allocations().isEmpty()));
+      assertTrue(result.getAllEvents().stream().noneMatch(event -> event instanceof OrderItemsLeaf.Event.OrderItemsNeedStockItems));
+      assertEquals(15, testKit.getState().quantity().unallocated());
+    }
+  }
+
   @Test
   void testGetState() {
     var testKit = EventSourcedTestKit.of(OrderItemsLeafEntity::new);
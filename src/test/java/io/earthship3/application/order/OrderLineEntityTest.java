@@ -0,0 +1,126 @@
+package io.earthship3.application.order;
+
+import static io.earthship3.ShortUUID.randomUUID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import akka.javasdk.testkit.EventSourcedTestKit;
+import io.earthship3.domain.order.OrderLine;
+
+public class OrderLineEntityTest {
+  @Test
+  void testReadyToShipOnceAllLeavesAreAllocated() {
+    var testKit = EventSourcedTestKit.of(OrderLineEntity::new);
+
+    var orderId = randomUUID();
+    var stockId = "stock-123";
+    var leafId1 = randomUUID();
+    var leafId2 = randomUUID();
+
+    var orderedAt = Instant.now();
+    testKit.method(OrderLineEntity::createOrderLine).invoke(new OrderLine.Command.CreateOrderLine(orderId, stockId, 30, orderedAt));
+
+    {
+      // The first leaf is allocated, the second leaf does not exist yet
+      var result = testKit.method(OrderLineEntity::updateLeafReadiness).invoke(new OrderLine.Command.UpdateLeafReadiness(orderId, stockId, leafId1, 20, 0, false));
+      assertEquals(1, result.getAllEvents().size());
+      result.getNextEventOfType(OrderLine.Event.LeafReadinessUpdated.class);
+    }
+
+    {
+      var result = testKit.method(OrderLineEntity::updateLeafReadiness).invoke(new OrderLine.Command.UpdateLeafReadiness(orderId, stockId, leafId2, 10, 4, false));
+      assertEquals(1, result.getAllEvents().size());
+      assertEquals(List.of(leafId1, leafId2), testKit.getState().leafIds());
+    }
+
+    {
+      var result = testKit.method(OrderLineEntity::updateLeafReadiness).invoke(new OrderLine.Command.UpdateLeafReadiness(orderId, stockId, leafId2, 10, 0, false));
+      result.getNextEventOfType(OrderLine.Event.LeafReadinessUpdated.class);
+      var event = result.getNextEventOfType(OrderLine.Event.OrderLineReadyToShip.class);
+      assertEquals(orderId, event.orderId());
+      assertEquals(stockId, event.stockId());
+      assertEquals(orderedAt, event.orderedAt());
+      assertTrue(testKit.getState().readyToShipAt().isPresent());
+    }
+
+    {
+      // The same leaf update again changes nothing
+      var result = testKit.method(OrderLineEntity::updateLeafReadiness).invoke(new OrderLine.Command.UpdateLeafReadiness(orderId, stockId, leafId2, 10, 0, false));
+      assertEquals(0, result.getAllEvents().size());
+    }
+  }
+
+  @Test
+  void testBackOrderedReportedOnce() {
+    var testKit = EventSourcedTestKit.of(OrderLineEntity::new);
+
+    var orderId = randomUUID();
+    var stockId = "stock-123";
+    var leafId1 = randomUUID();
+    var leafId2 = randomUUID();
+
+    // Leaf updates can arrive before the line is created
+    testKit.method(OrderLineEntity::updateLeafReadiness).invoke(new OrderLine.Command.UpdateLeafReadiness(orderId, stockId, leafId1, 20, 20, false));
+    testKit.method(OrderLineEntity::updateLeafReadiness).invoke(new OrderLine.Command.UpdateLeafReadiness(orderId, stockId, leafId2, 5, 5, false));
+    testKit.method(OrderLineEntity::createOrderLine).invoke(new OrderLine.Command.CreateOrderLine(orderId, stockId, 25, Instant.now()));
+
+    {
+      var result = testKit.method(OrderLineEntity::updateLeafReadiness).invoke(new OrderLine.Command.UpdateLeafReadiness(orderId, stockId, leafId1, 20, 20, true));
+      result.getNextEventOfType(OrderLine.Event.OrderLineBackOrdered.class);
+    }
+
+    {
+      var result = testKit.method(OrderLineEntity::updateLeafReadiness).invoke(new OrderLine.Command.UpdateLeafReadiness(orderId, stockId, leafId2, 5, 5, true));
+      assertEquals(1, result.getAllEvents().size()); // the line is already back ordered
+    }
+
+    {
+      testKit.method(OrderLineEntity::updateLeafReadiness).invoke(new OrderLine.Command.UpdateLeafReadiness(orderId, stockId, leafId1, 20, 0, false));
+      var result = testKit.method(OrderLineEntity::updateLeafReadiness).invoke(new OrderLine.Command.UpdateLeafReadiness(orderId, stockId, leafId2, 5, 0, false));
+      result.getNextEventOfType(OrderLine.Event.OrderLineReadyToShip.class);
+    }
+  }
+
+  @Test
+  void testCancelOrderLineCancelsKnownAndLateLeaves() {
+    var testKit = EventSourcedTestKit.of(OrderLineEntity::new);
+
+    var orderId = randomUUID();
+    var stockId = "stock-123";
+    var leafId1 = randomUUID();
+    var leafId2 = randomUUID();
+
+    testKit.method(OrderLineEntity::createOrderLine).invoke(new OrderLine.Command.CreateOrderLine(orderId, stockId, 30, Instant.now()));
+    testKit.method(OrderLineEntity::updateLeafReadiness).invoke(new OrderLine.Command.UpdateLeafReadiness(orderId, stockId, leafId1, 20, 5, true));
+
+    {
+      var result = testKit.method(OrderLineEntity::cancelOrderLine).invoke(new OrderLine.Command.CancelOrderLine(orderId, stockId));
+      var event = result.getNextEventOfType(OrderLine.Event.OrderLineCancelled.class);
+      assertEquals(List.of(leafId1), event.leafIds());
+      assertTrue(testKit.getState().cancelledAt().isPresent());
+    }
+
+    {
+      // A leaf that reports after the cancellation is cancelled as it arrives
+      var result = testKit.method(OrderLineEntity::updateLeafReadiness).invoke(new OrderLine.Command.UpdateLeafReadiness(orderId, stockId, leafId2, 10, 0, false));
+      result.getNextEventOfType(OrderLine.Event.LeafReadinessUpdated.class);
+      var event = result.getNextEventOfType(OrderLine.Event.OrderLineCancelled.class);
+      assertEquals(List.of(leafId2), event.leafIds());
+    }
+
+    {
+      // Known leaves releasing their allocations do not make a cancelled line ready to ship
+      var result = testKit.method(OrderLineEntity::updateLeafReadiness).invoke(new OrderLine.Command.UpdateLeafReadiness(orderId, stockId, leafId1, 20, 0, false));
+      assertEquals(1, result.getAllEvents().size());
+      assertTrue(testKit.getState().readyToShipAt().isEmpty());
+
+      result = testKit.method(OrderLineEntity::cancelOrderLine).invoke(new OrderLine.Command.CancelOrderLine(orderId, stockId));
+      assertEquals(0, result.getAllEvents().size());
+    }
+  }
+}
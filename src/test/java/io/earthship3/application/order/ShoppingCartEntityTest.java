@@ -105,10 +105,7 @@ public class ShoppingCartEntityTest {
 
     {
       var state = testKit.getState();
-      var lineItem = state.lineItems().stream()
-          .filter(item -> item.stockId().equals(updatedLineItem.stockId()))
-          .findFirst()
-          .orElseThrow();
+      var lineItem = state.lineItem(updatedLineItem.stockId()).orElseThrow();
       assertEquals(updatedLineItem.stockName(), lineItem.stockName());
       assertEquals(updatedLineItem.price(), lineItem.price());
       assertEquals(updatedLineItem.quantity(), lineItem.quantity());
@@ -237,4 +234,71 @@ public class ShoppingCartEntityTest {
       assertEquals(List.of(), state.lineItems());
     }
   }
+
+  @Test
+  void testApplyLineItems() {
+    var testKit = EventSourcedTestKit.of(ShoppingCartEntity::new);
+
+    var customerId = "123";
+    var lineItems = List.of(
+        new ShoppingCart.LineItem("123", "item1", BigDecimal.valueOf(10), 1),
+        new ShoppingCart.LineItem("456", "item2", BigDecimal.valueOf(20), 2),
+        new ShoppingCart.LineItem("789", "item3", BigDecimal.valueOf(30), 3));
+
+    {
+      var command = new Command.ApplyLineItems(customerId, lineItems);
+      var result = testKit.method(ShoppingCartEntity::applyLineItems).invoke(command);
+
+      assertTrue(result.isReply());
+      assertEquals(done(), result.getReply());
+      assertEquals(1, result.getAllEvents().size());
+
+      var event = result.getNextEventOfType(Event.LineItemsApplied.class);
+      assertEquals(customerId, event.customerId());
+      assertEquals(lineItems, event.lineItems());
+      assertEquals(List.of(), event.removedStockIds());
+      assertEquals(lineItems, testKit.getState().lineItems());
+    }
+
+    var updatedLineItem = new ShoppingCart.LineItem("456", "updated item2", BigDecimal.valueOf(200), 22);
+    var newLineItem = new ShoppingCart.LineItem("999", "item4", BigDecimal.valueOf(40), 4);
+
+    {
+      // Only the changed line items are in the event, an unchanged one is dropped and a zero quantity removes
+      var changes = List.of(
+          lineItems.get(0),
+          updatedLineItem,
+          new ShoppingCart.LineItem("789", null, null, 0),
+          newLineItem);
+      var command = new Command.ApplyLineItems(customerId, changes);
+      var result = testKit.method(ShoppingCartEntity::applyLineItems).invoke(command);
+
+      assertTrue(result.isReply());
+      assertEquals(done(), result.getReply());
+      assertEquals(1, result.getAllEvents().size());
+
+      var event = result.getNextEventOfType(Event.LineItemsApplied.class);
+      assertEquals(List.of(updatedLineItem, newLineItem), event.lineItems());
+      assertEquals(List.of("789"), event.removedStockIds());
+      assertEquals(List.of(lineItems.get(0), updatedLineItem, newLineItem), testKit.getState().lineItems());
+    }
+
+    {
+      // Applying the same line items again changes nothing
+      var command = new Command.ApplyLineItems(customerId, List.of(lineItems.get(0), updatedLineItem));
+      var result = testKit.method(ShoppingCartEntity::applyLineItems).invoke(command);
+
+      assertTrue(result.isReply());
+      assertEquals(done(), result.getReply());
+      assertEquals(0, result.getAllEvents().size());
+    }
+
+    {
+      var command = new Command.ApplyLineItems(customerId, List.of(new ShoppingCart.LineItem("111", "", BigDecimal.valueOf(10), 1)));
+      var result = testKit.method(ShoppingCartEntity::applyLineItems).invoke(command);
+
+      assertTrue(result.isError());
+      assertEquals(0, result.getAllEvents().size());
+    }
+  }
 }
@@ -0,0 +1,92 @@
+package io.earthship3.application.stock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.earthship3.domain.stock.StockItemsBranch.Quantity;
+
+public class StockAvailabilityCacheTest {
+  @Test
+  void testLoadOnceWhileFresh() {
+    var cache = new StockAvailabilityCache();
+    var loads = new AtomicInteger();
+    var ttl = Duration.ofMinutes(1);
+
+    for (int i = 0; i < 10; i++) {
+      var quantity = cache.get("stock-1", ttl, stockId -> {
+        loads.incrementAndGet();
+        return CompletableFuture.completedFuture(Quantity.of(10, 7));
+      }).toCompletableFuture().join();
+      assertEquals(Quantity.of(10, 7), quantity);
+    }
+
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  void testConcurrentMissesShareOneLoad() {
+    var cache = new StockAvailabilityCache();
+    var loads = new AtomicInteger();
+    var load = new CompletableFuture<Quantity>();
+
+    var first = cache.get("stock-1", Duration.ZERO, stockId -> {
+      loads.incrementAndGet();
+      return load;
+    });
+    var second = cache.get("stock-1", Duration.ZERO, stockId -> {
+      loads.incrementAndGet();
+      return load;
+    });
+    load.complete(Quantity.of(5));
+
+    assertEquals(1, loads.get());
+    assertEquals(Quantity.of(5), first.toCompletableFuture().join());
+    assertEquals(Quantity.of(5), second.toCompletableFuture().join());
+  }
+
+  @Test
+  void testRefreshFromEventAndStaleAnswerOnLoadFailure() {
+    var cache = new StockAvailabilityCache();
+    cache.refresh("stock-1", Quantity.of(10, 3), Instant.now());
+
+    assertEquals(Quantity.of(10, 3), cache.get("stock-1", Duration.ofMinutes(1), stockId -> failed()).toCompletableFuture().join());
+    assertEquals(Quantity.of(10, 3), cache.get("stock-1", Duration.ZERO, stockId -> failed()).toCompletableFuture().join());
+  }
+
+  @Test
+  void testOlderEventDoesNotReplaceNewerQuantity() {
+    var cache = new StockAvailabilityCache();
+    var now = Instant.now();
+    cache.refresh("stock-1", Quantity.of(10, 3), now);
+    cache.refresh("stock-1", Quantity.of(10, 8), now.minusSeconds(1));
+
+    assertEquals(Quantity.of(10, 3), cache.get("stock-1", Duration.ofMinutes(1), stockId -> failed()).toCompletableFuture().join());
+
+    cache.refresh("stock-1", Quantity.of(10, 2), now.plusSeconds(1));
+
+    assertEquals(Quantity.of(10, 2), cache.get("stock-1", Duration.ofMinutes(1), stockId -> failed()).toCompletableFuture().join());
+  }
+
+  @Test
+  void testLoaderThatThrowsDoesNotBlockLaterLoads() {
+    var cache = new StockAvailabilityCache();
+    var error = cache.get("stock-1", Duration.ZERO, stockId -> {
+      throw new IllegalStateException("trunk unavailable");
+    });
+
+    assertTrue(error.toCompletableFuture().isCompletedExceptionally());
+    assertEquals(Quantity.of(4), cache.get("stock-1", Duration.ZERO, stockId -> CompletableFuture.completedFuture(Quantity.of(4))).toCompletableFuture().join());
+  }
+
+  private static CompletionStage<Quantity> failed() {
+    return CompletableFuture.failedFuture(new RuntimeException("trunk unavailable"));
+  }
+}
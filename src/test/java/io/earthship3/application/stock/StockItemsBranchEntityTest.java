@@ -6,7 +6,9 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.Test;
 
@@ -359,10 +361,7 @@ public class StockItemsBranchEntityTest {
 
       // Verify that a delegation event was emitted
       var delegateEvent = result.getNextEventOfType(StockItemsBranch.Event.DelegateToSubBranch.class);
-      var subBranch = state.subBranches().stream()
-          .filter(b -> b.branchId().equals(delegateEvent.subBranchId()))
-          .findFirst();
-      assertTrue(subBranch.isPresent());
+      assertTrue(state.subBranchIds().contains(delegateEvent.subBranchId()));
       assertEquals(stockId, delegateEvent.stockId());
       assertEquals(quantityId, delegateEvent.quantityId());
       assertEquals(quantityAvailable, delegateEvent.quantity());
@@ -373,4 +372,183 @@ public class StockItemsBranchEntityTest {
     var finalState = testKit.getState();
     assertEquals(state, finalState); // State should remain unchanged after delegation
   }
+
+  @Test
+  void testBurstIsSpreadDifferentlyAtEachLevel() {
+    var trunkTestKit = EventSourcedTestKit.of(StockItemsBranchEntity::new);
+    var subBranchTestKit = EventSourcedTestKit.of(StockItemsBranchEntity::new);
+
+    var trunkId = randomUUID();
+    var subBranchId = StockItemsBranch.State.subBranchId(trunkId, 0);
+    var stockId = "stock-123";
+    var quantity = Quantity.of(StockItemsBranch.State.maxStockItemsPerBranch * 5);
+
+    trunkTestKit.method(StockItemsBranchEntity::addQuantity)
+        .invoke(new StockItemsBranch.Command.AddQuantityToTree(trunkId, stockId, randomUUID(), quantity, Optional.empty()));
+    subBranchTestKit.method(StockItemsBranchEntity::addQuantity)
+        .invoke(new StockItemsBranch.Command.AddQuantityToTree(subBranchId, stockId, randomUUID(), quantity, Optional.of(trunkId)));
+
+    // The same quantities routed by the trunk and by one of its sub branches, before any of them roll up
+    var sameOrdinal = 0;
+    for (int i = 0; i < 100; i++) {
+      var quantityId = randomUUID();
+      var trunkEvent = trunkTestKit.method(StockItemsBranchEntity::addQuantity)
+          .invoke(new StockItemsBranch.Command.AddQuantityToTree(trunkId, stockId, quantityId, Quantity.of(10), Optional.empty()))
+          .getNextEventOfType(StockItemsBranch.Event.DelegateToSubBranch.class);
+      var subBranchEvent = subBranchTestKit.method(StockItemsBranchEntity::addQuantity)
+          .invoke(new StockItemsBranch.Command.AddQuantityToTree(subBranchId, stockId, quantityId, Quantity.of(10), Optional.of(trunkId)))
+          .getNextEventOfType(StockItemsBranch.Event.DelegateToSubBranch.class);
+      var trunkOrdinal = trunkEvent.subBranchId().substring(trunkId.length());
+      var subBranchOrdinal = subBranchEvent.subBranchId().substring(subBranchId.length());
+      sameOrdinal += trunkOrdinal.equals(subBranchOrdinal) ? 1 : 0;
+    }
+
+    assertTrue(sameOrdinal < 50, "same ordinal at both levels " + sameOrdinal + " of 100 times");
+  }
+
+  @Test
+  void testDelegateToLeastLoadedSubBranch() {
+    var testKit = EventSourcedTestKit.of(StockItemsBranchEntity::new);
+
+    var branchId = randomUUID();
+    var stockId = "stock-123";
+    var quantity = Quantity.of(StockItemsBranch.State.maxStockItemsPerBranch * 5);
+
+    testKit.method(StockItemsBranchEntity::addQuantity)
+        .invoke(new StockItemsBranch.Command.AddQuantityToTree(branchId, stockId, randomUUID(), quantity, Optional.empty()));
+
+    // Load the sub branches created so far well beyond a branch worth of items
+    var state = testKit.getState();
+    var loadedSubBranchIds = state.subBranches().stream().map(s -> s.branchId()).toList();
+    assertTrue(loadedSubBranchIds.size() < state.subBranchIds().size());
+    state.subBranches().stream()
+        .forEach(s -> testKit.method(StockItemsBranchEntity::updateBranchQuantity)
+            .invoke(new StockItemsBranch.Command.UpdateBranchQuantity(branchId, s.branchId(), Quantity.of(StockItemsBranch.State.maxStockItemsPerBranch * 10))));
+
+    for (int i = 0; i < 10; i++) {
+      var result = testKit.method(StockItemsBranchEntity::addQuantity)
+          .invoke(new StockItemsBranch.Command.AddQuantityToTree(branchId, stockId, randomUUID(), Quantity.of(10), Optional.empty()));
+      var event = result.getNextEventOfType(StockItemsBranch.Event.DelegateToSubBranch.class);
+      assertTrue(state.subBranchIds().contains(event.subBranchId()));
+      assertTrue(!loadedSubBranchIds.contains(event.subBranchId()));
+    }
+
+    // A sub branch created by delegation joins the branch with its first update
+    var newSubBranchId = StockItemsBranch.State.subBranchId(branchId, state.subBranchIds().size() - 1);
+    var loadedQuantity = testKit.getState().quantity();
+    testKit.method(StockItemsBranchEntity::updateBranchQuantity)
+        .invoke(new StockItemsBranch.Command.UpdateBranchQuantity(branchId, newSubBranchId, Quantity.of(10)));
+    assertTrue(testKit.getState().subBranches().stream().anyMatch(s -> s.branchId().equals(newSubBranchId)));
+    assertEquals(loadedQuantity.add(Quantity.of(10)), testKit.getState().quantity());
+  }
+
+  @Test
+  void testRouteToLegacySubBranchIds() {
+    var branchId = randomUUID();
+    var stockId = "stock-123";
+
+    // A branch journaled before child IDs were derived replays with the random IDs of its sub branches
+    var legacySubBranches = IntStream.range(0, StockItemsBranch.State.maxSubBranches)
+        .mapToObj(i -> new StockItemsBranch.SubStockItems(randomUUID(), stockId, Quantity.zero()))
+        .toList();
+    var legacySubBranchIds = legacySubBranches.stream().map(s -> s.branchId()).toList();
+    var state = StockItemsBranch.State.empty().onEvent(new StockItemsBranch.Event.StockItemsCreated(
+        branchId, stockId, randomUUID(), Quantity.of(StockItemsBranch.State.maxStockItemsPerBranch * 5), Optional.empty(), legacySubBranches, List.of()));
+    assertEquals(legacySubBranchIds, state.subBranchIds());
+
+    for (int i = 0; i < 10; i++) {
+      var command = new StockItemsBranch.Command.AddQuantityToTree(branchId, stockId, randomUUID(), Quantity.of(10), Optional.empty());
+      var event = (StockItemsBranch.Event.DelegateToSubBranch) state.onCommand(command).get(0);
+      assertTrue(legacySubBranchIds.contains(event.subBranchId()));
+    }
+
+    // A legacy sub branch still rolls its quantity up into the branch
+    {
+      var command = new StockItemsBranch.Command.UpdateBranchQuantity(branchId, legacySubBranchIds.get(0), Quantity.of(10));
+      var event = (StockItemsBranch.Event.BranchQuantityUpdated) state.onCommand(command).get(0);
+      assertEquals(legacySubBranchIds.get(0), event.subBranchId());
+      assertEquals(Quantity.of(10), event.quantity());
+    }
+
+    // A branch with fewer legacy sub branches delegates to derived IDs in the free slots
+    {
+      var fewerLegacySubBranches = legacySubBranches.subList(0, 2);
+      var partialState = StockItemsBranch.State.empty().onEvent(new StockItemsBranch.Event.StockItemsCreated(
+          branchId, stockId, randomUUID(), Quantity.of(StockItemsBranch.State.maxStockItemsPerBranch * 5), Optional.empty(), fewerLegacySubBranches, List.of()));
+      var subBranchIds = partialState.subBranchIds();
+      assertEquals(StockItemsBranch.State.maxSubBranches, subBranchIds.size());
+      assertEquals(legacySubBranchIds.subList(0, 2), subBranchIds.subList(0, 2));
+      assertEquals(StockItemsBranch.State.subBranchId(branchId, 0), subBranchIds.get(2));
+    }
+  }
+
+  @Test
+  void testRollUpQuantityOncePerWindow() {
+    var testKit = EventSourcedTestKit.of(StockItemsBranchEntity::new);
+
+    var branchId = randomUUID();
+    var stockId = "stock-123";
+    var quantityId = randomUUID();
+    var quantity = Quantity.of(StockItemsBranch.State.maxStockItemsPerBranch * 5);
+    var parentBranchId = Optional.of(randomUUID());
+
+    {
+      var command = new StockItemsBranch.Command.AddQuantityToTree(branchId, stockId, quantityId, quantity, parentBranchId);
+      var result = testKit.method(StockItemsBranchEntity::addQuantity).invoke(command);
+      assertTrue(result.isReply());
+      assertEquals(quantity, testKit.getState().quantity());
+    }
+
+    var leaves = testKit.getState().leaves();
+
+    // An unchanged leaf quantity is a no-op
+    {
+      var command = new StockItemsBranch.Command.UpdateLeafQuantity(branchId, leaves.get(0).leafId(), leaves.get(0).quantity());
+      var result = testKit.method(StockItemsBranchEntity::updateLeafQuantity).invoke(command);
+      assertTrue(result.isReply());
+      assertTrue(result.getAllEvents().isEmpty());
+    }
+
+    // The first change schedules a roll up
+    {
+      var command = new StockItemsBranch.Command.UpdateLeafQuantity(branchId, leaves.get(0).leafId(), leaves.get(0).quantity().sub(1));
+      var result = testKit.method(StockItemsBranchEntity::updateLeafQuantity).invoke(command);
+      assertTrue(result.isReply());
+      assertEquals(2, result.getAllEvents().size());
+      result.getNextEventOfType(StockItemsBranch.Event.LeafQuantityUpdated.class);
+      var event = result.getNextEventOfType(StockItemsBranch.Event.RollUpScheduled.class);
+      assertEquals(branchId, event.branchId());
+      assertTrue(testKit.getState().rollUpPending());
+    }
+
+    // Later changes ride along with the scheduled roll up
+    {
+      var command = new StockItemsBranch.Command.UpdateLeafQuantity(branchId, leaves.get(1).leafId(), leaves.get(1).quantity().sub(1));
+      var result = testKit.method(StockItemsBranchEntity::updateLeafQuantity).invoke(command);
+      assertTrue(result.isReply());
+      assertEquals(1, result.getAllEvents().size());
+      result.getNextEventOfType(StockItemsBranch.Event.LeafQuantityUpdated.class);
+    }
+
+    // The roll up carries the latest quantity to the parent
+    {
+      var command = new StockItemsBranch.Command.RollUpQuantity(branchId);
+      var result = testKit.method(StockItemsBranchEntity::rollUpQuantity).invoke(command);
+      assertTrue(result.isReply());
+      assertEquals(done(), result.getReply());
+      var event = result.getNextEventOfType(StockItemsBranch.Event.QuantityRolledUp.class);
+      assertEquals(branchId, event.branchId());
+      assertEquals(parentBranchId.get(), event.parentBranchId());
+      assertEquals(quantity.sub(2), event.quantity());
+      assertTrue(!testKit.getState().rollUpPending());
+    }
+
+    // Nothing more to roll up
+    {
+      var command = new StockItemsBranch.Command.RollUpQuantity(branchId);
+      var result = testKit.method(StockItemsBranchEntity::rollUpQuantity).invoke(command);
+      assertTrue(result.isReply());
+      assertTrue(result.getAllEvents().isEmpty());
+    }
+  }
 }
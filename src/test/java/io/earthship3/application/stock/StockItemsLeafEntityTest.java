@@ -8,6 +8,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.List;
+import java.util.Optional;
 
 import org.junit.jupiter.api.Test;
 
@@ -50,7 +51,7 @@ public class StockItemsLeafEntityTest {
       assertEquals(stockId, event.stockId());
       assertEquals(quantityId, event.quantityId());
       assertEquals(quantity, event.quantity());
-      assertEquals(quantity.acquired(), event.stockOrderItems().size());
+      assertTrue(event.stockOrderItems().isEmpty()); // no stock items changed since they were created
       assertTrue(event.availableForOrders());
     }
 
@@ -61,7 +62,6 @@ public class StockItemsLeafEntityTest {
       assertEquals(stockId, event.stockId());
       assertEquals(quantityId, event.quantityId());
       assertEquals(quantity, event.quantity());
-      assertEquals(quantity.acquired(), event.stockOrderItems().size());
     }
 
     {
@@ -397,7 +397,157 @@ public class StockItemsLeafEntityTest {
     {
       // Then get the state quantity is 5
       var state = testKit.getState();
-      assertEquals(Quantity.of(quantity.acquired(), quantity.available() - allocationsToBeReleased.size()), state.quantity());
+      assertEquals(Quantity.of(quantity.acquired(), allocationsToBeReleased.size()), state.quantity());
+    }
+  }
+
+  @Test
+  void testAllocateToSeveralOrderItemsLeavesInOneRound() {
+    var testKit = EventSourcedTestKit.of(StockItemsLeafEntity::new);
+
+    // First create the leaf
+    var leafId = randomUUID();
+    var stockId = "stock-123";
+    var quantityId = randomUUID();
+    var quantity = Quantity.of(5);
+    var parentBranchId = randomUUID();
+
+    var createCommand = new StockItemsLeaf.Command.CreateStockItems(leafId, parentBranchId, stockId, quantityId, quantity);
+    testKit.method(StockItemsLeafEntity::createLeaf).invoke(createCommand);
+
+    // Then allocate to three order items leaves, the last one gets only what is left
+    var orderItemsLeafId1 = randomUUID();
+    var orderItemsLeafId2 = randomUUID();
+    var orderItemsLeafId3 = randomUUID();
+    var orderItemIds1 = List.of(randomUUID(), randomUUID());
+    var orderItemIds2 = List.of(randomUUID(), randomUUID());
+    var orderItemIds3 = List.of(randomUUID(), randomUUID());
+    var command = new StockItemsLeaf.Command.AllocateStockItemsToOrderItemsLeaves(leafId, List.of(
+        new StockItemsLeaf.OrderItemsRequest(orderItemsLeafId1, orderItemIds1),
+        new StockItemsLeaf.OrderItemsRequest(orderItemsLeafId2, orderItemIds2),
+        new StockItemsLeaf.OrderItemsRequest(orderItemsLeafId3, orderItemIds3)));
+    var result = testKit.method(StockItemsLeafEntity::requestLeavesAllocation).invoke(command);
+
+    assertTrue(result.isReply());
+    assertEquals(done(), result.getReply());
+    assertEquals(4, result.getAllEvents().size()); // one leaf update and one allocation per order items leaf
+
+    {
+      var event = result.getNextEventOfType(StockItemsLeaf.Event.LeafQuantityUpdated.class);
+      assertEquals(Quantity.of(5, 0), event.quantity());
+      assertEquals(5, event.stockOrderItems().size());
+      assertFalse(event.availableForOrders());
+    }
+
+    {
+      var event = result.getNextEventOfType(StockItemsLeaf.Event.StockItemsAllocatedToOrderItems.class);
+      assertEquals(orderItemsLeafId1, event.orderItemsLeafId());
+      assertEquals(2, event.allocations().size());
+    }
+
+    {
+      var event = result.getNextEventOfType(StockItemsLeaf.Event.StockItemsAllocatedToOrderItems.class);
+      assertEquals(orderItemsLeafId2, event.orderItemsLeafId());
+      assertEquals(2, event.allocations().size());
+    }
+
+    {
+      var event = result.getNextEventOfType(StockItemsLeaf.Event.StockItemsAllocatedToOrderItems.class);
+      assertEquals(orderItemsLeafId3, event.orderItemsLeafId());
+      assertEquals(1, event.allocations().size());
+      assertTrue(orderItemIds3.contains(event.allocations().get(0).orderItemId()));
+    }
+
+    {
+      var state = testKit.getState();
+      assertEquals(Quantity.of(5, 0), state.quantity());
+      assertEquals(5, state.stockOrderItems().stream().map(item -> item.stockItemId()).distinct().count());
+      assertTrue(state.stockOrderItems().stream().allMatch(item -> item.orderItemId().isPresent()));
+    }
+  }
+
+  @Test
+  void testApplyOrderItemsAllocationToNamedStockItems() {
+    var testKit = EventSourcedTestKit.of(StockItemsLeafEntity::new);
+
+    // First create the leaf
+    var leafId = randomUUID();
+    var stockId = "stock-123";
+    var quantityId = randomUUID();
+    var quantity = Quantity.of(5);
+    var parentBranchId = randomUUID();
+
+    var createCommand = new StockItemsLeaf.Command.CreateStockItems(leafId, parentBranchId, stockId, quantityId, quantity);
+    testKit.method(StockItemsLeafEntity::createLeaf).invoke(createCommand);
+
+    // Then apply an allocation of the last two stock items
+    var orderItemsLeafId = randomUUID();
+    var stockItems = testKit.getState().stockOrderItems();
+    var allocations = stockItems.subList(3, 5).stream()
+        .map(item -> new StockItemsLeaf.Allocation(leafId, item.stockItemId(), orderItemsLeafId, randomUUID()))
+        .toList();
+    {
+      var command = new StockItemsLeaf.Command.ApplyOrderItemsAllocation(leafId, orderItemsLeafId, allocations);
+      var result = testKit.method(StockItemsLeafEntity::applyAllocation).invoke(command);
+
+      assertTrue(result.isReply());
+      assertEquals(done(), result.getReply());
+
+      var event = result.getNextEventOfType(StockItemsLeaf.Event.LeafQuantityUpdated.class);
+      assertEquals(Quantity.of(quantity.acquired(), quantity.available() - allocations.size()), event.quantity());
+      assertTrue(allocations.stream()
+          .allMatch(allocation -> event.stockOrderItems().stream()
+              .anyMatch(item -> item.stockItemId().equals(allocation.stockItemId()) &&
+                  item.orderItemId().equals(Optional.of(allocation.orderItemId())) &&
+                  item.orderItemsLeafId().equals(Optional.of(orderItemsLeafId)))));
+    }
+
+    {
+      // Then applying the same allocation again is a conflict
+      var command = new StockItemsLeaf.Command.ApplyOrderItemsAllocation(leafId, orderItemsLeafId, allocations);
+      var result = testKit.method(StockItemsLeafEntity::applyAllocation).invoke(command);
+
+      assertTrue(result.isReply());
+      var event = result.getNextEventOfType(StockItemsLeaf.Event.StockItemsAllocationConflictDetected.class);
+      assertEquals(allocations, event.allocations());
+      assertEquals(Quantity.of(quantity.acquired(), quantity.available() - allocations.size()), testKit.getState().quantity());
+    }
+
+    {
+      // Then an allocation that names one taken and one available stock item applies the available one
+      var partialAllocations = List.of(
+          new StockItemsLeaf.Allocation(leafId, stockItems.get(3).stockItemId(), orderItemsLeafId, randomUUID()),
+          new StockItemsLeaf.Allocation(leafId, stockItems.get(0).stockItemId(), orderItemsLeafId, randomUUID()));
+      var command = new StockItemsLeaf.Command.ApplyOrderItemsAllocation(leafId, orderItemsLeafId, partialAllocations);
+      var result = testKit.method(StockItemsLeafEntity::applyAllocation).invoke(command);
+
+      assertTrue(result.isReply());
+      var updated = result.getNextEventOfType(StockItemsLeaf.Event.LeafQuantityUpdated.class);
+      assertEquals(Quantity.of(quantity.acquired(), quantity.available() - allocations.size() - 1), updated.quantity());
+      var conflict = result.getNextEventOfType(StockItemsLeaf.Event.StockItemsAllocationConflictDetected.class);
+      assertEquals(List.of(partialAllocations.get(0)), conflict.allocations());
+    }
+
+    {
+      // Then a stock item named twice in one batch is applied once and the second one is a conflict
+      var duplicateAllocations = List.of(
+          new StockItemsLeaf.Allocation(leafId, stockItems.get(1).stockItemId(), orderItemsLeafId, randomUUID()),
+          new StockItemsLeaf.Allocation(leafId, stockItems.get(1).stockItemId(), orderItemsLeafId, randomUUID()));
+      var command = new StockItemsLeaf.Command.ApplyOrderItemsAllocation(leafId, orderItemsLeafId, duplicateAllocations);
+      var result = testKit.method(StockItemsLeafEntity::applyAllocation).invoke(command);
+
+      var updated = result.getNextEventOfType(StockItemsLeaf.Event.LeafQuantityUpdated.class);
+      assertEquals(Quantity.of(quantity.acquired(), quantity.available() - allocations.size() - 2), updated.quantity());
+      assertEquals(1, updated.stockOrderItems().size());
+      var conflict = result.getNextEventOfType(StockItemsLeaf.Event.StockItemsAllocationConflictDetected.class);
+      assertEquals(List.of(duplicateAllocations.get(1)), conflict.allocations());
+    }
+
+    {
+      // Then an empty batch changes nothing
+      var command = new StockItemsLeaf.Command.ApplyOrderItemsAllocation(leafId, orderItemsLeafId, List.of());
+      var result = testKit.method(StockItemsLeafEntity::applyAllocation).invoke(command);
+      assertEquals(0, result.getAllEvents().size());
     }
   }
 